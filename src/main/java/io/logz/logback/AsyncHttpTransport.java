@@ -0,0 +1,587 @@
+package io.logz.logback;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLParameters;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A non-blocking transport: a single thread drives up to maxInFlightRequests keep-alive connections with a selector,
+ * TLS included, so many bulks can be in flight without a thread each. Requests beyond maxInFlightRequests wait for
+ * a connection to be free.
+ *
+ * Like {@link HttpTransport} with persistentConnections, connections are kept between drains, and a request that
+ * fails on a kept connection before any response byte is sent again once over a new connection.
+ * Proxies are not supported.
+ */
+public class AsyncHttpTransport implements LogzioTransport {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final int PLAIN_READ_BUFFER_BYTES = 16 * 1024;
+
+    private final Queue<Request> submitted = new ConcurrentLinkedQueue<>();
+    private final HandshakeCounter handshakes = new HandshakeCounter();
+    private final LongAdder reusedRequests = new LongAdder();
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    private volatile Selector selector;
+    private volatile Thread ioThread;
+    private volatile boolean running = false;
+
+    // Only touched by the I/O thread
+    private Settings settings;
+    private ListenerEndpoint endpoint;
+    private SSLContext sslContext;
+    private final Deque<Request> waiting = new ArrayDeque<>();
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    private final List<Connection> connections = new ArrayList<>();
+
+    @Override
+    public synchronized void start(Settings settings) {
+        if (running) return;
+        this.settings = settings;
+        this.endpoint = new ListenerEndpoint(settings.getListenerUrl());
+        try {
+            if (endpoint.tls) sslContext = SSLContext.getDefault();
+            selector = Selector.open();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not start the transport", e);
+        }
+        running = true;
+        Thread thread = new Thread(this::run, "logzio-transport-" + settings.getName());
+        thread.setDaemon(true);
+        ioThread = thread;
+        thread.start();
+    }
+
+    @Override
+    public CompletableFuture<Response> send(byte[] payload, boolean gzip) {
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        Selector currentSelector = selector;
+        if (!running || currentSelector == null) {
+            response.completeExceptionally(new IOException("The transport is not started"));
+            return response;
+        }
+        Request request = new Request(payload, gzip, response);
+        submitted.add(request);
+        // The I/O thread may have failed what was submitted and exited meanwhile, then nothing else completes it
+        if (!running && submitted.remove(request)) {
+            response.completeExceptionally(new IOException("The transport is stopped"));
+            return response;
+        }
+        currentSelector.wakeup();
+        return response;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        try {
+            ioThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public long getHandshakes() {
+        return handshakes.getTotal();
+    }
+
+    @Override
+    public int getHandshakesPerMinute() {
+        return handshakes.getPerMinute();
+    }
+
+    @Override
+    public long getReusedConnectionRequests() {
+        return reusedRequests.sum();
+    }
+
+    @Override
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                Request request;
+                while ((request = submitted.poll()) != null) {
+                    waiting.addLast(request);
+                }
+                assignWaitingRequests();
+
+                long now = System.nanoTime();
+                long nextDeadline = Long.MAX_VALUE;
+                for (Connection connection : new ArrayList<>(connections)) {
+                    if (connection.deadlineNanos == 0) continue;
+                    if (connection.deadlineNanos <= now) {
+                        connection.fail(new SocketTimeoutException(connection.isConnecting() ? "connect timed out" : "Read timed out"));
+                    } else {
+                        nextDeadline = Math.min(nextDeadline, connection.deadlineNanos);
+                    }
+                }
+                long timeoutMillis = nextDeadline == Long.MAX_VALUE ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextDeadline - now));
+                selector.select(timeoutMillis);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        connection.onReady(key);
+                    } catch (IOException | RuntimeException e) {
+                        connection.fail(e);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // Nothing to do but to fail what is left
+        } finally {
+            // Whatever made it exit, so send() stops submitting to a thread that is gone
+            running = false;
+            shutdown();
+        }
+    }
+
+    private void assignWaitingRequests() {
+        while (!waiting.isEmpty()) {
+            Connection connection = idle.pollFirst();
+            if (connection != null) {
+                reusedRequests.increment();
+                connection.send(waiting.pollFirst(), true);
+            } else if (connections.size() < settings.getMaxInFlightRequests()) {
+                Request request = waiting.pollFirst();
+                try {
+                    open().send(request, false);
+                } catch (IOException | RuntimeException e) {
+                    request.response.completeExceptionally(e);
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private Connection open() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            channel.connect(new InetSocketAddress(endpoint.host, endpoint.port));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        Connection connection = new Connection(channel);
+        connections.add(connection);
+        openConnections.incrementAndGet();
+        return connection;
+    }
+
+    private void shutdown() {
+        IOException stopped = new IOException("The transport is stopped");
+        for (Connection connection : new ArrayList<>(connections)) {
+            connection.close();
+            if (connection.request != null) connection.request.response.completeExceptionally(stopped);
+        }
+        Request request;
+        while ((request = waiting.pollFirst()) != null) {
+            request.response.completeExceptionally(stopped);
+        }
+        while ((request = submitted.poll()) != null) {
+            request.response.completeExceptionally(stopped);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Nothing to do with it
+        }
+    }
+
+    private static class Request {
+        final byte[] payload;
+        final boolean gzip;
+        final CompletableFuture<Response> response;
+
+        Request(byte[] payload, boolean gzip, CompletableFuture<Response> response) {
+            this.payload = payload;
+            this.gzip = gzip;
+            this.response = response;
+        }
+    }
+
+    /**
+     * A connection and its request in progress, TLS included. All of it runs on the I/O thread.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private SSLEngine engine;
+        // Encrypted bytes, both kept ready to be written to (compacted)
+        private ByteBuffer netIn;
+        private ByteBuffer netOut;
+        // Decrypted, or plain, response bytes
+        private ByteBuffer appIn;
+
+        private boolean connected = false;
+        private boolean handshaking = false;
+        private boolean closed = false;
+        private long deadlineNanos;
+
+        private Request request;
+        private boolean reused;
+        private ByteBuffer[] requestBytes;
+        private HttpResponseParser parser;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            this.deadlineNanos = deadlineAfter(settings.getConnectTimeout());
+        }
+
+        boolean isConnecting() {
+            return !connected;
+        }
+
+        void send(Request request, boolean reused) {
+            this.request = request;
+            this.reused = reused;
+            this.requestBytes = new ByteBuffer[] {ByteBuffer.wrap(endpoint.requestHead(request.payload.length, request.gzip)), ByteBuffer.wrap(request.payload)};
+            this.parser = new HttpResponseParser();
+            if (connected) {
+                touch();
+                try {
+                    progress();
+                } catch (IOException | RuntimeException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        void onReady(SelectionKey readyKey) throws IOException {
+            if (readyKey.isConnectable()) {
+                channel.finishConnect();
+                connected = true;
+                touch();
+                // Counted once established, so refused connections and failed TLS handshakes don't count
+                if (endpoint.tls) {
+                    startTls();
+                } else {
+                    handshakes.increment();
+                }
+            }
+            if (request == null) {
+                // Idle, so the listener closed it or sent something it should not have
+                if (readPlain() != 0) close();
+                return;
+            }
+            progress();
+        }
+
+        void fail(Throwable e) {
+            Request failed = request;
+            boolean retry = failed != null && reused && !parser.hasStarted() && !(e instanceof SocketTimeoutException);
+            close();
+            if (failed == null) return;
+            if (retry) {
+                // Most likely closed by the listener while it was idle, the bulk is sent again over a new connection
+                try {
+                    open().send(failed, false);
+                } catch (IOException | RuntimeException openFailure) {
+                    failed.response.completeExceptionally(openFailure);
+                }
+            } else {
+                failed.response.completeExceptionally(e);
+            }
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            connections.remove(this);
+            idle.remove(this);
+            openConnections.decrementAndGet();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing to do with it
+            }
+            request = null;
+        }
+
+        /**
+         * Moves the handshake, the request and the response forward as far as the socket allows, and waits for
+         * the socket to be ready for whatever is next
+         */
+        private void progress() throws IOException {
+            if (!connected) return;
+            if (handshaking && !handshake()) return;
+            if (!writeRequest()) {
+                interest(SelectionKey.OP_WRITE);
+                return;
+            }
+            if (readResponse()) {
+                complete();
+            } else {
+                interest(pendingOutput() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+        }
+
+        private void complete() {
+            Request completed = request;
+            request = null;
+            requestBytes = null;
+            deadlineNanos = 0;
+            if (parser.isKeepAlive() && running) {
+                idle.addFirst(this);
+                interest(SelectionKey.OP_READ);
+            } else {
+                close();
+            }
+            completed.response.complete(parser.getResponse());
+        }
+
+        private void startTls() {
+            engine = sslContext.createSSLEngine(endpoint.host, endpoint.port);
+            engine.setUseClientMode(true);
+            // Verify the host name like HttpsURLConnection does, SSLEngine doesn't on its own
+            SSLParameters parameters = engine.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            engine.setSSLParameters(parameters);
+            netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+            handshaking = true;
+        }
+
+        /**
+         * @return true once the TLS handshake is done
+         */
+        private boolean handshake() throws IOException {
+            while (true) {
+                if (!flush()) {
+                    interest(SelectionKey.OP_WRITE);
+                    return false;
+                }
+                switch (engine.getHandshakeStatus()) {
+                    case NOT_HANDSHAKING:
+                    case FINISHED:
+                        handshaking = false;
+                        handshakes.increment();
+                        return true;
+                    case NEED_TASK:
+                        runDelegatedTasks();
+                        break;
+                    case NEED_WRAP:
+                        wrap(EMPTY);
+                        break;
+                    default:
+                        // NEED_UNWRAP, and NEED_UNWRAP_AGAIN on newer JDKs
+                        int read = channel.read(netIn);
+                        if (read == -1) throw new EOFException("Connection closed by the listener during the TLS handshake");
+                        if (read > 0) touch();
+                        SSLEngineResult result = unwrap();
+                        if (result.getStatus() == SSLEngineResult.Status.CLOSED) throw new EOFException("TLS session closed during the handshake");
+                        if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW && read == 0) {
+                            interest(SelectionKey.OP_READ);
+                            return false;
+                        }
+                }
+            }
+        }
+
+        /**
+         * @return true once the whole request is written
+         */
+        private boolean writeRequest() throws IOException {
+            if (requestBytes == null) return true;
+            if (engine == null) {
+                if (channel.write(requestBytes) > 0) touch();
+            } else {
+                while (requestBytes[1].hasRemaining() || requestBytes[0].hasRemaining()) {
+                    if (!flush()) return false;
+                    wrap(requestBytes);
+                }
+                if (!flush()) return false;
+            }
+            if (requestBytes[0].hasRemaining() || requestBytes[1].hasRemaining()) return false;
+            requestBytes = null;
+            return true;
+        }
+
+        /**
+         * @return true once the whole response is read
+         */
+        private boolean readResponse() throws IOException {
+            while (true) {
+                int read = engine == null ? readPlain() : readTls();
+                ((Buffer) appIn).flip();
+                parser.feed(appIn);
+                appIn.compact();
+                if (parser.isComplete()) return true;
+                if (read == -1) {
+                    parser.endOfStream();
+                    return parser.isComplete();
+                }
+                if (read == 0) return false;
+            }
+        }
+
+        /**
+         * Reads plain bytes into appIn
+         *
+         * @return the bytes read, or -1 at the end of the stream
+         */
+        private int readPlain() throws IOException {
+            if (appIn == null) appIn = ByteBuffer.allocate(PLAIN_READ_BUFFER_BYTES);
+            if (engine != null) return readTls();
+            int read = channel.read(appIn);
+            if (read > 0) touch();
+            return read;
+        }
+
+        /**
+         * Reads and decrypts bytes into appIn
+         *
+         * @return the bytes decrypted, or -1 at the end of the stream
+         */
+        private int readTls() throws IOException {
+            int read = channel.read(netIn);
+            if (read > 0) touch();
+            int produced = 0;
+            while (true) {
+                SSLEngineResult result = unwrap();
+                produced += result.bytesProduced();
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) return produced > 0 ? produced : -1;
+                if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) runDelegatedTasks();
+                if (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    // A post handshake message, such as a TLS 1.3 key update
+                    wrap(EMPTY);
+                    flush();
+                }
+                if (result.getStatus() != SSLEngineResult.Status.OK || (result.bytesConsumed() == 0 && result.bytesProduced() == 0)) break;
+            }
+            if (read == -1 && produced == 0) return -1;
+            return produced;
+        }
+
+        private SSLEngineResult unwrap() throws IOException {
+            while (true) {
+                ((Buffer) netIn).flip();
+                SSLEngineResult result;
+                try {
+                    result = engine.unwrap(netIn, appIn);
+                } finally {
+                    netIn.compact();
+                }
+                switch (result.getStatus()) {
+                    case BUFFER_OVERFLOW:
+                        appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                        break;
+                    case BUFFER_UNDERFLOW:
+                        if (netIn.position() == netIn.capacity()) {
+                            netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                        }
+                        return result;
+                    default:
+                        return result;
+                }
+            }
+        }
+
+        private void wrap(ByteBuffer... sources) throws IOException {
+            while (true) {
+                SSLEngineResult result = engine.wrap(sources, netOut);
+                switch (result.getStatus()) {
+                    case BUFFER_OVERFLOW:
+                        if (netOut.position() > 0) return;
+                        netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                        break;
+                    case CLOSED:
+                        throw new EOFException("TLS session closed");
+                    default:
+                        return;
+                }
+            }
+        }
+
+        /**
+         * @return true if all the encrypted bytes are written
+         */
+        private boolean flush() throws IOException {
+            if (netOut == null || netOut.position() == 0) return true;
+            ((Buffer) netOut).flip();
+            try {
+                if (channel.write(netOut) > 0) touch();
+            } finally {
+                netOut.compact();
+            }
+            return netOut.position() == 0;
+        }
+
+        private boolean pendingOutput() {
+            return netOut != null && netOut.position() > 0;
+        }
+
+        private void runDelegatedTasks() {
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+        }
+
+        private void interest(int ops) {
+            if (!closed) key.interestOps(ops);
+        }
+
+        /**
+         * Pushes the deadline back on every progress, like a socket read timeout
+         */
+        private void touch() {
+            deadlineNanos = request == null && connected ? 0 : deadlineAfter(settings.getSocketTimeout());
+        }
+
+        /**
+         * @return 0, no deadline, for a timeout of 0 or less, as a socket timeout of 0 means waiting forever
+         */
+        private long deadlineAfter(int timeoutMillis) {
+            return timeoutMillis <= 0 ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+    }
+
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minimumCapacity) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(minimumCapacity, buffer.capacity() * 2));
+        ((Buffer) buffer).flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
@@ -0,0 +1,157 @@
+package io.logz.logback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups lines into blocks of about blockBytes, and stores every block in the {@link DiskLogsBuffer} gzipped, as a
+ * single record. The sender ships a gzipped record as it is, so a block is compressed once however many times it is
+ * sent, and the disk only sees the compressed bytes.
+ *
+ * Lines of the block being filled are only in memory, which is why it is not used with the batch durability. The
+ * block is stored once full, when the sender peeks or when the buffer is synced, so at the latest on the next drain.
+ * If the disk refuses it, it stays in memory for the next try. Blocks smaller than compressionMinBytes are stored
+ * uncompressed, as new line separated lines, which the sender ships like any other lines.
+ */
+class CompressedBlocksLogsBuffer implements LogsBuffer {
+
+    private final DiskLogsBuffer disk;
+    private final GzipCompressor compressor;
+    private final int blockBytes;
+
+    // Guarded by this
+    private List<byte[]> block = new ArrayList<>();
+    private int blockSize = 0;
+
+    CompressedBlocksLogsBuffer(DiskLogsBuffer disk, GzipCompressor compressor, int blockBytes) {
+        this.disk = disk;
+        this.compressor = compressor;
+        this.blockBytes = blockBytes;
+    }
+
+    /**
+     * @return false if the line filled the block, and the block could not be stored since the disk is full. Only the
+     * line is dropped then, the rest of the block is kept
+     */
+    @Override
+    public synchronized boolean enqueue(byte[] line) {
+        block.add(line);
+        blockSize += line.length;
+        if (blockSize < blockBytes || storeBlock()) return true;
+
+        block.remove(block.size() - 1);
+        blockSize -= line.length;
+        return false;
+    }
+
+    /**
+     * The blocks the lines fill are stored at once, so either all of the lines are kept or none of them are. The
+     * lines that were already in the block being filled are kept either way.
+     */
+    @Override
+    public synchronized boolean enqueue(List<byte[]> lines) {
+        List<byte[]> blockBefore = block;
+        int linesBefore = block.size();
+        int blockSizeBefore = blockSize;
+        List<byte[]> records = new ArrayList<>();
+        for (byte[] line : lines) {
+            block.add(line);
+            blockSize += line.length;
+            if (blockSize >= blockBytes) records.add(sealBlock());
+        }
+        if (records.isEmpty() || disk.enqueue(records)) return true;
+
+        block = new ArrayList<>(blockBefore.subList(0, linesBefore));
+        blockSize = blockSizeBefore;
+        return false;
+    }
+
+    @Override
+    public synchronized byte[] dequeue() {
+        storeBlock();
+        return disk.dequeue();
+    }
+
+    /**
+     * Stores the block being filled first, so the sender doesn't wait for it to fill up
+     *
+     * @return up to maxLines of the oldest blocks
+     */
+    @Override
+    public synchronized List<byte[]> peek(int maxLines) {
+        storeBlock();
+        return disk.peek(maxLines);
+    }
+
+    /**
+     * The oldest stored block, or the oldest line of the block being filled, without storing that block
+     *
+     * @return null if the buffer is empty
+     */
+    synchronized byte[] peekOldest() {
+        List<byte[]> stored = disk.peek(1);
+        if (!stored.isEmpty()) return stored.get(0);
+        return block.isEmpty() ? null : block.get(0);
+    }
+
+    @Override
+    public long remove(int lines) {
+        return disk.remove(lines);
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return block.isEmpty() && disk.isEmpty();
+    }
+
+    /**
+     * The lines of the block being filled, and the blocks stored, counting one per block
+     */
+    @Override
+    public synchronized long size() {
+        return block.size() + disk.size();
+    }
+
+    @Override
+    public void gc() {
+        disk.gc();
+    }
+
+    /**
+     * Stores the block being filled first, even if it is not full, so the sync covers every line enqueued so far
+     */
+    @Override
+    public void sync() {
+        synchronized (this) {
+            storeBlock();
+        }
+        disk.sync();
+    }
+
+    /**
+     * @return false if the block could not be stored, it is then still the block being filled
+     */
+    private boolean storeBlock() {
+        if (block.isEmpty()) return true;
+        // Checked first, so a full disk doesn't cost a compression per line
+        if (!disk.isEnoughDiskSpace()) return false;
+        List<byte[]> lines = block;
+        int size = blockSize;
+        if (disk.append(sealBlock())) return true;
+
+        block = lines;
+        blockSize = size;
+        return false;
+    }
+
+    /**
+     * @return the block being filled as a record, compressed unless it is too small, and starts a new one
+     */
+    private byte[] sealBlock() {
+        byte[] compressed = compressor.compress(block, blockSize);
+        byte[] record = compressed != null ? compressed : LogzioBulkSender.toNewLineSeparatedByteArray(block, blockSize);
+        block = new ArrayList<>();
+        blockSize = 0;
+        return record;
+    }
+}
@@ -0,0 +1,199 @@
+package io.logz.logback;
+
+import io.logz.sender.SenderStatusReporter;
+import io.logz.sender.com.bluejeans.common.bigqueue.BigQueue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The {@link SegmentedLog} under bufferDir, refusing new lines once the file system is above fsPercentThreshold,
+ * as last sampled by its {@link DiskUsageSampler}. Used on its own, or as the spill of a {@link HybridLogsBuffer}.
+ *
+ * With maxBufferBytes, segments are a quarter of it (between MIN_SEGMENT_BYTES and the default segment size), so
+ * evicting the oldest one drops a quarter of the buffer at most.
+ *
+ * Lines stay on disk until they are removed, so lines in flight to the listener are shipped again after a crash.
+ * A BigQueue left in bufferDir by an older version is moved into the log when it is opened.
+ */
+class DiskLogsBuffer implements LogsBuffer {
+
+    private static final String[] BIG_QUEUE_DIRECTORIES = {"data", "index", "meta_data", "front_index"};
+    private static final int MIGRATION_BATCH_LINES = 1000;
+    static final int MIN_SEGMENT_BYTES = 64 * 1024;
+
+    private final SegmentedLog log;
+    private final File queueDirectory;
+    private final DiskUsageSampler diskUsage;
+    private final SenderStatusReporter reporter;
+    private volatile long lastDropWarningMillis = 0;
+
+    DiskLogsBuffer(File queueDirectory, int fsPercentThreshold, SenderStatusReporter reporter) throws IOException {
+        this(queueDirectory, fsPercentThreshold, SegmentedLog.Durability.NONE, reporter);
+    }
+
+    DiskLogsBuffer(File queueDirectory, int fsPercentThreshold, SegmentedLog.Durability durability, SenderStatusReporter reporter) throws IOException {
+        this(queueDirectory, fsPercentThreshold, durability, 0, 0, reporter);
+    }
+
+    /**
+     * @param maxBufferBytes 0 for no limit
+     * @param maxEventAgeMillis 0 for no limit
+     */
+    DiskLogsBuffer(File queueDirectory, int fsPercentThreshold, SegmentedLog.Durability durability, long maxBufferBytes,
+                   long maxEventAgeMillis, SenderStatusReporter reporter) throws IOException {
+        this.log = new SegmentedLog(queueDirectory, segmentBytesFor(maxBufferBytes), durability, maxBufferBytes,
+                maxEventAgeMillis, System::currentTimeMillis, reporter);
+        this.queueDirectory = queueDirectory;
+        this.diskUsage = new DiskUsageSampler(queueDirectory, fsPercentThreshold);
+        this.reporter = reporter;
+        // Sampled once here, and then by the sender in the background
+        diskUsage.sample();
+        migrateBigQueue();
+    }
+
+    @Override
+    public boolean enqueue(byte[] line) {
+        return isEnoughDiskSpace() && append(line);
+    }
+
+    /**
+     * Appends without checking the disk space, for a caller that checked it before doing costly work on the line
+     *
+     * @return false if the line could not be written
+     */
+    boolean append(byte[] line) {
+        try {
+            log.append(line);
+            return true;
+        } catch (IOException e) {
+            reporter.error("Logz.io: Could not append to the buffer under " + queueDirectory.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean enqueue(List<byte[]> lines) {
+        // The disk space is checked only once per batch
+        if (!isEnoughDiskSpace()) return false;
+        try {
+            log.append(lines);
+            return true;
+        } catch (IOException e) {
+            reporter.error("Logz.io: Could not append to the buffer under " + queueDirectory.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public byte[] dequeue() {
+        synchronized (log) {
+            List<byte[]> lines = log.read(1);
+            if (lines.isEmpty()) return null;
+            log.remove(1);
+            return lines.get(0);
+        }
+    }
+
+    @Override
+    public List<byte[]> peek(int maxLines) {
+        return log.read(maxLines);
+    }
+
+    @Override
+    public long remove(int lines) {
+        return log.remove(lines);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return log.isEmpty();
+    }
+
+    @Override
+    public long size() {
+        return log.getPendingRecords();
+    }
+
+    @Override
+    public void gc() {
+        log.gc();
+    }
+
+    @Override
+    public void sync() {
+        log.sync();
+    }
+
+    /**
+     * Closes the log, lines enqueued afterwards are refused
+     */
+    void close() {
+        log.close();
+    }
+
+    SegmentedLog getLog() {
+        return log;
+    }
+
+    DiskUsageSampler getDiskUsage() {
+        return diskUsage;
+    }
+
+    /**
+     * Moves the lines of a BigQueue, the disk buffer of older versions, into the log and deletes its files
+     */
+    private void migrateBigQueue() throws IOException {
+        if (!new File(queueDirectory, "meta_data").isDirectory()) return;
+
+        BigQueue queue = new BigQueue(queueDirectory.getAbsoluteFile().getParent(), queueDirectory.getName());
+        long lines = 0;
+        List<byte[]> batch;
+        // In batches, so a batch durability syncs once per batch
+        while (!(batch = queue.dequeueMulti(MIGRATION_BATCH_LINES)).isEmpty()) {
+            log.append(batch);
+            lines += batch.size();
+        }
+        queue.close();
+        for (String name : BIG_QUEUE_DIRECTORIES) {
+            deleteRecursively(new File(queueDirectory, name));
+        }
+        if (lines > 0) {
+            reporter.info("Logz.io: Moved " + lines + " lines from the previous disk buffer under " + queueDirectory.getAbsolutePath());
+        }
+    }
+
+    static int segmentBytesFor(long maxBufferBytes) {
+        if (maxBufferBytes <= 0) return SegmentedLog.DEFAULT_SEGMENT_BYTES;
+        return (int) Math.max(MIN_SEGMENT_BYTES, Math.min(SegmentedLog.DEFAULT_SEGMENT_BYTES, maxBufferBytes / 4));
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+
+    boolean isEnoughDiskSpace() {
+        if (diskUsage.shouldAccept()) {
+            return true;
+        }
+        // Once a second at most, the drops themselves are counted and summarized by the appender
+        long now = System.currentTimeMillis();
+        if (now - lastDropWarningMillis >= 1000) {
+            lastDropWarningMillis = now;
+            double usedPercent = diskUsage.getUsedPercent();
+            if (usedPercent >= diskUsage.getThresholdPercent()) {
+                reporter.warning(String.format("Logz.io: Dropping logs, as FS used space on %s is %.1f percent, and the drop threshold is %d percent",
+                        queueDirectory.getAbsolutePath(), usedPercent, diskUsage.getThresholdPercent()));
+            } else {
+                reporter.warning(String.format("Logz.io: Dropping %.0f percent of the logs, as FS used space on %s is %.1f percent, and growing towards the drop threshold of %d percent",
+                        diskUsage.getSheddingRatio() * 100, queueDirectory.getAbsolutePath(), usedPercent, diskUsage.getThresholdPercent()));
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,101 @@
+package io.logz.logback;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the used percent of the buffer's file system, sampled by the sender every fileSystemUsageSampleIntervalMs,
+ * so appending never waits for the file system (slow on network volumes) to tell how full it is.
+ *
+ * Once past thresholdPercent every line is refused. Before that, the usage is projected from how fast it grew
+ * between samples, and within SHEDDING_LEAD_MILLIS of reaching the threshold a growing share of the lines is
+ * refused, from none to all of them, so shedding starts gradually instead of all at once.
+ */
+class DiskUsageSampler {
+
+    static final long SHEDDING_LEAD_MILLIS = 30 * 1000;
+
+    private final int thresholdPercent;
+    private final DoubleSupplier usedPercentSupplier;
+    private final LongSupplier clock;
+
+    // Only touched by the sampling thread
+    private double lastUsedPercent = Double.NaN;
+    private long lastSampleMillis;
+    private double growthPercentPerSecond = 0;
+
+    private volatile double usedPercent = 0;
+    // 0 to accept every line, 1 to refuse them all
+    private volatile double sheddingRatio = 0;
+
+    /**
+     * @param thresholdPercent the used percent from which lines are refused, -1 to never refuse them
+     */
+    DiskUsageSampler(File directory, int thresholdPercent) {
+        this(thresholdPercent, () -> usedPercentOf(directory), System::currentTimeMillis);
+    }
+
+    DiskUsageSampler(int thresholdPercent, DoubleSupplier usedPercentSupplier, LongSupplier clock) {
+        this.thresholdPercent = thresholdPercent;
+        this.usedPercentSupplier = usedPercentSupplier;
+        this.clock = clock;
+    }
+
+    /**
+     * Samples the file system, called by a single thread at a time
+     */
+    void sample() {
+        double used = usedPercentSupplier.getAsDouble();
+        if (Double.isNaN(used)) return;
+        long now = clock.getAsLong();
+        if (!Double.isNaN(lastUsedPercent) && now > lastSampleMillis) {
+            double growth = (used - lastUsedPercent) * 1000 / (now - lastSampleMillis);
+            // Smoothed, so a single burst doesn't start shedding
+            growthPercentPerSecond = (growthPercentPerSecond + growth) / 2;
+        }
+        lastUsedPercent = used;
+        lastSampleMillis = now;
+        usedPercent = used;
+        sheddingRatio = sheddingRatio(used);
+    }
+
+    /**
+     * @return false if the line should be refused, the file system being or soon to be above the threshold
+     */
+    boolean shouldAccept() {
+        double ratio = sheddingRatio;
+        return ratio <= 0 || (ratio < 1 && ThreadLocalRandom.current().nextDouble() >= ratio);
+    }
+
+    double getUsedPercent() {
+        return usedPercent;
+    }
+
+    double getSheddingRatio() {
+        return sheddingRatio;
+    }
+
+    int getThresholdPercent() {
+        return thresholdPercent;
+    }
+
+    private double sheddingRatio(double used) {
+        if (thresholdPercent < 0) return 0;
+        if (used >= thresholdPercent) return 1;
+        if (growthPercentPerSecond <= 0) return 0;
+        double millisToThreshold = (thresholdPercent - used) / growthPercentPerSecond * 1000;
+        if (millisToThreshold >= SHEDDING_LEAD_MILLIS) return 0;
+        return 1 - millisToThreshold / SHEDDING_LEAD_MILLIS;
+    }
+
+    /**
+     * @return NaN if the file system can't tell, when the directory doesn't exist for example
+     */
+    private static double usedPercentOf(File directory) {
+        long totalSpace = directory.getTotalSpace();
+        if (totalSpace <= 0) return Double.NaN;
+        return 100 - ((double) directory.getUsableSpace() / totalSpace) * 100;
+    }
+}
@@ -0,0 +1,147 @@
+package io.logz.logback;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Decides when the sender drains, instead of a fixed period:
+ *
+ * - As soon as the events or bytes enqueued since the last drain cross a threshold.
+ * - At the latest maxEventAgeMillis after the first event enqueued since the last drain.
+ * - On a backstop poll, for what is left after a failed drain or was persisted by a previous run. The poll runs every
+ *   minPollIntervalMillis while events come in and drains succeed, and backs off up to maxPollIntervalMillis
+ *   when idle or failing.
+ *
+ * So an idle sender barely wakes up, and a burst is shipped without waiting for the next period.
+ */
+class DrainScheduler {
+
+    private final Supplier<ScheduledExecutorService> executor;
+    private final Runnable drain;
+    private final long thresholdEvents;
+    private final long thresholdBytes;
+    private final long maxEventAgeMillis;
+    private final long minPollIntervalMillis;
+    private final long maxPollIntervalMillis;
+
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean thresholdTriggered = new AtomicBoolean(false);
+    private final AtomicBoolean ageTimerArmed = new AtomicBoolean(false);
+
+    private volatile boolean enqueuedSinceLastPoll = false;
+    private volatile boolean lastDrainFailed = false;
+    private volatile boolean running = false;
+    private volatile ScheduledFuture<?> pollTask;
+    private volatile ScheduledFuture<?> ageTimer;
+
+    // Only touched by the poll task
+    private long pollIntervalMillis;
+
+    /**
+     * @param executor where the drains run, read on every scheduling since the sender may replace it
+     * @param thresholdEvents 0 to not drain by event count
+     * @param thresholdBytes 0 to not drain by size
+     */
+    DrainScheduler(Supplier<ScheduledExecutorService> executor, Runnable drain, long thresholdEvents, long thresholdBytes,
+                   long maxEventAgeMillis, long minPollIntervalMillis, long maxPollIntervalMillis) {
+        this.executor = executor;
+        this.drain = drain;
+        this.thresholdEvents = thresholdEvents;
+        this.thresholdBytes = thresholdBytes;
+        this.maxEventAgeMillis = maxEventAgeMillis;
+        this.minPollIntervalMillis = minPollIntervalMillis;
+        this.maxPollIntervalMillis = Math.max(minPollIntervalMillis, maxPollIntervalMillis);
+    }
+
+    void start() {
+        cancelPoll();
+        running = true;
+        pollIntervalMillis = minPollIntervalMillis;
+        // Drain right away whatever a previous run left behind
+        pollTask = schedule(this::poll, 0);
+    }
+
+    void stop() {
+        running = false;
+        cancelPoll();
+        cancelAgeTimer();
+    }
+
+    /**
+     * Called by the sender after enqueueing, on the appending (or ring buffer) thread
+     */
+    void onEnqueued(int events, long bytes) {
+        if (!enqueuedSinceLastPoll) enqueuedSinceLastPoll = true;
+        if (!running) return;
+
+        if (!ageTimerArmed.get() && ageTimerArmed.compareAndSet(false, true)) {
+            ageTimer = schedule(drain, maxEventAgeMillis);
+        }
+        long totalEvents = pendingEvents.addAndGet(events);
+        long totalBytes = pendingBytes.addAndGet(bytes);
+        if (((thresholdEvents > 0 && totalEvents >= thresholdEvents) || (thresholdBytes > 0 && totalBytes >= thresholdBytes))
+                && thresholdTriggered.compareAndSet(false, true)) {
+            schedule(drain, 0);
+        }
+    }
+
+    /**
+     * Called by the sender before it takes events out of the buffer. Whatever is enqueued from now on
+     * counts for the next drain, and the age timer of the events this drain takes is no longer needed.
+     */
+    void onDrainStarting() {
+        pendingEvents.set(0);
+        pendingBytes.set(0);
+        thresholdTriggered.set(false);
+        // Captured before disarming, so a timer armed by the next event is left alone
+        ScheduledFuture<?> timer = ageTimer;
+        ageTimerArmed.set(false);
+        if (timer != null) timer.cancel(false);
+    }
+
+    void onDrainFinished(boolean failed) {
+        lastDrainFailed = failed;
+    }
+
+    long getPollIntervalMillis() {
+        return pollIntervalMillis;
+    }
+
+    private void poll() {
+        if (!running) return;
+        boolean active = enqueuedSinceLastPoll;
+        enqueuedSinceLastPoll = false;
+        drain.run();
+        if (active && !lastDrainFailed) {
+            pollIntervalMillis = minPollIntervalMillis;
+        } else {
+            pollIntervalMillis = Math.min(pollIntervalMillis * 2, maxPollIntervalMillis);
+        }
+        if (running) pollTask = schedule(this::poll, pollIntervalMillis);
+    }
+
+    private ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        try {
+            return executor.get().schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The executor is shutting down along with the logger context, the final drain on stop takes care of the rest
+            return null;
+        }
+    }
+
+    private void cancelPoll() {
+        ScheduledFuture<?> task = pollTask;
+        if (task != null) task.cancel(false);
+    }
+
+    private void cancelAgeTimer() {
+        ScheduledFuture<?> timer = ageTimer;
+        if (timer != null) timer.cancel(false);
+    }
+}
@@ -0,0 +1,103 @@
+package io.logz.logback;
+
+import ch.qos.logback.classic.Level;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the events the appender did not ship, per drop reason and per event level.
+ * Counting is a LongAdder increment, so it is cheap enough to do on the appending threads.
+ */
+class DroppedEvents {
+
+    enum Reason {
+        // The ring buffer was full and the overflow policy is dropNewest
+        BUFFER_FULL("bufferFull"),
+        // Evicted from the ring buffer to make room for a newer event
+        EVICTED("evictedOldest"),
+        // Not picked by the sample overflow policy
+        SAMPLED("sampled"),
+        // No room in the ring buffer within the block overflow policy timeout
+        BLOCK_TIMEOUT("blockTimeout"),
+        // Shed by level, as the ring buffer is above a levelSheddingWatermarks watermark
+        SHED("shed"),
+        // The sender refused the event since the buffer file system is above fileSystemFullPercentThreshold
+        FILE_SYSTEM_FULL("fileSystemFull"),
+        // The sender refused the event since the memory buffer reached memoryBufferCapacityBytes
+        MEMORY_BUFFER_FULL("memoryBufferFull"),
+        // Logged while the appender was starting in the background, with preStartBufferSize events already kept
+        PRE_START_BUFFER_FULL("preStartBufferFull"),
+        // Logged while the appender was stopping, once its sender was stopped
+        STOPPING("appenderStopping");
+
+        private final String name;
+
+        Reason(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static final Level[] LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR};
+
+    private final LongAdder[] counters = new LongAdder[Reason.values().length * LEVELS.length];
+    // Never reset, unlike the counters drop summaries drain
+    private final LongAdder total = new LongAdder();
+
+    DroppedEvents() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Index of the level in {@link #LEVELS}, levels in between are counted with the next lower one
+     */
+    static int levelIndex(Level level) {
+        int levelInt = level.toInt();
+        for (int i = LEVELS.length - 1; i > 0; i--) {
+            if (levelInt >= LEVELS[i].toInt()) return i;
+        }
+        return 0;
+    }
+
+    void increment(Reason reason, int levelIndex) {
+        counters[reason.ordinal() * LEVELS.length + levelIndex].increment();
+        total.increment();
+    }
+
+    long get(Reason reason, Level level) {
+        return counters[reason.ordinal() * LEVELS.length + levelIndex(level)].sum();
+    }
+
+    /**
+     * Every event dropped since this was created, {@link #drain()} does not reset it
+     */
+    long total() {
+        return total.sum();
+    }
+
+    /**
+     * Resets the counters and returns what they held, per reason and indexed like {@link #LEVELS}.
+     * Reasons without drops are left out.
+     */
+    Map<Reason, long[]> drain() {
+        Map<Reason, long[]> drained = new EnumMap<>(Reason.class);
+        for (Reason reason : Reason.values()) {
+            long[] perLevel = new long[LEVELS.length];
+            long reasonTotal = 0;
+            for (int i = 0; i < LEVELS.length; i++) {
+                perLevel[i] = counters[reason.ordinal() * LEVELS.length + i].sumThenReset();
+                reasonTotal += perLevel[i];
+            }
+            if (reasonTotal > 0) drained.put(reason, perLevel);
+        }
+        return drained;
+    }
+}
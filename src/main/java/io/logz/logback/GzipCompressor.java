@@ -0,0 +1,147 @@
+package io.logz.logback;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Gzips bulks straight from their lines, with Deflaters kept between bulks. A GZIPOutputStream per bulk allocates
+ * a native zlib stream every time, which is only freed by a finalizer, and needs the lines copied through a stream.
+ *
+ * Bulks smaller than minBytes are not worth it (the gzip header and trailer alone are 18 bytes, and small JSON
+ * doesn't compress much), so they are left as they are.
+ */
+class GzipCompressor {
+
+    private static final int MAX_POOLED_DEFLATERS = 4;
+    private static final int CHUNK_BYTES = 16 * 1024;
+    // Magic number, deflate, no flags, no modification time, no extra flags, unknown OS
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int TRAILER_BYTES = 8;
+
+    private final int level;
+    private final int minBytes;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledDeflaters = new AtomicInteger();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+
+    GzipCompressor(int level, int minBytes) {
+        this.level = level;
+        this.minBytes = minBytes;
+    }
+
+    /**
+     * @param size the total bytes of the lines
+     * @return the gzipped lines, or null if they are smaller than minBytes and should be sent as they are
+     */
+    byte[] compress(List<byte[]> lines, int size) {
+        if (size < minBytes) return null;
+
+        Deflater deflater = acquire();
+        try {
+            CRC32 crc = new CRC32();
+            // Logs usually compress to well under a quarter, the buffer grows if these don't
+            byte[] out = Arrays.copyOf(HEADER, Math.max(CHUNK_BYTES, size / 4));
+            int length = HEADER.length;
+            for (byte[] line : lines) {
+                crc.update(line, 0, line.length);
+                deflater.setInput(line, 0, line.length);
+                while (!deflater.needsInput()) {
+                    if (length == out.length) out = Arrays.copyOf(out, out.length * 2);
+                    length += deflater.deflate(out, length, out.length - length, Deflater.NO_FLUSH);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == out.length) out = Arrays.copyOf(out, out.length * 2);
+                length += deflater.deflate(out, length, out.length - length, Deflater.NO_FLUSH);
+            }
+            if (out.length - length < TRAILER_BYTES) out = Arrays.copyOf(out, length + TRAILER_BYTES);
+            length = writeIntLE(out, length, (int) crc.getValue());
+            length = writeIntLE(out, length, size);
+
+            uncompressedBytes.add(size);
+            compressedBytes.add(length);
+            return length == out.length ? out : Arrays.copyOf(out, length);
+        } finally {
+            release(deflater);
+        }
+    }
+
+    /**
+     * Whether the bytes start like gzip. Lines are JSON, so they never do
+     */
+    static boolean isGzipped(byte[] bytes) {
+        return bytes.length >= HEADER.length && bytes[0] == HEADER[0] && bytes[1] == HEADER[1];
+    }
+
+    /**
+     * @return up to maxBytes of the start of the uncompressed bytes, fewer if they are shorter
+     */
+    static byte[] decompressHead(byte[] gzipped, int maxBytes) throws IOException {
+        byte[] head = new byte[maxBytes];
+        int read = 0;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            int n;
+            while (read < maxBytes && (n = in.read(head, read, maxBytes - read)) > 0) read += n;
+        }
+        return read == maxBytes ? head : Arrays.copyOf(head, read);
+    }
+
+    /**
+     * Frees the pooled Deflaters, compressing afterwards creates new ones
+     */
+    void close() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    /**
+     * Bytes of the bulks that were compressed, before compression
+     */
+    long getUncompressedBytes() {
+        return uncompressedBytes.sum();
+    }
+
+    long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    private Deflater acquire() {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) return new Deflater(level, true);
+        pooledDeflaters.decrementAndGet();
+        return deflater;
+    }
+
+    private void release(Deflater deflater) {
+        deflater.reset();
+        if (pooledDeflaters.incrementAndGet() > MAX_POOLED_DEFLATERS) {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        deflaters.offer(deflater);
+    }
+
+    private static int writeIntLE(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >> 8);
+        out[offset + 2] = (byte) (value >> 16);
+        out[offset + 3] = (byte) (value >> 24);
+        return offset + 4;
+    }
+}
@@ -0,0 +1,42 @@
+package io.logz.logback;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the connections opened to the listener, in total and over the last minute
+ */
+class HandshakeCounter {
+
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final LongAdder total = new LongAdder();
+    // Start times of the handshakes of the last minute. Handshakes are rare once connections are kept, so this stays short
+    private final Deque<Long> recent = new ConcurrentLinkedDeque<>();
+
+    void increment() {
+        long now = System.nanoTime();
+        total.increment();
+        recent.addLast(now);
+        prune(now);
+    }
+
+    long getTotal() {
+        return total.sum();
+    }
+
+    int getPerMinute() {
+        prune(System.nanoTime());
+        return recent.size();
+    }
+
+    private void prune(long now) {
+        Iterator<Long> iterator = recent.iterator();
+        while (iterator.hasNext() && now - iterator.next() > WINDOW_NANOS) {
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package io.logz.logback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Incremental parser of a single HTTP/1.1 response, fed with the bytes as they come from the connection, so both
+ * the blocking and the non-blocking transports can use it. Handles interim 1xx responses, and bodies framed by
+ * Content-Length, by chunks, or by the end of the connection. Only the start of the body is kept, as it is only
+ * read to report errors, the rest is read and discarded.
+ */
+class HttpResponseParser {
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private enum State {
+        STATUS_LINE, HEADERS, BODY, BODY_UNTIL_CLOSE, CHUNK_SIZE, CHUNK_DATA, CHUNK_DATA_END, TRAILERS, DONE
+    }
+
+    private final StringBuilder line = new StringBuilder();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private State state = State.STATUS_LINE;
+    private boolean started = false;
+
+    private int code;
+    private String message;
+    private boolean http10;
+    private long contentLength;
+    private boolean chunked;
+    private boolean connectionClose;
+    private long remaining;
+    private long retryAfterMillis;
+
+    /**
+     * Consumes bytes up to the end of the response, and leaves whatever follows it in the buffer
+     */
+    void feed(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining() && state != State.DONE) {
+            started = true;
+            switch (state) {
+                case BODY:
+                case CHUNK_DATA:
+                    int count = (int) Math.min(remaining, bytes.remaining());
+                    copy(bytes, count);
+                    remaining -= count;
+                    if (remaining == 0) state = state == State.BODY ? State.DONE : State.CHUNK_DATA_END;
+                    break;
+                case BODY_UNTIL_CLOSE:
+                    copy(bytes, bytes.remaining());
+                    break;
+                default:
+                    String completeLine = readLine(bytes);
+                    if (completeLine != null) onLine(completeLine);
+            }
+        }
+    }
+
+    /**
+     * The connection ended. Completes a body that ends with the connection, and fails any other unfinished response.
+     */
+    void endOfStream() throws IOException {
+        if (state == State.BODY_UNTIL_CLOSE) {
+            state = State.DONE;
+        } else if (state != State.DONE) {
+            throw new EOFException(started ? "Connection closed by the listener in the middle of the response" : "Connection closed by the listener");
+        }
+    }
+
+    boolean isComplete() {
+        return state == State.DONE;
+    }
+
+    /**
+     * Whether any byte of the response was received
+     */
+    boolean hasStarted() {
+        return started;
+    }
+
+    /**
+     * Whether the connection can carry another request, once the response is complete
+     */
+    boolean isKeepAlive() {
+        return !connectionClose && !http10;
+    }
+
+    LogzioTransport.Response getResponse() {
+        return new LogzioTransport.Response(code, message, body.toByteArray(), retryAfterMillis);
+    }
+
+    private void onLine(String completeLine) throws IOException {
+        switch (state) {
+            case STATUS_LINE:
+                parseStatusLine(completeLine);
+                state = State.HEADERS;
+                break;
+            case HEADERS:
+                if (completeLine.isEmpty()) {
+                    onHeadersEnd();
+                } else {
+                    parseHeader(completeLine);
+                }
+                break;
+            case CHUNK_SIZE:
+                int extension = completeLine.indexOf(';');
+                try {
+                    remaining = Long.parseLong((extension >= 0 ? completeLine.substring(0, extension) : completeLine).trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed chunk size: " + completeLine);
+                }
+                state = remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+                break;
+            case CHUNK_DATA_END:
+                state = State.CHUNK_SIZE;
+                break;
+            case TRAILERS:
+                if (completeLine.isEmpty()) state = State.DONE;
+                break;
+            default:
+                throw new IllegalStateException(state.name());
+        }
+    }
+
+    private void parseStatusLine(String statusLine) throws IOException {
+        String[] status = statusLine.split(" ", 3);
+        if (status.length < 2 || !status[0].startsWith("HTTP/")) throw new IOException("Malformed status line: " + statusLine);
+        try {
+            code = Integer.parseInt(status[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+        message = status.length > 2 ? status[2] : "";
+        http10 = status[0].equals("HTTP/1.0");
+        contentLength = -1;
+        chunked = false;
+        connectionClose = false;
+        retryAfterMillis = 0;
+    }
+
+    private void parseHeader(String header) throws IOException {
+        int colon = header.indexOf(':');
+        if (colon <= 0) return;
+        String name = header.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+        if (name.equals("retry-after")) {
+            // Dates are case sensitive
+            retryAfterMillis = parseRetryAfter(header.substring(colon + 1), System.currentTimeMillis());
+            return;
+        }
+        String value = header.substring(colon + 1).trim().toLowerCase(Locale.ROOT);
+        switch (name) {
+            case "content-length":
+                try {
+                    contentLength = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed Content-Length: " + value);
+                }
+                break;
+            case "transfer-encoding":
+                chunked = value.contains("chunked");
+                break;
+            case "connection":
+                connectionClose = value.contains("close");
+                break;
+        }
+    }
+
+    private void onHeadersEnd() {
+        if (code < 200) {
+            // An interim response, the final one follows
+            state = State.STATUS_LINE;
+        } else if (code == 204 || code == 304) {
+            state = State.DONE;
+        } else if (chunked) {
+            state = State.CHUNK_SIZE;
+        } else if (contentLength >= 0) {
+            remaining = contentLength;
+            state = contentLength == 0 ? State.DONE : State.BODY;
+        } else {
+            // No framing, the body ends with the connection
+            connectionClose = true;
+            state = State.BODY_UNTIL_CLOSE;
+        }
+    }
+
+    /**
+     * Parses a Retry-After header, either seconds or an HTTP date
+     *
+     * @return the time to wait in milliseconds, 0 if the value is malformed or already passed
+     */
+    static long parseRetryAfter(String value, long nowMillis) {
+        if (value == null) return 0;
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(trimmed) * 1000);
+        } catch (NumberFormatException e) {
+            // Not seconds, so a date
+        }
+        try {
+            return Math.max(0, ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - nowMillis);
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the line without its CRLF, or null if the buffer ended before it
+     */
+    private String readLine(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            char c = (char) (bytes.get() & 0xff);
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') line.setLength(length - 1);
+                String completeLine = line.toString();
+                line.setLength(0);
+                return completeLine;
+            }
+            if (line.length() == MAX_LINE_LENGTH) throw new IOException("Response line longer than " + MAX_LINE_LENGTH + " bytes");
+            line.append(c);
+        }
+        return null;
+    }
+
+    /**
+     * Consumes count bytes of the body, and keeps those that fit under MAX_BODY_BYTES
+     */
+    private void copy(ByteBuffer bytes, int count) {
+        int kept = Math.min(count, MAX_BODY_BYTES - body.size());
+        if (kept > 0) {
+            if (bytes.hasArray()) {
+                body.write(bytes.array(), bytes.arrayOffset() + bytes.position(), kept);
+            } else {
+                byte[] chunk = new byte[kept];
+                bytes.duplicate().get(chunk);
+                body.write(chunk, 0, kept);
+            }
+        }
+        ((Buffer) bytes).position(bytes.position() + count);
+    }
+}
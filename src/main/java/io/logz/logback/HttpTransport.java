@@ -0,0 +1,174 @@
+package io.logz.logback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default transport: blocking HTTP requests, each on one of maxInFlightRequests threads.
+ *
+ * With persistentConnections (the default) the requests go over warm keep-alive connections, see
+ * {@link ListenerConnectionPool}. Otherwise, or when a proxy is configured for the listener, every request goes
+ * over a new HttpURLConnection.
+ */
+public class HttpTransport implements LogzioTransport {
+
+    private boolean persistentConnections = true;
+
+    private volatile Settings settings;
+    private volatile ListenerConnectionPool connectionPool;
+    private volatile ExecutorService executor;
+
+    public boolean isPersistentConnections() {
+        return persistentConnections;
+    }
+
+    public void setPersistentConnections(boolean persistentConnections) {
+        this.persistentConnections = persistentConnections;
+    }
+
+    @Override
+    public synchronized void start(Settings settings) {
+        this.settings = settings;
+        if (persistentConnections && isDirect(settings.getListenerUrl())) {
+            if (connectionPool == null) {
+                connectionPool = new ListenerConnectionPool(settings.getListenerUrl(), settings.getConnectTimeout(),
+                        settings.getSocketTimeout(), settings.getMaxInFlightRequests());
+            }
+            connectionPool.start();
+        }
+        if (executor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(settings.getMaxInFlightRequests(), runnable -> {
+                Thread thread = new Thread(runnable, "logzio-sender-" + settings.getName() + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        ListenerConnectionPool pool = connectionPool;
+        if (pool != null) {
+            executor.execute(() -> {
+                try {
+                    pool.warmUp(settings.getMaxInFlightRequests());
+                } catch (IOException | RuntimeException e) {
+                    // The first bulk will open its connection, and report if it can't
+                }
+            });
+        }
+    }
+
+    @Override
+    public CompletableFuture<Response> send(byte[] payload, boolean gzip) {
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        ExecutorService currentExecutor = executor;
+        if (currentExecutor == null) {
+            response.completeExceptionally(new IOException("The transport is not started"));
+            return response;
+        }
+        try {
+            currentExecutor.execute(() -> {
+                try {
+                    ListenerConnectionPool pool = connectionPool;
+                    response.complete(pool != null ? pool.post(payload, gzip) : postWithUrlConnection(payload, gzip));
+                } catch (Throwable e) {
+                    response.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            response.completeExceptionally(new IOException("The transport is stopped", e));
+        }
+        return response;
+    }
+
+    @Override
+    public synchronized void stop() {
+        ExecutorService currentExecutor = executor;
+        executor = null;
+        if (currentExecutor != null) currentExecutor.shutdownNow();
+        if (connectionPool != null) connectionPool.stop();
+    }
+
+    @Override
+    public long getHandshakes() {
+        ListenerConnectionPool pool = connectionPool;
+        return pool == null ? 0 : pool.getHandshakes();
+    }
+
+    @Override
+    public int getHandshakesPerMinute() {
+        ListenerConnectionPool pool = connectionPool;
+        return pool == null ? 0 : pool.getHandshakesPerMinute();
+    }
+
+    @Override
+    public long getReusedConnectionRequests() {
+        ListenerConnectionPool pool = connectionPool;
+        return pool == null ? 0 : pool.getReusedRequests();
+    }
+
+    @Override
+    public int getOpenConnections() {
+        ListenerConnectionPool pool = connectionPool;
+        return pool == null ? 0 : pool.getOpenConnections();
+    }
+
+    private Response postWithUrlConnection(byte[] payload, boolean gzip) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) settings.getListenerUrl().openConnection();
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-length", String.valueOf(payload.length));
+        conn.setRequestProperty("Content-Type", "text/plain");
+        if (gzip) {
+            conn.setRequestProperty("Content-Encoding", "gzip");
+        }
+        conn.setReadTimeout(settings.getSocketTimeout());
+        conn.setConnectTimeout(settings.getConnectTimeout());
+        conn.setDoOutput(true);
+        conn.setDoInput(true);
+
+        conn.getOutputStream().write(payload);
+
+        int responseCode = conn.getResponseCode();
+        String responseMessage = conn.getResponseMessage();
+        byte[] body = new byte[0];
+        InputStream errorStream = conn.getErrorStream();
+        if (responseCode == HttpURLConnection.HTTP_BAD_REQUEST && errorStream != null) {
+            try (InputStream in = errorStream) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+                body = out.toByteArray();
+            } catch (IOException ignored) {
+                // Nothing else to report
+            }
+        }
+        long retryAfterMillis = HttpResponseParser.parseRetryAfter(conn.getHeaderField("Retry-After"), System.currentTimeMillis());
+        return new Response(responseCode, responseMessage, body, retryAfterMillis);
+    }
+
+    /**
+     * The connection pool talks to the listener directly, so HttpURLConnection is kept for proxied listeners
+     */
+    private static boolean isDirect(URL url) {
+        ProxySelector proxySelector = ProxySelector.getDefault();
+        if (proxySelector == null) return true;
+        try {
+            for (Proxy proxy : proxySelector.select(url.toURI())) {
+                if (proxy.type() != Proxy.Type.DIRECT) return false;
+            }
+            return true;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package io.logz.logback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps lines in a bounded off-heap buffer, and spills them to the persisted queue under bufferDir only when the
+ * memory buffer crosses the spill threshold or the listener is unreachable.
+ *
+ * When spilling starts, whatever is in memory is moved to disk first, and new lines keep going to disk
+ * as long as the spill is not empty, so the disk always holds the oldest lines and order is kept.
+ * Lines are taken from the disk spill first, and once it is empty appending goes back to memory.
+ */
+class HybridLogsBuffer implements LogsBuffer {
+
+    private final MemoryLogsBuffer memory;
+    private final DiskLogsBuffer disk;
+    private final int spillThresholdBytes;
+    private final LongAdder spilledBytes = new LongAdder();
+    private final LongAdder unspilledBytes = new LongAdder();
+
+    private volatile boolean listenerReachable = true;
+
+    HybridLogsBuffer(MemoryLogsBuffer memory, DiskLogsBuffer disk, int spillThresholdPercent) {
+        this.memory = memory;
+        this.disk = disk;
+        this.spillThresholdBytes = (int) ((long) memory.getCapacity() * spillThresholdPercent / 100);
+    }
+
+    @Override
+    public synchronized boolean enqueue(byte[] line) {
+        if (shouldSpill(line.length) && spillMemory()) {
+            if (disk.enqueue(line)) {
+                spilledBytes.add(line.length);
+                return true;
+            }
+        }
+        // Not spilling, or the file system is too full to spill, so memory is all there is
+        return memory.enqueue(line);
+    }
+
+    @Override
+    public synchronized boolean enqueue(List<byte[]> lines) {
+        int batchBytes = 0;
+        for (byte[] line : lines) batchBytes += line.length;
+        if (shouldSpill(batchBytes) && spillMemory()) {
+            if (disk.enqueue(lines)) {
+                spilledBytes.add(batchBytes);
+                return true;
+            }
+        }
+        return memory.enqueue(lines);
+    }
+
+    @Override
+    public synchronized byte[] dequeue() {
+        if (!disk.isEmpty()) {
+            byte[] line = disk.dequeue();
+            if (line != null) {
+                unspilledBytes.add(line.length);
+                return line;
+            }
+        }
+        return memory.dequeue();
+    }
+
+    /**
+     * Peeks from the disk spill alone as long as it is not empty. If a spill starts before the lines are removed,
+     * they are moved to the (then empty) disk spill in order, so {@link #remove(int)} still removes the right ones.
+     */
+    @Override
+    public synchronized List<byte[]> peek(int maxLines) {
+        return disk.isEmpty() ? memory.peek(maxLines) : disk.peek(maxLines);
+    }
+
+    @Override
+    public synchronized long remove(int lines) {
+        if (disk.isEmpty()) return memory.remove(lines);
+        long bytes = disk.remove(lines);
+        unspilledBytes.add(bytes);
+        return bytes;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return disk.isEmpty() && memory.isEmpty();
+    }
+
+    @Override
+    public synchronized long size() {
+        return disk.size() + memory.size();
+    }
+
+    @Override
+    public void gc() {
+        disk.gc();
+    }
+
+    @Override
+    public void sync() {
+        disk.sync();
+    }
+
+    @Override
+    public void listenerReachabilityChanged(boolean reachable) {
+        listenerReachable = reachable;
+    }
+
+    long getSpilledBytes() {
+        return spilledBytes.sum();
+    }
+
+    long getUnspilledBytes() {
+        return unspilledBytes.sum();
+    }
+
+    private boolean shouldSpill(int bytes) {
+        return !listenerReachable || !disk.isEmpty() || memory.getUsedBytes() + bytes > spillThresholdBytes;
+    }
+
+    /**
+     * Moves everything in memory to the disk spill, keeping the order
+     *
+     * @return false if the file system is too full, in which case memory is left as it was
+     */
+    private boolean spillMemory() {
+        if (memory.isEmpty()) return true;
+        List<byte[]> lines = new ArrayList<>();
+        int bytes = 0;
+        byte[] line;
+        while ((line = memory.dequeue()) != null) {
+            lines.add(line);
+            bytes += line.length;
+        }
+        if (!disk.enqueue(lines)) {
+            // Nothing else could touch memory meanwhile, and the lines just came out of it, so they fit back in order
+            memory.enqueue(lines);
+            return false;
+        }
+        spilledBytes.add(bytes);
+        return true;
+    }
+}
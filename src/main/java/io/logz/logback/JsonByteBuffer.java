@@ -0,0 +1,196 @@
+package io.logz.logback;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable, reusable byte buffer that knows how to write JSON tokens as UTF-8.
+ * String escaping follows the rules of Gson's JsonWriter (non html-safe mode), so the output is
+ * byte-for-byte identical to what JsonObject.toString() produces for the same fields.
+ *
+ * Not thread safe - every appending thread should use its own instance.
+ */
+class JsonByteBuffer {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+    // Buffers that grew beyond this size (a giant stack trace, for example) are not kept around after reset()
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private final int initialCapacity;
+    private byte[] buf;
+    private int count;
+
+    JsonByteBuffer() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    JsonByteBuffer(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.buf = new byte[initialCapacity];
+    }
+
+    void reset() {
+        count = 0;
+        if (buf.length > MAX_RETAINED_CAPACITY) {
+            buf = new byte[initialCapacity];
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    byte[] array() {
+        return buf;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    void writeByte(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    void writeBytes(byte[] bytes) {
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(count + length);
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+    }
+
+    void writeNull() {
+        writeBytes(NULL);
+    }
+
+    /**
+     * Writes the value as a JSON number
+     */
+    void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        ensureCapacity(count + 20);
+        if (value < 0) {
+            buf[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long remaining = value / 10; remaining > 0; remaining /= 10) digits++;
+        int pos = count + digits;
+        count = pos;
+        do {
+            buf[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+    }
+
+    /**
+     * Writes the given value as a quoted and escaped JSON string, or as the JSON null literal
+     */
+    void writeString(String value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        int length = value.length();
+        // Every char takes at most 3 UTF-8 bytes, escapes are handled separately below
+        ensureCapacity(count + length * 3 + 2);
+        byte[] b = buf;
+        int pos = count;
+        b[pos++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    b[pos++] = (byte) c;
+                    continue;
+                }
+                // Escapes take up to 6 bytes, make sure we still fit the rest of the string
+                count = pos;
+                ensureCapacity(pos + 6 + (length - i) * 3 + 1);
+                b = buf;
+                pos = writeEscaped(b, pos, c);
+            } else if (c < 0x800) {
+                b[pos++] = (byte) (0xc0 | (c >> 6));
+                b[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (c == '\u2028' || c == '\u2029') {
+                count = pos;
+                ensureCapacity(pos + 6 + (length - i) * 3 + 1);
+                b = buf;
+                pos = writeUnicodeEscape(b, pos, c);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    b[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                    b[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    b[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    b[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    // Same replacement String.getBytes() uses for malformed input
+                    b[pos++] = '?';
+                }
+            } else {
+                b[pos++] = (byte) (0xe0 | (c >> 12));
+                b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        b[pos++] = '"';
+        count = pos;
+    }
+
+    private static int writeEscaped(byte[] b, int pos, char c) {
+        b[pos++] = '\\';
+        switch (c) {
+            case '"':
+                b[pos++] = '"';
+                return pos;
+            case '\\':
+                b[pos++] = '\\';
+                return pos;
+            case '\t':
+                b[pos++] = 't';
+                return pos;
+            case '\b':
+                b[pos++] = 'b';
+                return pos;
+            case '\n':
+                b[pos++] = 'n';
+                return pos;
+            case '\r':
+                b[pos++] = 'r';
+                return pos;
+            case '\f':
+                b[pos++] = 'f';
+                return pos;
+            default:
+                return writeUnicodeEscape(b, pos - 1, c);
+        }
+    }
+
+    private static int writeUnicodeEscape(byte[] b, int pos, char c) {
+        b[pos++] = '\\';
+        b[pos++] = 'u';
+        b[pos++] = HEX[(c >> 12) & 0xf];
+        b[pos++] = HEX[(c >> 8) & 0xf];
+        b[pos++] = HEX[(c >> 4) & 0xf];
+        b[pos++] = HEX[c & 0xf];
+        return pos;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, minCapacity));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.logz.logback;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in power of two buckets of nanoseconds, so recording is a couple of adds with no lock, at the
+ * price of percentiles that are only accurate to a factor of two (the upper bound of their bucket is returned).
+ */
+class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        // Bucket i holds values up to 2^i - 1
+        buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        totalNanos.add(value);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getMeanNanos() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : totalNanos.sum() / recorded;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket the percentile falls in, 0 if nothing was recorded
+     */
+    long getPercentileNanos(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+        return Long.MAX_VALUE;
+    }
+}
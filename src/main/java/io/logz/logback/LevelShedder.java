@@ -0,0 +1,74 @@
+package io.logz.logback;
+
+import java.util.Arrays;
+
+/**
+ * Decides which levels to shed from the ring buffer depth. Up to three watermarks, given in percents of the
+ * ring capacity, define the shedding tiers: above the first TRACE and DEBUG are shed, above the second INFO too,
+ * and above the third WARN too. ERROR is never shed here, it is only dropped by the overflow policy once the ring is full.
+ */
+class LevelShedder {
+
+    static final int MAX_TIERS = 3;
+
+    // Depth, in slots, from which each tier starts
+    private final int[] tierDepths;
+
+    // Only written when the tier changes, so the appending threads don't keep invalidating each other's cache line
+    private volatile int tier = 0;
+
+    LevelShedder(int[] watermarkPercents, int capacity) {
+        tierDepths = new int[watermarkPercents.length];
+        for (int i = 0; i < watermarkPercents.length; i++) {
+            tierDepths[i] = (int) Math.ceil(capacity * watermarkPercents[i] / 100.0);
+        }
+    }
+
+    /**
+     * Parses a comma separated list of up to {@link #MAX_TIERS} ascending percents between 1 and 100
+     *
+     * @throws IllegalArgumentException if the list is malformed
+     */
+    static int[] parseWatermarks(String watermarks) {
+        String[] parts = watermarks.split(",");
+        if (parts.length > MAX_TIERS) {
+            throw new IllegalArgumentException("at most " + MAX_TIERS + " watermarks are supported");
+        }
+        int[] percents = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                percents[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("'" + parts[i].trim() + "' is not a number");
+            }
+            if (percents[i] < 1 || percents[i] > 100) {
+                throw new IllegalArgumentException("watermarks must be between 1 and 100, got " + percents[i]);
+            }
+            if (i > 0 && percents[i] <= percents[i - 1]) {
+                throw new IllegalArgumentException("watermarks must be ascending, got " + Arrays.toString(percents));
+            }
+        }
+        return percents;
+    }
+
+    /**
+     * @param levelIndex the event level, as indexed in {@link DroppedEvents#LEVELS}
+     * @param depth the current ring buffer depth
+     */
+    boolean shouldShed(int levelIndex, int depth) {
+        int currentTier = 0;
+        while (currentTier < tierDepths.length && depth >= tierDepths[currentTier]) {
+            currentTier++;
+        }
+        if (currentTier != tier) tier = currentTier;
+        // Tier 1 sheds TRACE and DEBUG (indexes 0 and 1), every further tier sheds one more level
+        return levelIndex <= currentTier && currentTier > 0;
+    }
+
+    /**
+     * 0 when nothing is shed, up to the number of watermarks
+     */
+    int getTier() {
+        return tier;
+    }
+}
@@ -0,0 +1,119 @@
+package io.logz.logback;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops the sender from hitting a listener that keeps failing. After failureThreshold drains in a row failed, the
+ * circuit opens and drains are skipped, so events only accumulate in the buffer. Once the open time is over, the
+ * next drain is a half-open probe: a single bulk, tried once. If it is acknowledged the circuit closes, otherwise
+ * it opens again for twice as long, up to maxOpenMillis, with jitter so senders don't come back all at once.
+ *
+ * A Retry-After from the listener opens the circuit right away, for at least that long.
+ */
+class ListenerCircuitBreaker {
+
+    enum State {
+        CLOSED("closed"),
+        OPEN("open"),
+        HALF_OPEN("half-open");
+
+        private final String name;
+
+        State(String name) {
+            this.name = name;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    private final int failureThreshold;
+    private final long initialOpenMillis;
+    private final long maxOpenMillis;
+    private final LongSupplier clock;
+
+    private volatile State state = State.CLOSED;
+    // Only touched by the draining thread
+    private int consecutiveFailures = 0;
+    private int consecutiveOpens = 0;
+    private long openUntilMillis;
+
+    /**
+     * @param failureThreshold failed drains in a row before opening, 0 to only open on a Retry-After
+     */
+    ListenerCircuitBreaker(int failureThreshold, long initialOpenMillis, long maxOpenMillis) {
+        this(failureThreshold, initialOpenMillis, maxOpenMillis, System::currentTimeMillis);
+    }
+
+    ListenerCircuitBreaker(int failureThreshold, long initialOpenMillis, long maxOpenMillis, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.initialOpenMillis = initialOpenMillis;
+        this.maxOpenMillis = Math.max(initialOpenMillis, maxOpenMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * Called when a drain starts
+     *
+     * @return false if the circuit is open and the drain should leave the buffer alone
+     */
+    boolean allowDrain() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() < openUntilMillis) return false;
+            state = State.HALF_OPEN;
+        }
+        return true;
+    }
+
+    /**
+     * Whether the drain is a probe, sending a single bulk once
+     */
+    boolean isProbing() {
+        return state == State.HALF_OPEN;
+    }
+
+    /**
+     * Lets the next drain probe right away, for the final drain on stop
+     */
+    void probeNow() {
+        if (state == State.OPEN) state = State.HALF_OPEN;
+    }
+
+    void onSuccess() {
+        consecutiveFailures = 0;
+        consecutiveOpens = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * @param retryAfterMillis what the listener asked to wait, 0 if it didn't
+     * @return how long the circuit opened for, 0 if it is still closed
+     */
+    long onFailure(long retryAfterMillis) {
+        consecutiveFailures++;
+        boolean open = state == State.HALF_OPEN || retryAfterMillis > 0
+                || (failureThreshold > 0 && consecutiveFailures >= failureThreshold);
+        if (!open) return 0;
+
+        long backoffMillis = initialOpenMillis << Math.min(consecutiveOpens, 30);
+        long openMillis = Math.max(retryAfterMillis, withJitter(Math.min(backoffMillis, maxOpenMillis)));
+        consecutiveOpens++;
+        openUntilMillis = clock.getAsLong() + openMillis;
+        state = State.OPEN;
+        return openMillis;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    /**
+     * A random time between half the given time and all of it
+     */
+    static long withJitter(long millis) {
+        if (millis <= 1) return millis;
+        return millis / 2 + ThreadLocalRandom.current().nextLong(millis - millis / 2 + 1);
+    }
+}
@@ -0,0 +1,226 @@
+package io.logz.logback;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistent HTTP/1.1 keep-alive connections to the listener, so a TCP and TLS handshake is paid once per connection
+ * instead of once per bulk. HttpURLConnection only keeps idle connections for a few seconds, which is less than
+ * the drain interval, and has no way to open them ahead of the first bulk.
+ *
+ * Up to maxIdleConnections are kept between requests, most recently used first. A kept connection may have been
+ * closed by the listener in the meantime, so a request that fails on one before any of its response arrived is sent
+ * again once over a new connection.
+ */
+class ListenerConnectionPool {
+
+    private final ListenerEndpoint endpoint;
+    private final int connectTimeout;
+    private final int socketTimeout;
+    private final int maxIdleConnections;
+
+    private final Deque<Connection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final HandshakeCounter handshakes = new HandshakeCounter();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder reusedRequests = new LongAdder();
+    private volatile boolean closed = false;
+
+    ListenerConnectionPool(URL url, int connectTimeout, int socketTimeout, int maxIdleConnections) {
+        this.endpoint = new ListenerEndpoint(url);
+        this.connectTimeout = connectTimeout;
+        this.socketTimeout = socketTimeout;
+        this.maxIdleConnections = Math.max(1, maxIdleConnections);
+    }
+
+    /**
+     * Opens connections until that many are idle in the pool, so the first bulks don't pay for the handshakes
+     */
+    void warmUp(int connections) throws IOException {
+        while (!closed && idleCount.get() < Math.min(connections, maxIdleConnections)) {
+            release(open());
+        }
+    }
+
+    /**
+     * Posts the payload and reads the whole response, over a pooled connection if there is one
+     */
+    LogzioTransport.Response post(byte[] payload, boolean gzip) throws IOException {
+        requests.increment();
+        Connection connection = acquire();
+        if (connection != null) {
+            reusedRequests.increment();
+            try {
+                return exchange(connection, payload, gzip);
+            } catch (SocketTimeoutException e) {
+                // The listener is slow rather than the connection stale, sending again would only wait twice as long
+                throw e;
+            } catch (IOException e) {
+                // The listener started answering, so it may have taken the bulk already
+                if (connection.hasResponseStarted()) throw e;
+                // Most likely closed by the listener while it was idle, the bulk is sent again over a new connection
+            }
+        }
+        return exchange(open(), payload, gzip);
+    }
+
+    /**
+     * Lets connections be kept again after {@link #stop()}, for a sender started once more
+     */
+    void start() {
+        closed = false;
+    }
+
+    /**
+     * Closes the idle connections, the ones in use are closed once their request is done
+     */
+    void stop() {
+        closed = true;
+        Connection connection;
+        while ((connection = acquire()) != null) {
+            connection.close();
+        }
+    }
+
+    long getHandshakes() {
+        return handshakes.getTotal();
+    }
+
+    int getHandshakesPerMinute() {
+        return handshakes.getPerMinute();
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Requests that were sent over an already open connection
+     */
+    long getReusedRequests() {
+        return reusedRequests.sum();
+    }
+
+    int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    private LogzioTransport.Response exchange(Connection connection, byte[] payload, boolean gzip) throws IOException {
+        HttpResponseParser parser;
+        try {
+            parser = connection.exchange(payload, gzip);
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+        if (parser.isKeepAlive()) {
+            release(connection);
+        } else {
+            connection.close();
+        }
+        return parser.getResponse();
+    }
+
+    private Connection acquire() {
+        Connection connection = idle.pollFirst();
+        if (connection != null) idleCount.decrementAndGet();
+        return connection;
+    }
+
+    private void release(Connection connection) {
+        if (closed || idleCount.incrementAndGet() > maxIdleConnections) {
+            idleCount.decrementAndGet();
+            connection.close();
+            return;
+        }
+        idle.offerFirst(connection);
+    }
+
+    private Connection open() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(socketTimeout);
+            socket.connect(new InetSocketAddress(endpoint.host, endpoint.port), connectTimeout);
+            if (endpoint.tls) {
+                SSLSocket sslSocket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, endpoint.host, endpoint.port, true);
+                // Verify the host name like HttpsURLConnection does, the raw SSLSocket doesn't on its own
+                SSLParameters parameters = sslSocket.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(parameters);
+                sslSocket.startHandshake();
+                socket = sslSocket;
+            }
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+        // Only once connected, and through the TLS handshake, so refused or failed attempts don't count
+        handshakes.increment();
+        openConnections.incrementAndGet();
+        return new Connection(socket);
+    }
+
+    private class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final byte[] readBuffer = new byte[8192];
+        // Of the last exchange
+        private HttpResponseParser parser;
+        private boolean socketClosed = false;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = socket.getInputStream();
+            this.out = socket.getOutputStream();
+        }
+
+        HttpResponseParser exchange(byte[] payload, boolean gzip) throws IOException {
+            parser = new HttpResponseParser();
+            out.write(endpoint.requestHead(payload.length, gzip));
+            out.write(payload);
+            out.flush();
+
+            while (!parser.isComplete()) {
+                int read = in.read(readBuffer);
+                if (read == -1) {
+                    parser.endOfStream();
+                } else {
+                    parser.feed(ByteBuffer.wrap(readBuffer, 0, read));
+                }
+            }
+            return parser;
+        }
+
+        boolean hasResponseStarted() {
+            return parser != null && parser.hasStarted();
+        }
+
+        void close() {
+            if (socketClosed) return;
+            socketClosed = true;
+            openConnections.decrementAndGet();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing to do with it
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.logz.logback;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Where the socket based transports post bulks to, and the HTTP/1.1 request head they post them with
+ */
+class ListenerEndpoint {
+
+    final String host;
+    final int port;
+    final boolean tls;
+    private final String hostHeader;
+    private final String requestTarget;
+
+    ListenerEndpoint(URL url) {
+        String protocol = url.getProtocol().toLowerCase(Locale.ROOT);
+        if (!protocol.equals("http") && !protocol.equals("https")) {
+            throw new IllegalArgumentException("Unsupported protocol " + url.getProtocol());
+        }
+        this.host = url.getHost();
+        this.port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        this.tls = protocol.equals("https");
+        this.hostHeader = url.getPort() != -1 ? url.getHost() + ":" + url.getPort() : url.getHost();
+        this.requestTarget = url.getFile().isEmpty() ? "/" : url.getFile();
+    }
+
+    byte[] requestHead(int contentLength, boolean gzip) {
+        StringBuilder head = new StringBuilder(256)
+                .append("POST ").append(requestTarget).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(hostHeader).append("\r\n")
+                .append("Content-Type: text/plain\r\n")
+                .append("Content-Length: ").append(contentLength).append("\r\n");
+        if (gzip) head.append("Content-Encoding: gzip\r\n");
+        return head.append("\r\n").toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
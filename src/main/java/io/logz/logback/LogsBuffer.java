@@ -0,0 +1,93 @@
+package io.logz.logback;
+
+import java.util.List;
+
+/**
+ * Where the sender keeps serialized log lines until they are shipped. Producers are the appending threads
+ * (or the ring buffer thread), the only consumer is the sender's drain task.
+ *
+ * The sender reads lines with {@link #peek(int)} and removes them with {@link #remove(int)} only once the
+ * listener acknowledged them, so lines that were not shipped yet stay at the head of the buffer.
+ */
+interface LogsBuffer {
+
+    enum Mode {
+        // Persisted queue under bufferDir, survives restarts
+        DISK("disk"),
+        // Bounded off-heap memory, no file I/O at all. Whatever was not shipped is lost with the process
+        MEMORY("memory"),
+        // Bounded off-heap memory, spilling to the persisted queue under bufferDir when it fills up or the listener is down
+        HYBRID("hybrid");
+
+        private final String name;
+
+        Mode(String name) {
+            this.name = name;
+        }
+
+        static Mode fromName(String name) {
+            for (Mode mode : values()) {
+                if (mode.name.equalsIgnoreCase(name)) return mode;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * @return false if the line was dropped since the buffer is full
+     */
+    boolean enqueue(byte[] line);
+
+    /**
+     * Enqueues all the lines, or none of them if the buffer is full
+     *
+     * @return false if the lines were dropped
+     */
+    boolean enqueue(List<byte[]> lines);
+
+    /**
+     * @return the oldest line, or null if the buffer is empty
+     */
+    byte[] dequeue();
+
+    /**
+     * @return up to maxLines of the oldest lines, without removing them
+     */
+    List<byte[]> peek(int maxLines);
+
+    /**
+     * Removes the oldest lines, usually the ones returned by the last {@link #peek(int)}
+     *
+     * @return the number of bytes removed
+     */
+    long remove(int lines);
+
+    boolean isEmpty();
+
+    /**
+     * Lines enqueued and not removed yet
+     */
+    long size();
+
+    /**
+     * Called by the sender when shipping starts failing, or succeeds again
+     */
+    default void listenerReachabilityChanged(boolean reachable) {
+    }
+
+    /**
+     * Releases whatever storage is no longer needed for the lines already dequeued
+     */
+    void gc();
+
+    /**
+     * Forces the lines enqueued so far to stable storage, if the buffer has any
+     */
+    default void sync() {
+    }
+}
@@ -0,0 +1,354 @@
+package io.logz.logback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer ring of pre-allocated slots that holds serialized log lines
+ * between the appending threads and the sender.
+ *
+ * Producers claim a slot with a CAS on the tail sequence, copy the bytes into the slot's own (reused) array
+ * and publish it by advancing the slot sequence. A dedicated consumer thread reads published slots in order,
+ * hands them in batches to the batch handler, and releases the slots for the next lap.
+ *
+ * The head is claimed with a CAS as well, so a producer that finds the ring full can evict the oldest
+ * published slot instead of the consumer reading it. Each slot carries an int tag (the event level) next to its bytes.
+ */
+class LogsRingBuffer {
+
+    interface BatchHandler {
+        void handle(List<byte[]> lines, int[] tags);
+    }
+
+    enum OverflowPolicy {
+        // Wait for a free slot up to a timeout, then drop the event
+        BLOCK("block"),
+        // Drop the event that did not fit
+        DROP_NEWEST("dropNewest"),
+        // Evict the oldest event still in the ring to make room
+        DROP_OLDEST("dropOldest"),
+        // Once the ring is mostly full, keep only a random sample of the events
+        SAMPLE("sample");
+
+        private final String name;
+
+        OverflowPolicy(String name) {
+            this.name = name;
+        }
+
+        static OverflowPolicy fromName(String name) {
+            for (OverflowPolicy overflowPolicy : values()) {
+                if (overflowPolicy.name.equalsIgnoreCase(name)) return overflowPolicy;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    enum WaitStrategy {
+        // Consumer parks until a producer wakes it up. Lowest CPU usage, producers pay for an unpark when it sleeps
+        BLOCKING("blocking"),
+        // Consumer spins, then yields, then parks for short periods. No signalling cost on producers
+        SLEEPING("sleeping"),
+        // Consumer spins, then yields the CPU. Low latency, burns a core when idle
+        YIELDING("yielding"),
+        // Consumer never gives the CPU up. Lowest latency, burns a core
+        BUSY_SPIN("busySpin");
+
+        private final String name;
+
+        WaitStrategy(String name) {
+            this.name = name;
+        }
+
+        static WaitStrategy fromName(String name) {
+            for (WaitStrategy waitStrategy : values()) {
+                if (waitStrategy.name.equalsIgnoreCase(name)) return waitStrategy;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static final int DEFAULT_SLOT_SIZE = 512;
+    static final int MAX_BATCH_SIZE = 1024;
+    private static final int MAX_RETAINED_SLOT_SIZE = 64 * 1024;
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int capacity;
+    private final int mask;
+    private final byte[][] slots;
+    private final int[] lengths;
+    private final int[] tags;
+    // sequence == position: slot is free for the producer claiming that position
+    // sequence == position + 1: slot is published and can be consumed
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Claimed by the consumer in batches, and one by one by producers evicting the oldest slot
+    private final AtomicLong head = new AtomicLong();
+    private final WaitStrategy waitStrategy;
+    private final BatchHandler batchHandler;
+    private final Thread consumerThread;
+
+    private volatile boolean consumerParked = false;
+    private volatile boolean running = true;
+    // Every position below it was handed to the batch handler, or evicted
+    private volatile long handedOver = 0;
+
+    LogsRingBuffer(int requestedCapacity, WaitStrategy waitStrategy, String name, BatchHandler batchHandler) {
+        this.capacity = nextPowerOfTwo(requestedCapacity);
+        this.mask = capacity - 1;
+        this.slots = new byte[capacity][];
+        this.lengths = new int[capacity];
+        this.tags = new int[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new byte[DEFAULT_SLOT_SIZE];
+            sequences.set(i, i);
+        }
+        this.waitStrategy = waitStrategy;
+        this.batchHandler = batchHandler;
+        this.consumerThread = new Thread(this::consume, "logzio-ring-buffer-" + name);
+        this.consumerThread.setDaemon(true);
+    }
+
+    void start() {
+        consumerThread.start();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of slots that are claimed and not yet taken by the consumer or evicted
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    /**
+     * Copies the bytes into the next free slot. Never blocks.
+     *
+     * @return false if the ring is full
+     */
+    boolean tryPublish(byte[] data, int offset, int length) {
+        return tryPublish(data, offset, length, 0);
+    }
+
+    /**
+     * Copies the bytes into the next free slot, together with a tag that is handed back to the batch handler
+     * or returned by {@link #evictOldest()}. Never blocks.
+     *
+     * @return false if the ring is full
+     */
+    boolean tryPublish(byte[] data, int offset, int length, int tag) {
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) break;
+            } else if (difference < 0) {
+                // The consumer did not release this slot from the previous lap yet
+                return false;
+            }
+            // Another producer claimed this position first, try the next one
+        }
+
+        byte[] slot = slots[index];
+        if (slot.length < length) {
+            slot = new byte[Math.max(length, slot.length << 1)];
+            slots[index] = slot;
+        }
+        System.arraycopy(data, offset, slot, 0, length);
+        lengths[index] = length;
+        tags[index] = tag;
+        sequences.set(index, position + 1);
+
+        if (!running) {
+            // The consumer may have made its last pass before this slot was published, so it is handed over here
+            while (pollAndHandle()) {
+                // Until the ring is empty
+            }
+        } else if (waitStrategy == WaitStrategy.BLOCKING && consumerParked) {
+            LockSupport.unpark(consumerThread);
+        }
+        return true;
+    }
+
+    /**
+     * Takes the oldest published slot away from the consumer and frees it for the producers. Never blocks.
+     *
+     * @return the tag of the evicted slot, or -1 if there is nothing to evict, which is also the case when
+     * the oldest slot is claimed by a producer that did not publish it yet
+     */
+    int evictOldest() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) return -1;
+            if (head.compareAndSet(position, position + 1)) {
+                int tag = tags[index];
+                release(index, position);
+                return tag;
+            }
+        }
+    }
+
+    /**
+     * Waits for the consumer to hand over everything claimed until now, published meanwhile or evicted
+     *
+     * @return false if it did not within the timeout
+     */
+    boolean awaitHandedOver(long timeoutMillis) throws InterruptedException {
+        long claimed = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (handedOver < claimed) {
+            if (System.nanoTime() - deadline >= 0) return false;
+            LockSupport.unpark(consumerThread);
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Once false, producers should hand their events over some other way. A publish racing with {@link #stop(long)}
+     * still succeeds, the producer then hands over what is left itself
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops the consumer thread, after it has handed over everything that was published until now
+     */
+    void stop(long timeoutMillis) {
+        running = false;
+        LockSupport.unpark(consumerThread);
+        try {
+            consumerThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void consume() {
+        int idleCounter = 0;
+        while (true) {
+            if (pollAndHandle()) {
+                idleCounter = 0;
+                continue;
+            }
+            // Nothing left to hand over, but what producers evicted
+            handedOver = Math.max(handedOver, head.get());
+            if (!running) {
+                // Producers may still have claimed slots they did not publish yet, give them a last chance
+                while (pollAndHandle()) {
+                    // Until the ring is empty
+                }
+                return;
+            }
+            idleCounter = idle(idleCounter);
+        }
+    }
+
+    /**
+     * @return false if there was nothing to poll
+     */
+    private boolean pollAndHandle() {
+        long position;
+        int available;
+        while (true) {
+            position = head.get();
+            available = 0;
+            while (available < MAX_BATCH_SIZE && sequences.get((int) (position + available) & mask) == position + available + 1) {
+                available++;
+            }
+            if (available == 0) return false;
+            // Claim the whole batch at once, unless a producer evicted the oldest slot meanwhile
+            if (head.compareAndSet(position, position + available)) break;
+        }
+
+        List<byte[]> batch = new ArrayList<>(available);
+        int[] batchTags = new int[available];
+        for (int i = 0; i < available; i++) {
+            int index = (int) (position + i) & mask;
+            batch.add(Arrays.copyOf(slots[index], lengths[index]));
+            batchTags[i] = tags[index];
+            release(index, position + i);
+        }
+
+        try {
+            batchHandler.handle(batch, batchTags);
+        } catch (Exception e) {
+            // Nothing should kill the consumer thread, the handler is responsible for reporting its own errors
+        }
+        handedOver = position + available;
+        return true;
+    }
+
+    private void release(int index, long position) {
+        if (slots[index].length > MAX_RETAINED_SLOT_SIZE) {
+            slots[index] = new byte[DEFAULT_SLOT_SIZE];
+        }
+        // Free the slot for the producer that will claim it on the next lap
+        sequences.lazySet(index, position + capacity);
+    }
+
+    private int idle(int counter) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                return counter;
+            case YIELDING:
+                if (counter < SPIN_TRIES) return counter + 1;
+                Thread.yield();
+                return counter;
+            case SLEEPING:
+                if (counter < SPIN_TRIES) return counter + 1;
+                if (counter < SPIN_TRIES + YIELD_TRIES) {
+                    Thread.yield();
+                    return counter + 1;
+                }
+                LockSupport.parkNanos(this, SLEEP_NANOS);
+                return counter;
+            case BLOCKING:
+            default:
+                consumerParked = true;
+                // Re-check after announcing we are about to park, so a publish that missed the flag is not lost
+                long position = head.get();
+                if (running && sequences.get((int) position & mask) != position + 1) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                consumerParked = false;
+                return counter;
+        }
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        // With a single slot, a published sequence (position + 1) and a released one (position + capacity) are the same
+        if (value <= 2) return 2;
+        int highestOneBit = Integer.highestOneBit(value - 1);
+        if (highestOneBit >= 1 << 30) return 1 << 30;
+        return highestOneBit << 1;
+    }
+}
@@ -0,0 +1,969 @@
+package io.logz.logback;
+
+import io.logz.sender.SenderStatusReporter;
+import io.logz.sender.exceptions.LogzioParameterErrorException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+
+/**
+ * Buffers already serialized log lines on disk (or in memory) and ships them in bulks to the Logz.io listener.
+ *
+ * Behaves like io.logz.sender.LogzioSender (same buffer location and format, same drain and retry logic),
+ * but takes the final UTF-8 bytes of every log line instead of a Gson JsonObject, so the appender does not
+ * have to build an object tree only to turn it back into a String.
+ */
+class LogzioBulkSender {
+
+    private static final int MAX_SIZE_IN_BYTES = 3 * 1024 * 1024;  // 3 MB
+    static final int INITIAL_WAIT_BEFORE_RETRY_MS = 2000;
+    static final int MAX_RETRIES_ATTEMPTS = 3;
+    static final int INITIAL_CIRCUIT_OPEN_MS = 5000;
+    private static final int FINAL_DRAIN_TIMEOUT_SEC = 20;
+    private static final long AWAIT_DRAINED_POLL_MILLIS = 10;
+    // The transport times a response out long before this, it only keeps a drain from waiting forever on a lost one
+    private static final int RESPONSE_TIMEOUT_FACTOR = 10;
+    private static final long NO_SOCKET_TIMEOUT_RESPONSE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int MAX_LINES_PER_WINDOW = 100_000;
+    private static final String DEFAULT_URL = "https://listener.logz.io:8071";
+    // Enough of a gzipped block to find the @timestamp of its first line
+    private static final int OLDEST_LINE_HEAD_BYTES = 64 * 1024;
+
+    private static final Map<String, LogzioBulkSender> logzioSenderInstances = new HashMap<>();
+
+    private final LogsBuffer logsBuffer;
+    // Null in memory buffer mode
+    private final DiskLogsBuffer diskBuffer;
+    private final SegmentedLog.Durability durability;
+    private final int durabilityIntervalMs;
+    private final int fsUsageSampleIntervalMs;
+    private final URL logzioListenerUrl;
+    // Null when compressRequests is off
+    private final GzipCompressor compressor;
+    private final String logzioType;
+    private final int drainTimeout;
+    private final int socketTimeout;
+    private final int connectTimeout;
+    private final boolean debug;
+    private final SenderStatusReporter reporter;
+    private final int gcPersistedQueueFilesIntervalSeconds;
+    private final AtomicBoolean drainRunning = new AtomicBoolean(false);
+    // Appenders of the same type share the sender, only the first start() and stop() act
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+    private final DrainScheduler drainScheduler;
+    private volatile boolean drainRequested = false;
+    private final int maxInFlightRequests;
+    private final LogzioTransport transport;
+    private final ListenerCircuitBreaker circuitBreaker;
+    private final SenderMetrics metrics = new SenderMetrics();
+    // The @timestamp of the line at the head of the buffer as of the last drain, 0 when it was empty
+    private volatile long oldestLineMillis = 0;
+    // Only touched by the draining thread
+    private long averageLineSize = 512;
+    private long retryAfterMillis;
+    private ScheduledExecutorService tasksExecutor;
+    // The periodic tasks start() scheduled, the executor belongs to the logger context and outlives the sender
+    private final List<ScheduledFuture<?>> scheduledTasks = new CopyOnWriteArrayList<>();
+
+    private LogzioBulkSender(Builder builder) throws LogzioParameterErrorException {
+        this.logzioType = builder.logzioType;
+        this.drainTimeout = builder.drainTimeout;
+        this.socketTimeout = builder.socketTimeout;
+        this.connectTimeout = builder.connectTimeout;
+        this.debug = builder.debug;
+        this.reporter = builder.reporter;
+        this.gcPersistedQueueFilesIntervalSeconds = builder.gcPersistedQueueFilesIntervalSeconds;
+        if (builder.compressRequests) {
+            if (builder.compressionLevel < Deflater.BEST_SPEED || builder.compressionLevel > Deflater.BEST_COMPRESSION) {
+                throw new LogzioParameterErrorException("compressionLevel", "value should be between 1 and 9: " + builder.compressionLevel);
+            }
+            compressor = new GzipCompressor(builder.compressionLevel, builder.compressionMinBytes);
+        } else {
+            compressor = null;
+        }
+        this.tasksExecutor = builder.tasksExecutor;
+        this.maxInFlightRequests = Math.max(1, builder.maxInFlightRequests);
+        this.transport = builder.transport != null ? builder.transport : new HttpTransport();
+        if (builder.circuitBreakerThreshold < 0) {
+            throw new LogzioParameterErrorException("circuitBreakerThreshold", "value should be 0 or more: " + builder.circuitBreakerThreshold);
+        }
+        this.circuitBreaker = new ListenerCircuitBreaker(builder.circuitBreakerThreshold, INITIAL_CIRCUIT_OPEN_MS,
+                TimeUnit.SECONDS.toMillis(builder.circuitBreakerMaxOpenSec));
+
+        MemoryLogsBuffer memoryBuffer = null;
+        if (builder.bufferMode != LogsBuffer.Mode.DISK) {
+            if (builder.memoryBufferCapacityBytes <= 0) {
+                throw new LogzioParameterErrorException("memoryBufferCapacityBytes", "value should be greater than 0: " + builder.memoryBufferCapacityBytes);
+            }
+            memoryBuffer = new MemoryLogsBuffer(builder.memoryBufferCapacityBytes);
+        }
+        this.durability = builder.durability;
+        this.durabilityIntervalMs = builder.durabilityIntervalMs;
+        this.fsUsageSampleIntervalMs = builder.fsUsageSampleIntervalMs;
+        if (fsUsageSampleIntervalMs <= 0) {
+            throw new LogzioParameterErrorException("fileSystemUsageSampleIntervalMs", "value should be greater than 0: " + fsUsageSampleIntervalMs);
+        }
+        if (durability == SegmentedLog.Durability.INTERVAL && durabilityIntervalMs <= 0) {
+            throw new LogzioParameterErrorException("durabilityIntervalMs", "value should be greater than 0: " + durabilityIntervalMs);
+        }
+        DiskLogsBuffer diskBuffer = null;
+        if (builder.bufferMode != LogsBuffer.Mode.MEMORY) {
+            File bufferDir = builder.bufferDir;
+            if (bufferDir == null) {
+                throw new LogzioParameterErrorException("bufferDir", "value is null.");
+            }
+            String queueName = bufferDir.getName();
+            if (queueName == null || queueName.isEmpty()) {
+                throw new LogzioParameterErrorException("bufferDir", " value is empty: " + bufferDir.getAbsolutePath());
+            }
+            try {
+                diskBuffer = new DiskLogsBuffer(bufferDir, builder.fsPercentThreshold, durability, builder.maxBufferBytes,
+                        TimeUnit.SECONDS.toMillis(builder.maxBufferedEventAgeSec), reporter);
+            } catch (IOException e) {
+                reporter.error("Can't open the buffer under " + bufferDir.getAbsolutePath() + ": " + e.getMessage(), e);
+                throw new LogzioParameterErrorException("bufferDir", "could not open the buffer: " + e.getMessage());
+            }
+        }
+        if (builder.logsBuffer != null) {
+            logsBuffer = builder.logsBuffer;
+        } else {
+            switch (builder.bufferMode) {
+                case MEMORY:
+                    logsBuffer = memoryBuffer;
+                    break;
+                case HYBRID:
+                    if (builder.spillThresholdPercent < 1 || builder.spillThresholdPercent > 100) {
+                        throw new LogzioParameterErrorException("spillThresholdPercent", "value should be between 1 and 100: " + builder.spillThresholdPercent);
+                    }
+                    logsBuffer = new HybridLogsBuffer(memoryBuffer, diskBuffer, builder.spillThresholdPercent);
+                    break;
+                case DISK:
+                default:
+                    logsBuffer = builder.compressedBlockBytes > 0 && compressor != null
+                            ? new CompressedBlocksLogsBuffer(diskBuffer, compressor, Math.min(builder.compressedBlockBytes, MAX_SIZE_IN_BYTES))
+                            : diskBuffer;
+            }
+        }
+        this.diskBuffer = diskBuffer;
+
+        String logzioUrl = builder.logzioUrl == null ? DEFAULT_URL : builder.logzioUrl;
+        try {
+            logzioListenerUrl = new URL(logzioUrl + "/?token=" + builder.logzioToken + "&type=" + logzioType);
+        } catch (MalformedURLException e) {
+            reporter.error("Can't connect to Logzio: " + e.getMessage(), e);
+            throw new LogzioParameterErrorException("logzioUrl=" + logzioUrl + " token=" + builder.logzioToken + " type=" + logzioType,
+                    "For some reason could not initialize URL. Cant recover..");
+        }
+        if (builder.adaptiveDrain) {
+            long maxEventAgeMillis = builder.maxEventAgeMillis > 0 ? builder.maxEventAgeMillis : TimeUnit.SECONDS.toMillis(drainTimeout);
+            drainScheduler = new DrainScheduler(() -> tasksExecutor, this::drainQueueAndSend, builder.drainThresholdEvents,
+                    builder.drainThresholdBytes, maxEventAgeMillis, TimeUnit.SECONDS.toMillis(drainTimeout),
+                    TimeUnit.SECONDS.toMillis(builder.maxDrainIntervalSec));
+        } else {
+            drainScheduler = null;
+        }
+        debug("Created new LogzioBulkSender class");
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    void start() {
+        if (!started.compareAndSet(false, true)) return;
+        try {
+            transport.start(new LogzioTransport.Settings(logzioListenerUrl, connectTimeout, socketTimeout, maxInFlightRequests, logzioType));
+        } catch (RuntimeException e) {
+            // Nothing was scheduled yet, the next appender of this type tries again
+            started.set(false);
+            throw e;
+        }
+        if (drainScheduler != null) {
+            drainScheduler.start();
+        } else {
+            scheduleWithFixedDelay(this::drainQueueAndSend, 0, drainTimeout, TimeUnit.SECONDS);
+        }
+        scheduleWithFixedDelay(this::gcLogsBuffer, 0, gcPersistedQueueFilesIntervalSeconds, TimeUnit.SECONDS);
+        if (diskBuffer != null) {
+            scheduleWithFixedDelay(this::sampleDiskUsage, fsUsageSampleIntervalMs, fsUsageSampleIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        if (diskBuffer != null && durability == SegmentedLog.Durability.INTERVAL) {
+            scheduleWithFixedDelay(this::syncLogsBuffer, durabilityIntervalMs, durabilityIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void stop() {
+        if (!stopped.compareAndSet(false, true)) return;
+        // A sender started again for the same type must not find these still working on the buffer
+        for (ScheduledFuture<?> task : scheduledTasks) {
+            task.cancel(false);
+        }
+        scheduledTasks.clear();
+        if (drainScheduler != null) drainScheduler.stop();
+        // Creating a scheduled executor, so we can drain the queue one last time before shutting down
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        debug("Got stop request, Submitting a final drain queue task to drain before shutdown. Will timeout in " + FINAL_DRAIN_TIMEOUT_SEC + " seconds.");
+        try {
+            executorService.submit(this::finalDrain).get(FINAL_DRAIN_TIMEOUT_SEC, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            debug("Waited " + FINAL_DRAIN_TIMEOUT_SEC + " seconds, but could not finish draining. quitting.", e);
+        } finally {
+            executorService.shutdownNow();
+            if (durability != SegmentedLog.Durability.NONE) syncLogsBuffer();
+            transport.stop();
+            if (compressor != null) compressor.close();
+            // Before leaving the cache, so a new sender of this type never opens the directory while it is mapped here
+            if (diskBuffer != null) diskBuffer.close();
+            synchronized (logzioSenderInstances) {
+                // The next appender of this type creates a new sender, with its own settings
+                logzioSenderInstances.remove(logzioType, this);
+            }
+        }
+    }
+
+    private void scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        scheduledTasks.add(tasksExecutor.scheduleWithFixedDelay(task, initialDelay, delay, unit));
+    }
+
+    /**
+     * Drains right away, instead of on the next scheduled drain, and waits for the listener to acknowledge everything
+     * buffered. Drains again whenever the last one stopped short, as long as the circuit breaker allows it
+     *
+     * @return false if the buffer is still not empty once the timeout passed, or the executor is shut down
+     */
+    boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!logsBuffer.isEmpty()) {
+            // A running drain is asked to go over the buffer once more
+            if (!drainRunning.get() || !drainRequested) {
+                try {
+                    tasksExecutor.execute(this::drainQueueAndSend);
+                } catch (RejectedExecutionException e) {
+                    // Shut down with the logger context, nothing drains until stop()
+                    return false;
+                }
+            }
+            if (System.nanoTime() - deadline >= 0) return false;
+            Thread.sleep(AWAIT_DRAINED_POLL_MILLIS);
+        }
+        return true;
+    }
+
+    private boolean finalDrain() throws InterruptedException {
+        // Lines are removed only after they are shipped, so two drains must never peek at the same lines
+        while (!drainRunning.compareAndSet(false, true)) {
+            Thread.sleep(10);
+        }
+        try {
+            // One last try even if the circuit is open, what is in memory would be lost otherwise
+            circuitBreaker.probeNow();
+            return drainQueue();
+        } finally {
+            drainRunning.set(false);
+        }
+    }
+
+    LogsBuffer getLogsBuffer() {
+        return logsBuffer;
+    }
+
+    /**
+     * @return null in memory buffer mode
+     */
+    DiskUsageSampler getDiskUsage() {
+        return diskBuffer == null ? null : diskBuffer.getDiskUsage();
+    }
+
+    /**
+     * @return the log under the disk buffer, null in memory buffer mode
+     */
+    SegmentedLog getSegmentedLog() {
+        return diskBuffer == null ? null : diskBuffer.getLog();
+    }
+
+    ListenerCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    LogzioTransport getTransport() {
+        return transport;
+    }
+
+    SenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the @timestamp of the oldest line in the buffer as of the last drain, 0 if it was empty
+     */
+    long getOldestLineMillis() {
+        return oldestLineMillis;
+    }
+
+    void gcLogsBuffer() {
+        try {
+            logsBuffer.gc();
+        } catch (Throwable e) {
+            // We cant throw anything out, or the task will stop, so just swallow all
+            reporter.error("Uncaught error from the logs buffer gc()", e);
+        }
+    }
+
+    void sampleDiskUsage() {
+        try {
+            diskBuffer.getDiskUsage().sample();
+        } catch (Throwable e) {
+            // We cant throw anything out, or the task will stop, so just swallow all
+            reporter.error("Uncaught error while sampling the buffer file system usage", e);
+        }
+    }
+
+    void syncLogsBuffer() {
+        try {
+            logsBuffer.sync();
+        } catch (Throwable e) {
+            // We cant throw anything out, or the task will stop, so just swallow all
+            reporter.error("Uncaught error from the logs buffer sync()", e);
+        }
+    }
+
+    void drainQueueAndSend() {
+        if (!drainRunning.compareAndSet(false, true)) {
+            debug("Drain is running so we won't run another one in parallel");
+            // Have the running drain go over the queue once more, in case it already passed the events that triggered this one
+            drainRequested = true;
+            return;
+        }
+        try {
+            do {
+                drainRequested = false;
+                if (drainScheduler != null) drainScheduler.onDrainStarting();
+                boolean failed = !drainQueue();
+                if (drainScheduler != null) drainScheduler.onDrainFinished(failed);
+                if (failed) break;
+            } while (drainRequested);
+            updateOldestLine();
+        } catch (Exception e) {
+            // We cant throw anything out, or the task will stop, so just swallow all
+            reporter.error("Uncaught error from Logz.io sender", e);
+        } finally {
+            drainRunning.set(false);
+        }
+    }
+
+    /**
+     * Enqueues a single, already serialized, new line terminated log line
+     *
+     * @return false if the line was dropped since the buffer is full
+     */
+    boolean send(byte[] jsonLine) {
+        if (!logsBuffer.enqueue(jsonLine)) return false;
+        if (oldestLineMillis == 0) oldestLineMillis = System.currentTimeMillis();
+        if (drainScheduler != null) drainScheduler.onEnqueued(1, jsonLine.length);
+        return true;
+    }
+
+    /**
+     * Enqueues a batch of already serialized, new line terminated log lines, checking the room left only once
+     *
+     * @return false if the whole batch was dropped since the buffer is full
+     */
+    boolean send(List<byte[]> jsonLines) {
+        if (!logsBuffer.enqueue(jsonLines)) return false;
+        if (oldestLineMillis == 0) oldestLineMillis = System.currentTimeMillis();
+        if (drainScheduler != null) {
+            long bytes = 0;
+            for (byte[] jsonLine : jsonLines) bytes += jsonLine.length;
+            drainScheduler.onEnqueued(jsonLines.size(), bytes);
+        }
+        return true;
+    }
+
+    /**
+     * Peeks at the oldest lines, up to maxBulks bulks of MAX_SIZE_IN_BYTES. The number of lines to peek
+     * is estimated from the average line size seen so far, and lines that don't fit are left for the next window.
+     * A gzipped block from a {@link CompressedBlocksLogsBuffer} is a bulk of its own.
+     */
+    private List<List<byte[]>> peekWindow(int maxBulks) {
+        long windowBytes = (long) MAX_SIZE_IN_BYTES * maxBulks;
+        int linesToPeek = (int) Math.max(1, Math.min(MAX_LINES_PER_WINDOW, windowBytes / averageLineSize));
+        // Blocks are about a bulk each
+        if (logsBuffer instanceof CompressedBlocksLogsBuffer) linesToPeek = maxBulks;
+        List<byte[]> lines = logsBuffer.peek(linesToPeek);
+
+        List<List<byte[]>> bulks = new ArrayList<>();
+        List<byte[]> bulk = new ArrayList<>();
+        int bulkSize = 0;
+        long peekedBytes = 0;
+        for (byte[] line : lines) {
+            peekedBytes += line.length;
+            if (GzipCompressor.isGzipped(line)) {
+                if (!bulk.isEmpty()) {
+                    bulks.add(bulk);
+                    bulk = new ArrayList<>();
+                    bulkSize = 0;
+                    if (bulks.size() == maxBulks) break;
+                }
+                bulks.add(Collections.singletonList(line));
+                if (bulks.size() == maxBulks) break;
+                continue;
+            }
+            bulk.add(line);
+            bulkSize += line.length;
+            if (bulkSize >= MAX_SIZE_IN_BYTES) {
+                bulks.add(bulk);
+                if (bulks.size() == maxBulks) break;
+                bulk = new ArrayList<>();
+                bulkSize = 0;
+            }
+        }
+        if (!bulk.isEmpty() && bulks.size() < maxBulks) bulks.add(bulk);
+        if (!lines.isEmpty()) {
+            averageLineSize = Math.max(1, (averageLineSize + peekedBytes / lines.size()) / 2);
+        }
+        return bulks;
+    }
+
+    /**
+     * @return false if the listener could not be reached, and what was left is still in the queue
+     */
+    private boolean drainQueue() {
+        if (!circuitBreaker.allowDrain()) {
+            debug("The circuit to the listener is open, keeping the logs in the buffer");
+            return false;
+        }
+        debug("Attempting to drain queue");
+        while (!logsBuffer.isEmpty()) {
+            // A probe of a half open circuit is a single bulk, tried once
+            boolean probing = circuitBreaker.isProbing();
+            List<List<byte[]>> bulks = peekWindow(probing ? 1 : maxInFlightRequests);
+            if (bulks.isEmpty()) break;
+
+            int acknowledgedBulks = sendBulks(bulks, probing ? 1 : MAX_RETRIES_ATTEMPTS);
+            // Lines are removed only once acknowledged, and only from the head, so order is kept in the queue.
+            // Bulks acknowledged after a failed one stay too, and are sent again with it
+            int acknowledgedLines = 0;
+            for (int i = 0; i < acknowledgedBulks; i++) acknowledgedLines += bulks.get(i).size();
+            if (acknowledgedLines > 0) metrics.onShipped(acknowledgedLines, logsBuffer.remove(acknowledgedLines));
+
+            if (acknowledgedBulks < bulks.size()) {
+                long openMillis = circuitBreaker.onFailure(retryAfterMillis);
+                if (openMillis > 0 && !probing) {
+                    reporter.warning("Logz.io listener keeps failing, pausing the shipping for " + openMillis + " ms. Logs are kept in the buffer meanwhile");
+                } else if (openMillis > 0) {
+                    debug("The listener is still failing, pausing the shipping for " + openMillis + " ms");
+                } else {
+                    debug("Will retry in the next interval");
+                }
+                logsBuffer.listenerReachabilityChanged(false);
+                // Lets wait for a new interval, something is wrong in the server side
+                return false;
+            }
+            circuitBreaker.onSuccess();
+            logsBuffer.listenerReachabilityChanged(true);
+            if (Thread.interrupted()) {
+                debug("Stopping drainQueue to thread being interrupted");
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends all the bulks at once over the transport and waits for their responses. Bulks that failed are sent again,
+     * all together, after a growing and jittered sleep, up to maxTries times. A Retry-After from the listener ends
+     * the tries, the circuit breaker waits for it instead.
+     *
+     * @return how many bulks, from the first one, were acknowledged
+     */
+    private int sendBulks(List<List<byte[]>> bulks, int maxTries) {
+        // Compressed once, and sent as they are on every try
+        byte[][] payloads = new byte[bulks.size()][];
+        boolean[] gzipped = new boolean[bulks.size()];
+        for (int i = 0; i < payloads.length; i++) {
+            List<byte[]> bulk = bulks.get(i);
+            if (bulk.size() == 1 && GzipCompressor.isGzipped(bulk.get(0))) {
+                // Compressed when it was stored
+                payloads[i] = bulk.get(0);
+                gzipped[i] = true;
+                continue;
+            }
+            int size = sizeInBytes(bulk);
+            byte[] compressed = compressor == null ? null : compressor.compress(bulk, size);
+            gzipped[i] = compressed != null;
+            payloads[i] = gzipped[i] ? compressed : toNewLineSeparatedByteArray(bulk, size);
+        }
+        boolean[] acknowledged = new boolean[bulks.size()];
+        retryAfterMillis = 0;
+
+        try {
+            int currentRetrySleep = INITIAL_WAIT_BEFORE_RETRY_MS;
+            for (int currTry = 1; currTry <= maxTries; currTry++) {
+                List<CompletableFuture<LogzioTransport.Response>> responses = new ArrayList<>();
+                for (int i = 0; i < payloads.length; i++) {
+                    responses.add(acknowledged[i] ? null : post(payloads[i], gzipped[i]));
+                }
+
+                boolean allAcknowledged = true;
+                for (int i = 0; i < payloads.length; i++) {
+                    if (acknowledged[i]) continue;
+                    // A failing probe is expected while the listener is down, only the breaker reports it
+                    boolean reportFailure = currTry == maxTries && maxTries > 1;
+                    acknowledged[i] = awaitResponse(responses.get(i), payloads[i].length, reportFailure);
+                    allAcknowledged &= acknowledged[i];
+                }
+                if (allAcknowledged || retryAfterMillis > 0) break;
+
+                if (currTry < maxTries) {
+                    long retrySleep = ListenerCircuitBreaker.withJitter(currentRetrySleep);
+                    debug("Could not send log to logz.io, retry (" + currTry + "/" + maxTries + ")");
+                    debug("Sleeping for " + retrySleep + " ms and will try again.");
+                    Thread.sleep(retrySleep);
+                    currentRetrySleep *= 2;
+                }
+            }
+        } catch (InterruptedException e) {
+            debug("Got interrupted exception");
+            Thread.currentThread().interrupt();
+        }
+
+        int acknowledgedBulks = 0;
+        while (acknowledgedBulks < acknowledged.length && acknowledged[acknowledgedBulks]) acknowledgedBulks++;
+        return acknowledgedBulks;
+    }
+
+    /**
+     * Posts the bulk over the transport, counting the response once it comes
+     */
+    private CompletableFuture<LogzioTransport.Response> post(byte[] payload, boolean gzip) {
+        long startNanos = System.nanoTime();
+        return transport.send(payload, gzip).whenComplete((response, e) -> {
+            if (response != null) {
+                metrics.onResponse(response.getCode(), System.nanoTime() - startNanos);
+            } else {
+                metrics.onSendError();
+            }
+        });
+    }
+
+    /**
+     * Reads the @timestamp of the line at the head of the buffer, on the draining thread. A gzipped block is read up
+     * to its first line
+     */
+    private void updateOldestLine() {
+        byte[] line;
+        if (logsBuffer instanceof CompressedBlocksLogsBuffer) {
+            // Peeking would store the block being filled, a small block after every drain
+            line = ((CompressedBlocksLogsBuffer) logsBuffer).peekOldest();
+        } else {
+            List<byte[]> head = logsBuffer.peek(1);
+            line = head.isEmpty() ? null : head.get(0);
+        }
+        if (line == null) {
+            oldestLineMillis = 0;
+            return;
+        }
+        long timestamp = -1;
+        try {
+            timestamp = TimestampEncoder.read(GzipCompressor.isGzipped(line) ? GzipCompressor.decompressHead(line, OLDEST_LINE_HEAD_BYTES) : line);
+        } catch (IOException e) {
+            debug("Could not read the head of a gzipped block", e);
+        }
+        if (timestamp > 0) {
+            oldestLineMillis = timestamp;
+        } else if (oldestLineMillis == 0) {
+            // No @timestamp to go by, it is at least as old as this drain
+            oldestLineMillis = System.currentTimeMillis();
+        }
+    }
+
+    private long responseTimeoutMillis() {
+        if (socketTimeout <= 0) return NO_SOCKET_TIMEOUT_RESPONSE_TIMEOUT_MS;
+        return (long) RESPONSE_TIMEOUT_FACTOR * (Math.max(0, connectTimeout) + socketTimeout);
+    }
+
+    /**
+     * @return true if the bulk should not be sent again, that is, the listener took it or will never take it
+     */
+    private boolean awaitResponse(CompletableFuture<LogzioTransport.Response> pendingResponse, int payloadSize, boolean reportFailure) throws InterruptedException {
+        LogzioTransport.Response response;
+        try {
+            response = pendingResponse.get(responseTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            debug("Got no response from logz.io within " + responseTimeoutMillis() + " ms");
+            if (reportFailure) {
+                reporter.error("Got no response from logz.io on the last bulk try within " + responseTimeoutMillis() + " ms", e);
+            }
+            return false;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            debug("Got IO exception - " + cause.getMessage());
+            if (reportFailure) {
+                reporter.error("Got IO exception on the last bulk try to logz.io", cause);
+            }
+            return false;
+        }
+
+        int responseCode = response.getCode();
+        if (responseCode == HttpURLConnection.HTTP_BAD_REQUEST) {
+            reportBadRequest(response.getBody());
+        } else if (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED) {
+            reporter.error("Logz.io: Got forbidden! Your token is not right. Unfortunately, dropping logs. Message: " + response.getMessage());
+        }
+        if ((responseCode == HTTP_TOO_MANY_REQUESTS || responseCode == HttpURLConnection.HTTP_UNAVAILABLE) && response.getRetryAfterMillis() > 0) {
+            debug("Logz.io asked to retry after " + response.getRetryAfterMillis() + " ms");
+            retryAfterMillis = Math.max(retryAfterMillis, response.getRetryAfterMillis());
+        }
+        if (shouldRetry(responseCode)) {
+            // Giving up on the last try, something is broken on Logz.io side, we will try again later
+            debug("Could not send log to logz.io: Got HTTP " + responseCode + " code from logz.io, with message: " + response.getMessage());
+            return false;
+        }
+        debug("Successfully sent bulk to logz.io, size: " + payloadSize);
+        return true;
+    }
+
+    private static int sizeInBytes(List<byte[]> logMessages) {
+        int totalSize = 0;
+        for (byte[] logMessage : logMessages) totalSize += logMessage.length;
+        return totalSize;
+    }
+
+    static byte[] toNewLineSeparatedByteArray(List<byte[]> messages, int size) {
+        byte[] payload = new byte[size];
+        int offset = 0;
+        for (byte[] message : messages) {
+            System.arraycopy(message, 0, payload, offset, message.length);
+            offset += message.length;
+        }
+        return payload;
+    }
+
+    private boolean shouldRetry(int statusCode) {
+        boolean shouldRetry = true;
+        switch (statusCode) {
+            case HttpURLConnection.HTTP_OK:
+            case HttpURLConnection.HTTP_BAD_REQUEST:
+            case HttpURLConnection.HTTP_UNAUTHORIZED:
+                shouldRetry = false;
+                break;
+        }
+        return shouldRetry;
+    }
+
+    private void reportBadRequest(byte[] body) {
+        if (body.length == 0) return;
+        StringBuilder problemDescription = new StringBuilder();
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8))) {
+            bufferedReader.lines().forEach(line -> problemDescription.append("\n").append(line));
+            reporter.warning(String.format("Got 400 from logzio, here is the output: %s", problemDescription));
+        } catch (Exception ignored) {
+            // Nothing else to report
+        }
+    }
+
+    private void debug(String message) {
+        if (debug) {
+            reporter.info("DEBUG: " + message);
+        }
+    }
+
+    private void debug(String message, Throwable e) {
+        if (debug) {
+            reporter.info("DEBUG: " + message, e);
+        }
+    }
+
+    static class Builder {
+        private String logzioToken;
+        private String logzioType;
+        private int drainTimeout;
+        private int fsPercentThreshold;
+        private File bufferDir;
+        private String logzioUrl;
+        private int socketTimeout;
+        private int connectTimeout;
+        private boolean debug;
+        private SenderStatusReporter reporter;
+        private ScheduledExecutorService tasksExecutor;
+        private int gcPersistedQueueFilesIntervalSeconds;
+        private boolean compressRequests;
+        private int compressionLevel = 6;
+        private int compressionMinBytes;
+        private int compressedBlockBytes;
+        private SegmentedLog.Durability durability = SegmentedLog.Durability.NONE;
+        private int durabilityIntervalMs = 1000;
+        private int fsUsageSampleIntervalMs = 1000;
+        private long maxBufferBytes;
+        private int maxBufferedEventAgeSec;
+        private LogsBuffer.Mode bufferMode = LogsBuffer.Mode.DISK;
+        private int memoryBufferCapacityBytes;
+        private int spillThresholdPercent;
+        private boolean adaptiveDrain;
+        private int drainThresholdEvents;
+        private int drainThresholdBytes;
+        private long maxEventAgeMillis;
+        private int maxDrainIntervalSec;
+        private int maxInFlightRequests = 1;
+        private LogzioTransport transport;
+        private LogsBuffer logsBuffer;
+        private int circuitBreakerThreshold = 3;
+        private int circuitBreakerMaxOpenSec = 300;
+
+        private Builder() {
+        }
+
+        Builder setLogzioToken(String logzioToken) {
+            this.logzioToken = logzioToken;
+            return this;
+        }
+
+        Builder setLogzioType(String logzioType) {
+            this.logzioType = logzioType;
+            return this;
+        }
+
+        Builder setDrainTimeout(int drainTimeout) {
+            this.drainTimeout = drainTimeout;
+            return this;
+        }
+
+        Builder setFsPercentThreshold(int fsPercentThreshold) {
+            this.fsPercentThreshold = fsPercentThreshold;
+            return this;
+        }
+
+        /**
+         * How often the file system usage is sampled, in the background, for fsPercentThreshold
+         */
+        Builder setFsUsageSampleIntervalMs(int fsUsageSampleIntervalMs) {
+            this.fsUsageSampleIntervalMs = fsUsageSampleIntervalMs;
+            return this;
+        }
+
+        /**
+         * The most bytes the disk buffer keeps, the oldest segments are dropped past it. 0 for no limit
+         */
+        Builder setMaxBufferBytes(long maxBufferBytes) {
+            this.maxBufferBytes = maxBufferBytes;
+            return this;
+        }
+
+        /**
+         * How long lines are kept in the disk buffer before they are dropped, a whole segment at a time. 0 for no limit
+         */
+        Builder setMaxBufferedEventAgeSec(int maxBufferedEventAgeSec) {
+            this.maxBufferedEventAgeSec = maxBufferedEventAgeSec;
+            return this;
+        }
+
+        Builder setBufferDir(File bufferDir) {
+            this.bufferDir = bufferDir;
+            return this;
+        }
+
+        Builder setLogzioUrl(String logzioUrl) {
+            this.logzioUrl = logzioUrl;
+            return this;
+        }
+
+        Builder setSocketTimeout(int socketTimeout) {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        Builder setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        Builder setDebug(boolean debug) {
+            this.debug = debug;
+            return this;
+        }
+
+        Builder setReporter(SenderStatusReporter reporter) {
+            this.reporter = reporter;
+            return this;
+        }
+
+        Builder setTasksExecutor(ScheduledExecutorService tasksExecutor) {
+            this.tasksExecutor = tasksExecutor;
+            return this;
+        }
+
+        Builder setGcPersistedQueueFilesIntervalSeconds(int gcPersistedQueueFilesIntervalSeconds) {
+            this.gcPersistedQueueFilesIntervalSeconds = gcPersistedQueueFilesIntervalSeconds;
+            return this;
+        }
+
+        Builder setCompressRequests(boolean compressRequests) {
+            this.compressRequests = compressRequests;
+            return this;
+        }
+
+        Builder setCompressionLevel(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        /**
+         * Bulks smaller than this are sent uncompressed
+         */
+        Builder setCompressionMinBytes(int compressionMinBytes) {
+            this.compressionMinBytes = compressionMinBytes;
+            return this;
+        }
+
+        /**
+         * With compressRequests and the disk buffer mode, lines are stored in gzipped blocks of about this size. 0 to store them one by one
+         */
+        Builder setCompressedBlockBytes(int compressedBlockBytes) {
+            this.compressedBlockBytes = compressedBlockBytes;
+            return this;
+        }
+
+        Builder setDurability(SegmentedLog.Durability durability) {
+            this.durability = durability;
+            return this;
+        }
+
+        /**
+         * How often the disk buffer is synced with the interval durability
+         */
+        Builder setDurabilityIntervalMs(int durabilityIntervalMs) {
+            this.durabilityIntervalMs = durabilityIntervalMs;
+            return this;
+        }
+
+        Builder setBufferMode(LogsBuffer.Mode bufferMode) {
+            this.bufferMode = bufferMode;
+            return this;
+        }
+
+        Builder setMemoryBufferCapacityBytes(int memoryBufferCapacityBytes) {
+            this.memoryBufferCapacityBytes = memoryBufferCapacityBytes;
+            return this;
+        }
+
+        Builder setSpillThresholdPercent(int spillThresholdPercent) {
+            this.spillThresholdPercent = spillThresholdPercent;
+            return this;
+        }
+
+        Builder setAdaptiveDrain(boolean adaptiveDrain) {
+            this.adaptiveDrain = adaptiveDrain;
+            return this;
+        }
+
+        Builder setDrainThresholdEvents(int drainThresholdEvents) {
+            this.drainThresholdEvents = drainThresholdEvents;
+            return this;
+        }
+
+        Builder setDrainThresholdBytes(int drainThresholdBytes) {
+            this.drainThresholdBytes = drainThresholdBytes;
+            return this;
+        }
+
+        /**
+         * 0 or less to use the drain timeout
+         */
+        Builder setMaxEventAgeMillis(long maxEventAgeMillis) {
+            this.maxEventAgeMillis = maxEventAgeMillis;
+            return this;
+        }
+
+        Builder setMaxDrainIntervalSec(int maxDrainIntervalSec) {
+            this.maxDrainIntervalSec = maxDrainIntervalSec;
+            return this;
+        }
+
+        Builder setMaxInFlightRequests(int maxInFlightRequests) {
+            this.maxInFlightRequests = maxInFlightRequests;
+            return this;
+        }
+
+        /**
+         * 0 to open the circuit only when the listener sends a Retry-After
+         */
+        Builder setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+            this.circuitBreakerThreshold = circuitBreakerThreshold;
+            return this;
+        }
+
+        Builder setCircuitBreakerMaxOpenSec(int circuitBreakerMaxOpenSec) {
+            this.circuitBreakerMaxOpenSec = circuitBreakerMaxOpenSec;
+            return this;
+        }
+
+        /**
+         * Null for a default {@link HttpTransport}
+         */
+        Builder setTransport(LogzioTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * Replaces the buffer of the configured bufferMode, for benchmarks to leave it out
+         */
+        Builder setLogsBuffer(LogsBuffer logsBuffer) {
+            this.logsBuffer = logsBuffer;
+            return this;
+        }
+
+        /**
+         * There is one sender per log type, as they share the same buffer directory, until it is stopped.
+         * Re-configuring a type whose sender is still running only replaces its tasks executor, in case the old one was terminated.
+         */
+        LogzioBulkSender getOrCreateSenderByType() throws LogzioParameterErrorException {
+            synchronized (logzioSenderInstances) {
+                LogzioBulkSender logzioSenderInstance = logzioSenderInstances.get(logzioType);
+                if (logzioSenderInstance == null) {
+                    if (bufferMode != LogsBuffer.Mode.MEMORY && bufferDir == null) {
+                        throw new LogzioParameterErrorException("bufferDir", "null");
+                    }
+                    logzioSenderInstance = new LogzioBulkSender(this);
+                    logzioSenderInstances.put(logzioType, logzioSenderInstance);
+                } else {
+                    reporter.info("Already found appender configured for type " + logzioType + ", re-using the same one.");
+
+                    // Sometimes (For example under Spring) the framework closes logback entirely (thos closing the executor)
+                    // So we need to take a new one instead, as we can guarantee that nothing is running now because it is terminated.
+                    if (logzioSenderInstance.tasksExecutor.isTerminated()) {
+                        reporter.info("The old task executor is terminated! replacing it with a new one");
+                        logzioSenderInstance.tasksExecutor = tasksExecutor;
+                    }
+                }
+                return logzioSenderInstance;
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package io.logz.logback;
+
+import ch.qos.logback.classic.pattern.LineOfCallerConverter;
+import ch.qos.logback.classic.pattern.ThrowableProxyConverter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streams a logging event as a single JSON line straight into a {@link JsonByteBuffer}.
+ *
+ * The output is byte-for-byte what building a Gson JsonObject (MDC first, then the event fields, then the
+ * additional fields) and calling toString() on it used to produce, including the way duplicate keys are
+ * resolved: a key keeps the position it was first added at, and the value of the last one that added it.
+ */
+class LogzioJsonEncoder {
+
+    private static final int FIELD_TIMESTAMP = 0;
+    private static final int FIELD_LOGLEVEL = 1;
+    private static final int FIELD_MARKER = 2;
+    private static final int FIELD_MESSAGE = 3;
+    private static final int FIELD_LOGGER = 4;
+    private static final int FIELD_THREAD = 5;
+    private static final int FIELD_LINE = 6;
+    private static final int FIELD_EXCEPTION = 7;
+    private static final int NUMBER_OF_FIELDS = 8;
+
+    private static final String[] FIELD_NAMES = new String[NUMBER_OF_FIELDS];
+    private static final byte[][] FIELD_PREFIXES = new byte[NUMBER_OF_FIELDS][];
+
+    static {
+        FIELD_NAMES[FIELD_TIMESTAMP] = LogzioLogbackAppender.TIMESTAMP;
+        FIELD_NAMES[FIELD_LOGLEVEL] = LogzioLogbackAppender.LOGLEVEL;
+        FIELD_NAMES[FIELD_MARKER] = LogzioLogbackAppender.MARKER;
+        FIELD_NAMES[FIELD_MESSAGE] = LogzioLogbackAppender.MESSAGE;
+        FIELD_NAMES[FIELD_LOGGER] = LogzioLogbackAppender.LOGGER;
+        FIELD_NAMES[FIELD_THREAD] = LogzioLogbackAppender.THREAD;
+        FIELD_NAMES[FIELD_LINE] = LogzioLogbackAppender.LINE;
+        FIELD_NAMES[FIELD_EXCEPTION] = LogzioLogbackAppender.EXCEPTION;
+        for (int i = 0; i < NUMBER_OF_FIELDS; i++) {
+            FIELD_PREFIXES[i] = ("\"" + FIELD_NAMES[i] + "\":").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private final ThreadLocal<JsonByteBuffer> threadBuffer = ThreadLocal.withInitial(JsonByteBuffer::new);
+    private final ThrowableProxyConverter throwableProxyConverter;
+    private final LineOfCallerConverter lineOfCallerConverter;
+    private final Map<String, String> additionalFields;
+    private final boolean line;
+    private final TimestampEncoder timestampEncoder;
+
+    // The additional fields (hostname included) never change after start(), so they are escaped and encoded once
+    private final byte[] additionalFieldsSuffix;
+    private final boolean additionalFieldsOverrideEventFields;
+
+    LogzioJsonEncoder(ThrowableProxyConverter throwableProxyConverter, LineOfCallerConverter lineOfCallerConverter,
+                      Map<String, String> additionalFields, boolean line) {
+        this(throwableProxyConverter, lineOfCallerConverter, additionalFields, line, TimestampEncoder.Format.ISO8601);
+    }
+
+    LogzioJsonEncoder(ThrowableProxyConverter throwableProxyConverter, LineOfCallerConverter lineOfCallerConverter,
+                      Map<String, String> additionalFields, boolean line, TimestampEncoder.Format timestampFormat) {
+        this.timestampEncoder = new TimestampEncoder(timestampFormat);
+        this.throwableProxyConverter = throwableProxyConverter;
+        this.lineOfCallerConverter = lineOfCallerConverter;
+        this.additionalFields = new LinkedHashMap<>(additionalFields);
+        this.line = line;
+        this.additionalFieldsSuffix = encodeAdditionalFields(this.additionalFields);
+        this.additionalFieldsOverrideEventFields = this.additionalFields.keySet().stream().anyMatch(key -> fieldIndex(key) >= 0);
+    }
+
+    /**
+     * Encodes the event as a new line terminated JSON document, using a buffer owned by the calling thread.
+     * The returned buffer is only valid until the next call from the same thread.
+     */
+    JsonByteBuffer encode(ILoggingEvent loggingEvent) {
+        JsonByteBuffer buffer = threadBuffer.get();
+        buffer.reset();
+        encode(loggingEvent, buffer);
+        return buffer;
+    }
+
+    void encode(ILoggingEvent loggingEvent, JsonByteBuffer out) {
+        // The timestamp is written by the timestamp encoder, all other event fields are strings
+        String[] values = new String[NUMBER_OF_FIELDS];
+        values[FIELD_LOGLEVEL] = loggingEvent.getLevel().levelStr;
+        if (loggingEvent.getMarker() != null) {
+            values[FIELD_MARKER] = loggingEvent.getMarker().toString();
+        }
+        values[FIELD_MESSAGE] = loggingEvent.getFormattedMessage();
+        values[FIELD_LOGGER] = loggingEvent.getLoggerName();
+        values[FIELD_THREAD] = loggingEvent.getThreadName();
+        if (line) {
+            values[FIELD_LINE] = lineOfCallerConverter.convert(loggingEvent);
+        }
+        if (loggingEvent.getThrowableProxy() != null) {
+            values[FIELD_EXCEPTION] = throwableProxyConverter.convert(loggingEvent);
+        }
+        int presentFields = presentFields(loggingEvent);
+        Map<String, String> mdc = loggingEvent.getMDCPropertyMap();
+
+        // Only when an MDC key is also an additional field, or an additional field overrides one of the event fields,
+        // we need to resolve duplicates field by field. Otherwise the pre-encoded additional fields are copied as is.
+        boolean resolveDuplicates = additionalFieldsOverrideEventFields || collidesWithAdditionalFields(mdc);
+
+        out.writeByte('{');
+        boolean first = true;
+        int writtenFields = 0;
+
+        // Adding MDC first, as I dont want it to collide with any one of the following fields
+        if (mdc != null) {
+            for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                String key = entry.getKey();
+                String value = entry.getValue();
+                int field = fieldIndex(key);
+                if (field >= 0 && (presentFields & (1 << field)) != 0) {
+                    // The event field will override this MDC entry in place
+                    writtenFields |= 1 << field;
+                    if (!first) out.writeByte(',');
+                    first = false;
+                    out.writeString(key);
+                    out.writeByte(':');
+                    writeEventField(out, field, values, loggingEvent.getTimeStamp(), resolveDuplicates);
+                    continue;
+                } else if (resolveDuplicates) {
+                    value = additionalValueOr(key, value);
+                }
+                first = writeField(out, key, value, first);
+            }
+        }
+
+        for (int field = 0; field < NUMBER_OF_FIELDS; field++) {
+            int bit = 1 << field;
+            if ((presentFields & bit) == 0 || (writtenFields & bit) != 0) continue;
+            if (!first) out.writeByte(',');
+            first = false;
+            out.writeBytes(FIELD_PREFIXES[field]);
+            writeEventField(out, field, values, loggingEvent.getTimeStamp(), resolveDuplicates);
+        }
+
+        if (resolveDuplicates) {
+            for (Map.Entry<String, String> entry : additionalFields.entrySet()) {
+                String key = entry.getKey();
+                if (mdc != null && mdc.containsKey(key)) continue;
+                int field = fieldIndex(key);
+                if (field >= 0 && (presentFields & (1 << field)) != 0) continue;
+                first = writeField(out, key, entry.getValue(), first);
+            }
+        } else {
+            // There is always at least one event field before, so the suffix starts with a comma
+            out.writeBytes(additionalFieldsSuffix);
+        }
+
+        out.writeByte('}');
+        out.writeByte('\n');
+    }
+
+    private void writeEventField(JsonByteBuffer out, int field, String[] values, long timestamp, boolean resolveDuplicates) {
+        if (resolveDuplicates && additionalFields.containsKey(FIELD_NAMES[field])) {
+            out.writeString(additionalFields.get(FIELD_NAMES[field]));
+        } else if (field == FIELD_TIMESTAMP) {
+            timestampEncoder.write(out, timestamp);
+        } else {
+            out.writeString(values[field]);
+        }
+    }
+
+    private String additionalValueOr(String key, String value) {
+        return additionalFields.containsKey(key) ? additionalFields.get(key) : value;
+    }
+
+    private boolean collidesWithAdditionalFields(Map<String, String> mdc) {
+        if (mdc == null || mdc.isEmpty() || additionalFields.isEmpty()) return false;
+        for (String key : mdc.keySet()) {
+            if (additionalFields.containsKey(key)) return true;
+        }
+        return false;
+    }
+
+    private static byte[] encodeAdditionalFields(Map<String, String> additionalFields) {
+        JsonByteBuffer suffix = new JsonByteBuffer(256);
+        additionalFields.forEach((key, value) -> writeField(suffix, key, value, false));
+        return suffix.toByteArray();
+    }
+
+    private int presentFields(ILoggingEvent loggingEvent) {
+        int present = (1 << FIELD_TIMESTAMP) | (1 << FIELD_LOGLEVEL) | (1 << FIELD_MESSAGE) | (1 << FIELD_LOGGER) | (1 << FIELD_THREAD);
+        if (loggingEvent.getMarker() != null) present |= 1 << FIELD_MARKER;
+        if (line) present |= 1 << FIELD_LINE;
+        if (loggingEvent.getThrowableProxy() != null) present |= 1 << FIELD_EXCEPTION;
+        return present;
+    }
+
+    private static boolean writeField(JsonByteBuffer out, String key, String value, boolean first) {
+        if (!first) out.writeByte(',');
+        out.writeString(key);
+        out.writeByte(':');
+        out.writeString(value);
+        return false;
+    }
+
+    private static int fieldIndex(String key) {
+        for (int i = 0; i < NUMBER_OF_FIELDS; i++) {
+            if (FIELD_NAMES[i].equals(key)) return i;
+        }
+        return -1;
+    }
+}
@@ -1,48 +1,98 @@
 package io.logz.logback;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.pattern.LineOfCallerConverter;
 import ch.qos.logback.classic.pattern.ThrowableProxyConverter;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
 import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.joran.spi.DefaultClass;
 import com.google.common.base.Splitter;
-import io.logz.sender.LogzioSender;
 import io.logz.sender.SenderStatusReporter;
-import io.logz.sender.com.google.gson.JsonObject;
 import io.logz.sender.exceptions.LogzioParameterErrorException;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.time.Duration;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
 
-public class LogzioLogbackAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+public class LogzioLogbackAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements LogzioLogbackAppenderMXBean {
 
-    private static final String TIMESTAMP = "@timestamp";
-    private static final String LOGLEVEL = "loglevel";
-    private static final String MARKER = "marker";
-    private static final String MESSAGE = "message";
-    private static final String LOGGER = "logger";
-    private static final String LINE = "line";
-    private static final String THREAD = "thread";
-    private static final String EXCEPTION = "exception";
+    static final String TIMESTAMP = "@timestamp";
+    static final String LOGLEVEL = "loglevel";
+    static final String MARKER = "marker";
+    static final String MESSAGE = "message";
+    static final String LOGGER = "logger";
+    static final String LINE = "line";
+    static final String THREAD = "thread";
+    static final String EXCEPTION = "exception";
+
+    private static final long RING_BUFFER_STOP_TIMEOUT_MILLIS = 10 * 1000;
+    private static final long ASYNC_START_STOP_TIMEOUT_MILLIS = 10 * 1000;
+    private static final long FLUSH_TIMEOUT_MILLIS = 30 * 1000;
+    private static final long AWAIT_START_POLL_MILLIS = 10;
+    private static final int MAX_EVICTION_ATTEMPTS = 16;
+    private static final int BLOCK_YIELD_TRIES = 100;
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // A block is sent as a single bulk
+    private static final int MAX_COMPRESSED_BLOCK_BYTES = 3 * 1024 * 1024;
 
     private static final Set<String> reservedFields =  new HashSet<>(Arrays.asList(new String[] {TIMESTAMP,LOGLEVEL, MARKER, MESSAGE,LOGGER,THREAD,EXCEPTION}));
 
-    private LogzioSender logzioSender;
+    private LogzioBulkSender logzioSender;
     private ThrowableProxyConverter throwableProxyConverter;
     private LineOfCallerConverter lineOfCallerConverter;
+    private LogzioJsonEncoder jsonEncoder;
+    private volatile LogsRingBuffer ringBuffer;
+    private int samplingThreshold;
+    private volatile LevelShedder levelShedder;
+    private DroppedEvents.Reason bufferFullReason;
+    private final DroppedEvents droppedEvents = new DroppedEvents();
+    private final LongAdder appendedEvents = new LongAdder();
+    private final LongAdder serializedBytes = new LongAdder();
+    // Null unless registered
+    private ObjectName mbeanName;
+    private ScheduledFuture<?> dropSummaryTask;
+    // Guarded by this, the summary task and stop() both send summaries
+    private long lastDropSummaryMillis;
+    // Evicted from the disk buffer as of the last drop summary
+    private long lastEvictedForBytes;
+    private long lastEvictedForAge;
     private Map<String, String> additionalFieldsMap = new HashMap<>();
+    private Callable<String> hostnameResolver = () -> InetAddress.getLocalHost().getHostName();
+    // Null for the buffer of the bufferMode
+    private LogsBuffer logsBuffer;
+    // With asyncStart, events are kept in the pre start buffer until the sender is ready
+    private volatile boolean senderReady = false;
+    // From the start of stop() until the appender is stopped, events that can no longer reach the sender are dropped
+    private volatile boolean stopping = false;
+    private BlockingQueue<ILoggingEvent> preStartBuffer;
+    private Thread startThread;
 
     // User controlled variables
     private String logzioToken;
     private String logzioType = "java";
     private int drainTimeoutSec = 5;
     private int fileSystemFullPercentThreshold = 98;
+    private int fileSystemUsageSampleIntervalMs = 1000;
     private String bufferDir;
     private String logzioUrl;
     private int connectTimeout = 10 * 1000;
@@ -51,7 +101,38 @@ public class LogzioLogbackAppender extends UnsynchronizedAppenderBase<ILoggingEv
     private boolean addHostname = false;
     private boolean line = false;
     private boolean compressRequests = false;
+    private int compressionLevel = 6;
+    private int compressionMinBytes = 1024;
+    private int compressedBlockBytes = 0;
     private int gcPersistedQueueFilesIntervalSeconds = 30;
+    private TimestampEncoder.Format timestampFormat = TimestampEncoder.Format.ISO8601;
+    private int ringBufferCapacity = 0;
+    private LogsRingBuffer.WaitStrategy ringBufferWaitStrategy = LogsRingBuffer.WaitStrategy.BLOCKING;
+    private LogsRingBuffer.OverflowPolicy overflowPolicy = LogsRingBuffer.OverflowPolicy.BLOCK;
+    private int overflowBlockTimeoutMillis = 1000;
+    private double overflowSampleRate = 0.1;
+    private int dropSummaryIntervalSeconds = 60;
+    private int[] levelSheddingWatermarks;
+    private LogsBuffer.Mode bufferMode = LogsBuffer.Mode.DISK;
+    private SegmentedLog.Durability durability = SegmentedLog.Durability.NONE;
+    private int durabilityIntervalMs = 1000;
+    private long maxBufferBytes = 0;
+    private int maxBufferedEventAgeSeconds = 0;
+    private int memoryBufferCapacityBytes = 32 * 1024 * 1024;
+    private int spillThresholdPercent = 80;
+    private boolean adaptiveDrain = true;
+    private int drainThresholdEvents = 1000;
+    private int drainThresholdBytes = 1024 * 1024;
+    private long maxEventAgeMillis = 0;
+    private int maxDrainIntervalSec = 60;
+    private int maxInFlightRequests = 1;
+    private boolean persistentConnections = true;
+    private LogzioTransport transport;
+    private int circuitBreakerThreshold = 3;
+    private int circuitBreakerMaxOpenSec = 300;
+    private boolean asyncStart = false;
+    private int preStartBufferSize = 1000;
+    private boolean jmxEnabled = true;
 
     public LogzioLogbackAppender() {
         super();
@@ -79,6 +160,18 @@ public class LogzioLogbackAppender extends UnsynchronizedAppenderBase<ILoggingEv
         this.fileSystemFullPercentThreshold = fileSystemFullPercentThreshold;
     }
 
+    public int getFileSystemUsageSampleIntervalMs() {
+        return fileSystemUsageSampleIntervalMs;
+    }
+
+    public void setFileSystemUsageSampleIntervalMs(int fileSystemUsageSampleIntervalMs) {
+        if (fileSystemUsageSampleIntervalMs <= 0) {
+            addWarn("Got unsupported fileSystemUsageSampleIntervalMs " + fileSystemUsageSampleIntervalMs + ". It must be greater than 0. Using " + this.fileSystemUsageSampleIntervalMs + " as fallback.");
+        } else {
+            this.fileSystemUsageSampleIntervalMs = fileSystemUsageSampleIntervalMs;
+        }
+    }
+
     public void setBufferDir(String bufferDir) {
         this.bufferDir = bufferDir;
     }
@@ -107,6 +200,42 @@ public class LogzioLogbackAppender extends UnsynchronizedAppenderBase<ILoggingEv
 
     public void setCompressRequests(boolean compressRequests) { this.compressRequests = compressRequests; }
 
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < 1 || compressionLevel > 9) {
+            addWarn("Got unsupported compressionLevel " + compressionLevel + ". It must be between 1 and 9. Using " + this.compressionLevel + " as fallback.");
+        } else {
+            this.compressionLevel = compressionLevel;
+        }
+    }
+
+    public int getCompressedBlockBytes() {
+        return compressedBlockBytes;
+    }
+
+    public void setCompressedBlockBytes(int compressedBlockBytes) {
+        if (compressedBlockBytes < 0 || compressedBlockBytes > MAX_COMPRESSED_BLOCK_BYTES) {
+            addWarn("Got unsupported compressedBlockBytes " + compressedBlockBytes + ". It must be between 0 and " + MAX_COMPRESSED_BLOCK_BYTES + ". Using " + this.compressedBlockBytes + " as fallback.");
+        } else {
+            this.compressedBlockBytes = compressedBlockBytes;
+        }
+    }
+
+    public int getCompressionMinBytes() {
+        return compressionMinBytes;
+    }
+
+    public void setCompressionMinBytes(int compressionMinBytes) {
+        if (compressionMinBytes < 0) {
+            addWarn("Got unsupported compressionMinBytes " + compressionMinBytes + ". It can't be negative. Using " + this.compressionMinBytes + " as fallback.");
+        } else {
+            this.compressionMinBytes = compressionMinBytes;
+        }
+    }
+
 
     public void setAdditionalFields(String additionalFields) {
        if (additionalFields != null) {
@@ -144,66 +273,832 @@ public class LogzioLogbackAppender extends UnsynchronizedAppenderBase<ILoggingEv
         this.gcPersistedQueueFilesIntervalSeconds = gcPersistedQueueFilesIntervalSeconds;
     }
 
+    public String getTimestampFormat() {
+        return timestampFormat.toString();
+    }
+
+    public void setTimestampFormat(String timestampFormat) {
+        TimestampEncoder.Format format = TimestampEncoder.Format.fromName(timestampFormat);
+        if (format == null) {
+            addWarn("Got unsupported timestampFormat " + timestampFormat + ". Supported values are " + Arrays.toString(TimestampEncoder.Format.values()) + ". Using " + this.timestampFormat + " as fallback.");
+        } else {
+            this.timestampFormat = format;
+        }
+    }
+
+    public int getRingBufferCapacity() {
+        return ringBufferCapacity;
+    }
+
+    public void setRingBufferCapacity(int ringBufferCapacity) {
+        this.ringBufferCapacity = ringBufferCapacity;
+    }
+
+    public String getRingBufferWaitStrategy() {
+        return ringBufferWaitStrategy.toString();
+    }
+
+    public void setRingBufferWaitStrategy(String ringBufferWaitStrategy) {
+        LogsRingBuffer.WaitStrategy waitStrategy = LogsRingBuffer.WaitStrategy.fromName(ringBufferWaitStrategy);
+        if (waitStrategy == null) {
+            addWarn("Got unsupported ringBufferWaitStrategy " + ringBufferWaitStrategy + ". Supported values are " + Arrays.toString(LogsRingBuffer.WaitStrategy.values()) + ". Using " + this.ringBufferWaitStrategy + " as fallback.");
+        } else {
+            this.ringBufferWaitStrategy = waitStrategy;
+        }
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy.toString();
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        LogsRingBuffer.OverflowPolicy policy = LogsRingBuffer.OverflowPolicy.fromName(overflowPolicy);
+        if (policy == null) {
+            addWarn("Got unsupported overflowPolicy " + overflowPolicy + ". Supported values are " + Arrays.toString(LogsRingBuffer.OverflowPolicy.values()) + ". Using " + this.overflowPolicy + " as fallback.");
+        } else {
+            this.overflowPolicy = policy;
+        }
+    }
+
+    public int getOverflowBlockTimeoutMillis() {
+        return overflowBlockTimeoutMillis;
+    }
+
+    public void setOverflowBlockTimeoutMillis(int overflowBlockTimeoutMillis) {
+        this.overflowBlockTimeoutMillis = Math.max(0, overflowBlockTimeoutMillis);
+    }
+
+    public double getOverflowSampleRate() {
+        return overflowSampleRate;
+    }
+
+    public void setOverflowSampleRate(double overflowSampleRate) {
+        if (overflowSampleRate < 0 || overflowSampleRate > 1) {
+            addWarn("Got unsupported overflowSampleRate " + overflowSampleRate + ". The rate must be between 0 and 1. Using " + this.overflowSampleRate + " as fallback.");
+        } else {
+            this.overflowSampleRate = overflowSampleRate;
+        }
+    }
+
+    public int getDropSummaryIntervalSeconds() {
+        return dropSummaryIntervalSeconds;
+    }
+
+    public void setDropSummaryIntervalSeconds(int dropSummaryIntervalSeconds) {
+        this.dropSummaryIntervalSeconds = dropSummaryIntervalSeconds;
+    }
+
+    public String getLevelSheddingWatermarks() {
+        if (levelSheddingWatermarks == null) return null;
+        return Arrays.stream(levelSheddingWatermarks).mapToObj(Integer::toString).collect(Collectors.joining(","));
+    }
+
+    public void setLevelSheddingWatermarks(String levelSheddingWatermarks) {
+        if (levelSheddingWatermarks == null || levelSheddingWatermarks.trim().isEmpty()) {
+            this.levelSheddingWatermarks = null;
+            return;
+        }
+        try {
+            this.levelSheddingWatermarks = LevelShedder.parseWatermarks(levelSheddingWatermarks);
+        } catch (IllegalArgumentException e) {
+            addWarn("Got unsupported levelSheddingWatermarks " + levelSheddingWatermarks + ": " + e.getMessage() + ". Events will not be shed by level.");
+        }
+    }
+
+    /**
+     * The current level shedding tier: 0 when nothing is shed, 1 when TRACE and DEBUG are shed,
+     * 2 when INFO is shed as well and 3 when only ERROR is kept
+     */
+    @Override
+    public int getSheddingTier() {
+        LevelShedder shedder = levelShedder;
+        return shedder == null ? 0 : shedder.getTier();
+    }
+
+    public String getBufferMode() {
+        return bufferMode.toString();
+    }
+
+    public void setBufferMode(String bufferMode) {
+        LogsBuffer.Mode mode = LogsBuffer.Mode.fromName(bufferMode);
+        if (mode == null) {
+            addWarn("Got unsupported bufferMode " + bufferMode + ". Supported values are " + Arrays.toString(LogsBuffer.Mode.values()) + ". Using " + this.bufferMode + " as fallback.");
+        } else {
+            this.bufferMode = mode;
+        }
+    }
+
+    public String getDurability() {
+        return durability.toString();
+    }
+
+    public void setDurability(String durability) {
+        SegmentedLog.Durability value = SegmentedLog.Durability.fromName(durability);
+        if (value == null) {
+            addWarn("Got unsupported durability " + durability + ". Supported values are " + Arrays.toString(SegmentedLog.Durability.values()) + ". Using " + this.durability + " as fallback.");
+        } else {
+            this.durability = value;
+        }
+    }
+
+    public int getDurabilityIntervalMs() {
+        return durabilityIntervalMs;
+    }
+
+    public void setDurabilityIntervalMs(int durabilityIntervalMs) {
+        if (durabilityIntervalMs <= 0) {
+            addWarn("Got unsupported durabilityIntervalMs " + durabilityIntervalMs + ". It must be greater than 0. Using " + this.durabilityIntervalMs + " as fallback.");
+        } else {
+            this.durabilityIntervalMs = durabilityIntervalMs;
+        }
+    }
+
+    public long getMaxBufferBytes() {
+        return maxBufferBytes;
+    }
+
+    public void setMaxBufferBytes(long maxBufferBytes) {
+        if (maxBufferBytes < 0) {
+            addWarn("Got unsupported maxBufferBytes " + maxBufferBytes + ". It must be 0 or more. Using " + this.maxBufferBytes + " as fallback.");
+        } else {
+            this.maxBufferBytes = maxBufferBytes;
+        }
+    }
+
+    public int getMaxBufferedEventAgeSeconds() {
+        return maxBufferedEventAgeSeconds;
+    }
+
+    public void setMaxBufferedEventAgeSeconds(int maxBufferedEventAgeSeconds) {
+        if (maxBufferedEventAgeSeconds < 0) {
+            addWarn("Got unsupported maxBufferedEventAgeSeconds " + maxBufferedEventAgeSeconds + ". It must be 0 or more. Using " + this.maxBufferedEventAgeSeconds + " as fallback.");
+        } else {
+            this.maxBufferedEventAgeSeconds = maxBufferedEventAgeSeconds;
+        }
+    }
+
+    public int getMemoryBufferCapacityBytes() {
+        return memoryBufferCapacityBytes;
+    }
+
+    public void setMemoryBufferCapacityBytes(int memoryBufferCapacityBytes) {
+        this.memoryBufferCapacityBytes = memoryBufferCapacityBytes;
+    }
+
+    public int getSpillThresholdPercent() {
+        return spillThresholdPercent;
+    }
+
+    public void setSpillThresholdPercent(int spillThresholdPercent) {
+        this.spillThresholdPercent = spillThresholdPercent;
+    }
+
+    public boolean isAdaptiveDrain() {
+        return adaptiveDrain;
+    }
+
+    public void setAdaptiveDrain(boolean adaptiveDrain) {
+        this.adaptiveDrain = adaptiveDrain;
+    }
+
+    public int getDrainThresholdEvents() {
+        return drainThresholdEvents;
+    }
+
+    public void setDrainThresholdEvents(int drainThresholdEvents) {
+        this.drainThresholdEvents = drainThresholdEvents;
+    }
+
+    public int getDrainThresholdBytes() {
+        return drainThresholdBytes;
+    }
+
+    public void setDrainThresholdBytes(int drainThresholdBytes) {
+        this.drainThresholdBytes = drainThresholdBytes;
+    }
+
+    public long getMaxEventAgeMillis() {
+        return maxEventAgeMillis;
+    }
+
+    public void setMaxEventAgeMillis(long maxEventAgeMillis) {
+        this.maxEventAgeMillis = maxEventAgeMillis;
+    }
+
+    public int getMaxDrainIntervalSec() {
+        return maxDrainIntervalSec;
+    }
+
+    public void setMaxDrainIntervalSec(int maxDrainIntervalSec) {
+        this.maxDrainIntervalSec = maxDrainIntervalSec;
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public void setMaxInFlightRequests(int maxInFlightRequests) {
+        if (maxInFlightRequests < 1) {
+            addWarn("Got unsupported maxInFlightRequests " + maxInFlightRequests + ". It must be at least 1. Using " + this.maxInFlightRequests + " as fallback.");
+        } else {
+            this.maxInFlightRequests = maxInFlightRequests;
+        }
+    }
+
+    public boolean isPersistentConnections() {
+        return persistentConnections;
+    }
+
+    public void setPersistentConnections(boolean persistentConnections) {
+        this.persistentConnections = persistentConnections;
+    }
+
+    public boolean isAsyncStart() {
+        return asyncStart;
+    }
+
+    public void setAsyncStart(boolean asyncStart) {
+        this.asyncStart = asyncStart;
+    }
+
+    public int getPreStartBufferSize() {
+        return preStartBufferSize;
+    }
+
+    public void setPreStartBufferSize(int preStartBufferSize) {
+        if (preStartBufferSize < 1) {
+            addWarn("Got unsupported preStartBufferSize " + preStartBufferSize + ". It must be at least 1. Using " + this.preStartBufferSize + " as fallback.");
+        } else {
+            this.preStartBufferSize = preStartBufferSize;
+        }
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    public void setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    /**
+     * Whether the sender is started and events go straight to it, rather than to the pre start buffer
+     */
+    public boolean isSenderReady() {
+        return senderReady;
+    }
+
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+        if (circuitBreakerThreshold < 0) {
+            addWarn("Got unsupported circuitBreakerThreshold " + circuitBreakerThreshold + ". It can't be negative. Using " + this.circuitBreakerThreshold + " as fallback.");
+        } else {
+            this.circuitBreakerThreshold = circuitBreakerThreshold;
+        }
+    }
+
+    public int getCircuitBreakerMaxOpenSec() {
+        return circuitBreakerMaxOpenSec;
+    }
+
+    public void setCircuitBreakerMaxOpenSec(int circuitBreakerMaxOpenSec) {
+        if (circuitBreakerMaxOpenSec < 1) {
+            addWarn("Got unsupported circuitBreakerMaxOpenSec " + circuitBreakerMaxOpenSec + ". It must be at least 1. Using " + this.circuitBreakerMaxOpenSec + " as fallback.");
+        } else {
+            this.circuitBreakerMaxOpenSec = circuitBreakerMaxOpenSec;
+        }
+    }
+
+    /**
+     * The state of the circuit to the listener: closed while it takes bulks, open while shipping is paused, and
+     * half-open while a single bulk probes whether it is back
+     */
+    @Override
+    public String getCircuitBreakerState() {
+        return logzioSender == null ? ListenerCircuitBreaker.State.CLOSED.getName() : logzioSender.getCircuitBreaker().getState().getName();
+    }
+
+    public LogzioTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * The transport bulks are sent with, a {@link HttpTransport} (honoring persistentConnections) when not set
+     */
+    @DefaultClass(HttpTransport.class)
+    public void setTransport(LogzioTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * TCP (and TLS) handshakes with the listener, since the sender was created
+     */
+    @Override
+    public long getHandshakes() {
+        return logzioSender == null ? 0 : logzioSender.getTransport().getHandshakes();
+    }
+
+    /**
+     * Handshakes with the listener over the last minute. Once the connections are warm it should stay close to 0.
+     */
+    public int getHandshakesPerMinute() {
+        return logzioSender == null ? 0 : logzioSender.getTransport().getHandshakesPerMinute();
+    }
+
+    /**
+     * Bulk requests sent over an already open connection, since the sender was created
+     */
+    public long getReusedConnectionRequests() {
+        return logzioSender == null ? 0 : logzioSender.getTransport().getReusedConnectionRequests();
+    }
+
+    @Override
+    public int getOpenConnections() {
+        return logzioSender == null ? 0 : logzioSender.getTransport().getOpenConnections();
+    }
+
+    /**
+     * Used percent of the buffer's file system, as last sampled. 0 in memory mode
+     */
+    @Override
+    public double getFileSystemUsedPercent() {
+        DiskUsageSampler diskUsage = logzioSender == null ? null : logzioSender.getDiskUsage();
+        return diskUsage == null ? 0 : diskUsage.getUsedPercent();
+    }
+
+    /**
+     * Mean time to write an event to the disk buffer in microseconds, including the wait for the sync with the batch
+     * durability. 0 in memory mode
+     */
+    public long getBufferWriteLatencyMeanMicros() {
+        SegmentedLog log = logzioSender == null ? null : logzioSender.getSegmentedLog();
+        return log == null ? 0 : TimeUnit.NANOSECONDS.toMicros(log.getWriteLatency().getMeanNanos());
+    }
+
+    /**
+     * The 99th percentile of the time to write an event to the disk buffer in microseconds, within a factor of two
+     */
+    public long getBufferWriteLatencyP99Micros() {
+        SegmentedLog log = logzioSender == null ? null : logzioSender.getSegmentedLog();
+        return log == null ? 0 : TimeUnit.NANOSECONDS.toMicros(log.getWriteLatency().getPercentileNanos(99));
+    }
+
+    /**
+     * Syncs of the disk buffer to stable storage, since the sender was created. With the batch durability, compare
+     * it with the events written to see how many share a sync
+     */
+    public long getBufferSyncs() {
+        SegmentedLog log = logzioSender == null ? null : logzioSender.getSegmentedLog();
+        return log == null ? 0 : log.getSyncLatency().getCount();
+    }
+
+    /**
+     * Mean time of a sync of the disk buffer in microseconds
+     */
+    public long getBufferSyncLatencyMeanMicros() {
+        SegmentedLog log = logzioSender == null ? null : logzioSender.getSegmentedLog();
+        return log == null ? 0 : TimeUnit.NANOSECONDS.toMicros(log.getSyncLatency().getMeanNanos());
+    }
+
+    /**
+     * Events dropped from the disk buffer to keep it within maxBufferBytes, since the sender was created
+     */
+    @Override
+    public long getEvictedForMaxBufferBytes() {
+        SegmentedLog log = logzioSender == null ? null : logzioSender.getSegmentedLog();
+        return log == null ? 0 : log.getEvictedForBytes();
+    }
+
+    /**
+     * Events dropped from the disk buffer as they were older than maxBufferedEventAgeSeconds, since the sender was
+     * created
+     */
+    @Override
+    public long getEvictedForMaxBufferedEventAge() {
+        SegmentedLog log = logzioSender == null ? null : logzioSender.getSegmentedLog();
+        return log == null ? 0 : log.getEvictedForAge();
+    }
+
+    /**
+     * Bytes moved from memory to disk in hybrid mode, since the sender was created
+     */
+    @Override
+    public long getSpilledBytes() {
+        LogsBuffer logsBuffer = logzioSender == null ? null : logzioSender.getLogsBuffer();
+        return logsBuffer instanceof HybridLogsBuffer ? ((HybridLogsBuffer) logsBuffer).getSpilledBytes() : 0;
+    }
+
+    /**
+     * Bytes taken back from disk in hybrid mode, since the sender was created
+     */
+    public long getUnspilledBytes() {
+        LogsBuffer logsBuffer = logzioSender == null ? null : logzioSender.getLogsBuffer();
+        return logsBuffer instanceof HybridLogsBuffer ? ((HybridLogsBuffer) logsBuffer).getUnspilledBytes() : 0;
+    }
+
+    DroppedEvents getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    /**
+     * Events that reached the appender, shipped or not
+     */
+    @Override
+    public long getAppendedEvents() {
+        return appendedEvents.sum();
+    }
+
+    /**
+     * Events dropped for any reason, the drop summaries break them down
+     */
+    @Override
+    public long getDroppedEventCount() {
+        return droppedEvents.total();
+    }
+
+    /**
+     * Bytes of JSON the events were serialized to, before compression
+     */
+    @Override
+    public long getSerializedBytes() {
+        return serializedBytes.sum();
+    }
+
+    /**
+     * Events in the sender's buffer, not acknowledged by the listener yet. With compressedBlockBytes, a stored block
+     * counts as one
+     */
+    @Override
+    public long getBufferedEvents() {
+        LogsBuffer logsBuffer = logzioSender == null ? null : logzioSender.getLogsBuffer();
+        return logsBuffer == null ? 0 : logsBuffer.size();
+    }
+
+    /**
+     * How long ago the oldest event in the buffer was logged, as of the last drain. 0 when the buffer is empty
+     */
+    @Override
+    public long getOldestBufferedEventAgeMillis() {
+        long oldestLineMillis = logzioSender == null ? 0 : logzioSender.getOldestLineMillis();
+        return oldestLineMillis == 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldestLineMillis);
+    }
+
+    /**
+     * Bytes of the disk buffer segment files, written or not. 0 in memory mode
+     */
+    @Override
+    public long getBufferBytesOnDisk() {
+        SegmentedLog log = logzioSender == null ? null : logzioSender.getSegmentedLog();
+        return log == null ? 0 : log.getSegmentsBytes();
+    }
+
+    /**
+     * Events acknowledged by the listener, or refused for good with a 400 or 401, since the sender was created
+     */
+    @Override
+    public long getShippedEvents() {
+        return logzioSender == null ? 0 : logzioSender.getMetrics().getShippedLines();
+    }
+
+    /**
+     * Bytes of the events counted by {@link #getShippedEvents()}, before compression
+     */
+    @Override
+    public long getShippedBytes() {
+        return logzioSender == null ? 0 : logzioSender.getMetrics().getShippedBytes();
+    }
+
+    /**
+     * Mean time from posting a bulk to its response in microseconds, retries counting as bulks of their own
+     */
+    @Override
+    public long getBulkSendLatencyMeanMicros() {
+        return logzioSender == null ? 0 : TimeUnit.NANOSECONDS.toMicros(logzioSender.getMetrics().getSendLatency().getMeanNanos());
+    }
+
+    /**
+     * The 99th percentile of the time from posting a bulk to its response in microseconds, within a factor of two
+     */
+    @Override
+    public long getBulkSendLatencyP99Micros() {
+        return logzioSender == null ? 0 : TimeUnit.NANOSECONDS.toMicros(logzioSender.getMetrics().getSendLatency().getPercentileNanos(99));
+    }
+
+    @Override
+    public long getHttp2xxResponses() {
+        return logzioSender == null ? 0 : logzioSender.getMetrics().getResponses(2);
+    }
+
+    @Override
+    public long getHttp4xxResponses() {
+        return logzioSender == null ? 0 : logzioSender.getMetrics().getResponses(4);
+    }
+
+    /**
+     * Responses asking to slow down, also counted in {@link #getHttp4xxResponses()}
+     */
+    @Override
+    public long getHttp429Responses() {
+        return logzioSender == null ? 0 : logzioSender.getMetrics().getTooManyRequestsResponses();
+    }
+
+    @Override
+    public long getHttp5xxResponses() {
+        return logzioSender == null ? 0 : logzioSender.getMetrics().getResponses(5);
+    }
+
+    /**
+     * Bulks that got no response at all, as the connection failed or timed out
+     */
+    @Override
+    public long getSendErrors() {
+        return logzioSender == null ? 0 : logzioSender.getMetrics().getSendErrors();
+    }
+
+    /**
+     * Ships everything logged until now, waiting up to 30 seconds for the listener to acknowledge it
+     */
+    public void flush() {
+        if (!awaitDrained(Duration.ofMillis(FLUSH_TIMEOUT_MILLIS))) {
+            addWarn("Not everything logged was shipped within " + FLUSH_TIMEOUT_MILLIS / 1000 + " seconds of flushing");
+        }
+    }
+
+    /**
+     * Drains the buffer right away, rather than at the next drainTimeoutSec, and waits until everything logged until
+     * now was acknowledged by the listener or dropped
+     *
+     * @return false if the appender is not started, or if something is still to be shipped once the timeout passed
+     */
+    public boolean awaitDrained(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            // With asyncStart, until the sender started and took what was logged meanwhile
+            while (!senderReady || (preStartBuffer != null && !preStartBuffer.isEmpty())) {
+                if (!isStarted() || System.nanoTime() - deadline >= 0) return false;
+                Thread.sleep(AWAIT_START_POLL_MILLIS);
+            }
+            LogsRingBuffer pendingRingBuffer = ringBuffer;
+            if (pendingRingBuffer != null && !pendingRingBuffer.awaitHandedOver(remainingMillis(deadline))) return false;
+            LogzioBulkSender sender = logzioSender;
+            return sender != null && sender.awaitDrained(remainingMillis(deadline));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static long remainingMillis(long deadlineNanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
     @Override
     public void start() {
         if (logzioToken == null) {
             addError("Logz.io Token is missing! Bailing out..");
             return;
         }
-        if (!(fileSystemFullPercentThreshold >= 1 && fileSystemFullPercentThreshold <= 100)) {
+        if (bufferMode != LogsBuffer.Mode.MEMORY && !(fileSystemFullPercentThreshold >= 1 && fileSystemFullPercentThreshold <= 100)) {
             if (fileSystemFullPercentThreshold != -1) {
                 addError("fileSystemFullPercentThreshold should be a number between 1 and 100, or -1");
                 return;
             }
         }
-        try {
-            if (addHostname) {
-                String hostname = InetAddress.getLocalHost().getHostName();
-                additionalFieldsMap.put("hostname", hostname);
+        if (bufferMode != LogsBuffer.Mode.DISK && memoryBufferCapacityBytes <= 0) {
+            addError("memoryBufferCapacityBytes should be a number greater than 0");
+            return;
+        }
+        if (!asyncStart) {
+            if (startSender()) {
+                senderReady = true;
+                super.start();
+                registerMBean();
+            }
+            return;
+        }
+        // Resolving the hostname and starting the sender can take a while, so the logging framework doesn't wait for it
+        preStartBuffer = new ArrayBlockingQueue<>(preStartBufferSize);
+        startThread = new Thread(this::startSenderInBackground, "logzio-appender-start-" + logzioType);
+        startThread.setDaemon(true);
+        super.start();
+        registerMBean();
+        startThread.start();
+    }
+
+    private void startSenderInBackground() {
+        if (!startSender()) {
+            int discarded = preStartBuffer.size();
+            preStartBuffer.clear();
+            addError("The appender could not start, " + discarded + " events logged while it was starting are discarded");
+            unregisterMBean();
+            super.stop();
+            return;
+        }
+        senderReady = true;
+        flushPreStartBuffer();
+    }
+
+    /**
+     * Sets up everything past the configuration checks, and starts the sender
+     *
+     * @return false if the appender can't start, with the error already reported
+     */
+    private boolean startSender() {
+        if (addHostname) {
+            try {
+                additionalFieldsMap.put("hostname", hostnameResolver.call());
+            } catch (Exception e) {
+                addWarn("The configuration addHostName was specified but the host could not be resolved, thus the field 'hostname' will not be added", e);
             }
-        } catch (UnknownHostException e) {
-            addWarn("The configuration addHostName was specified but the host could not be resolved, thus the field 'hostname' will not be added", e);
-        }
-        if (bufferDir != null) {
-            bufferDir += File.separator + logzioType;
-            File bufferFile = new File(bufferDir);
-            if (bufferFile.exists()) {
-                if (!bufferFile.canWrite()) {
-                    addError("We cant write to your bufferDir location: "+bufferFile.getAbsolutePath());
-                    return;
+        }
+        // Nothing is written to disk in memory mode, so there is no directory to validate
+        File bufferDirFile = null;
+        if (bufferMode != LogsBuffer.Mode.MEMORY) {
+            if (bufferDir != null) {
+                bufferDir += File.separator + logzioType;
+                File bufferFile = new File(bufferDir);
+                if (bufferFile.exists()) {
+                    if (!bufferFile.canWrite()) {
+                        addError("We cant write to your bufferDir location: "+bufferFile.getAbsolutePath());
+                        return false;
+                    }
+                } else {
+                    if (!bufferFile.mkdirs()) {
+                        addError("We cant create your bufferDir location: "+bufferFile.getAbsolutePath());
+                        return false;
+                    }
                 }
             } else {
-                if (!bufferFile.mkdirs()) {
-                    addError("We cant create your bufferDir location: "+bufferFile.getAbsolutePath());
-                    return;
-                }
+                bufferDir = System.getProperty("java.io.tmpdir") + File.separator+"logzio-logback-buffer"+File.separator + logzioType;
             }
-        } else {
-            bufferDir = System.getProperty("java.io.tmpdir") + File.separator+"logzio-logback-buffer"+File.separator + logzioType;
+            bufferDirFile = new File(bufferDir,"logzio-logback-appender");
+        }
+        if ((maxBufferBytes > 0 || maxBufferedEventAgeSeconds > 0) && bufferMode == LogsBuffer.Mode.MEMORY) {
+            addWarn("maxBufferBytes and maxBufferedEventAgeSeconds only apply to the disk buffer, and bufferMode is memory.");
+        }
+        if (compressedBlockBytes > 0 && (!compressRequests || bufferMode != LogsBuffer.Mode.DISK)) {
+            addWarn("compressedBlockBytes only applies with compressRequests and the disk bufferMode. Events will be stored one by one.");
+        }
+        int storedBlockBytes = compressedBlockBytes;
+        if (compressedBlockBytes > 0 && durability == SegmentedLog.Durability.BATCH) {
+            // Events of the block being filled are only in memory, while batch promises they are synced once written
+            addWarn("compressedBlockBytes can't be used with the batch durability. Events will be stored one by one.");
+            storedBlockBytes = 0;
         }
-        File bufferDirFile = new File(bufferDir,"logzio-logback-appender");
         try {
             SenderStatusReporter reporter = new StatusReporter();
-            logzioSender = LogzioSender.getOrCreateSenderByType(logzioToken, logzioType, drainTimeoutSec, fileSystemFullPercentThreshold,
-                    bufferDirFile, logzioUrl, socketTimeout, connectTimeout, debug,
-                    reporter, context.getScheduledExecutorService(), gcPersistedQueueFilesIntervalSeconds, compressRequests);
+            logzioSender = LogzioBulkSender.builder()
+                    .setLogzioToken(logzioToken)
+                    .setLogzioType(logzioType)
+                    .setDrainTimeout(drainTimeoutSec)
+                    .setFsPercentThreshold(fileSystemFullPercentThreshold)
+                    .setFsUsageSampleIntervalMs(fileSystemUsageSampleIntervalMs)
+                    .setBufferDir(bufferDirFile)
+                    .setLogzioUrl(logzioUrl)
+                    .setSocketTimeout(socketTimeout)
+                    .setConnectTimeout(connectTimeout)
+                    .setDebug(debug)
+                    .setReporter(reporter)
+                    .setTasksExecutor(context.getScheduledExecutorService())
+                    .setGcPersistedQueueFilesIntervalSeconds(gcPersistedQueueFilesIntervalSeconds)
+                    .setCompressRequests(compressRequests)
+                    .setCompressionLevel(compressionLevel)
+                    .setCompressionMinBytes(compressionMinBytes)
+                    .setCompressedBlockBytes(storedBlockBytes)
+                    .setBufferMode(bufferMode)
+                    .setDurability(durability)
+                    .setDurabilityIntervalMs(durabilityIntervalMs)
+                    .setMaxBufferBytes(maxBufferBytes)
+                    .setMaxBufferedEventAgeSec(maxBufferedEventAgeSeconds)
+                    .setMemoryBufferCapacityBytes(memoryBufferCapacityBytes)
+                    .setSpillThresholdPercent(spillThresholdPercent)
+                    .setAdaptiveDrain(adaptiveDrain)
+                    .setDrainThresholdEvents(drainThresholdEvents)
+                    .setDrainThresholdBytes(drainThresholdBytes)
+                    .setMaxEventAgeMillis(maxEventAgeMillis)
+                    .setMaxDrainIntervalSec(maxDrainIntervalSec)
+                    .setMaxInFlightRequests(maxInFlightRequests)
+                    .setTransport(createTransport())
+                    .setLogsBuffer(logsBuffer)
+                    .setCircuitBreakerThreshold(circuitBreakerThreshold)
+                    .setCircuitBreakerMaxOpenSec(circuitBreakerMaxOpenSec)
+                    .getOrCreateSenderByType();
             logzioSender.start();
         } catch (LogzioParameterErrorException e) {
             addError("Some of the configuration parameters of logz.io is wrong: "+e.getMessage(), e);
-            return;
+            return false;
+        } catch (IllegalStateException e) {
+            // The transport could not open what it needs, a selector or the TLS context
+            addError("Could not start the logz.io sender: " + e.getMessage(), e);
+            logzioSender = null;
+            return false;
         }
         throwableProxyConverter = new ThrowableProxyConverter();
         lineOfCallerConverter = new LineOfCallerConverter();
         throwableProxyConverter.setOptionList(Arrays.asList("full"));
         throwableProxyConverter.start();
-        super.start();
+        bufferFullReason = bufferMode == LogsBuffer.Mode.MEMORY ? DroppedEvents.Reason.MEMORY_BUFFER_FULL : DroppedEvents.Reason.FILE_SYSTEM_FULL;
+        jsonEncoder = new LogzioJsonEncoder(throwableProxyConverter, lineOfCallerConverter, additionalFieldsMap, line, timestampFormat);
+        if (ringBufferCapacity > 0) {
+            ringBuffer = new LogsRingBuffer(ringBufferCapacity, ringBufferWaitStrategy, logzioType, this::sendBatch);
+            // The sample policy starts dropping once the ring is three quarters full
+            samplingThreshold = ringBuffer.getCapacity() - ringBuffer.getCapacity() / 4;
+            if (levelSheddingWatermarks != null) {
+                levelShedder = new LevelShedder(levelSheddingWatermarks, ringBuffer.getCapacity());
+            }
+            ringBuffer.start();
+        } else if (levelSheddingWatermarks != null) {
+            addWarn("levelSheddingWatermarks are relative to the ring buffer, and ringBufferCapacity is not set. Events will not be shed by level.");
+        }
+        lastDropSummaryMillis = System.currentTimeMillis();
+        if (dropSummaryIntervalSeconds > 0) {
+            dropSummaryTask = context.getScheduledExecutorService().scheduleWithFixedDelay(this::sendDropSummary,
+                    dropSummaryIntervalSeconds, dropSummaryIntervalSeconds, TimeUnit.SECONDS);
+        }
+        return true;
+    }
+
+    private LogzioTransport createTransport() {
+        if (transport != null) return transport;
+        HttpTransport httpTransport = new HttpTransport();
+        httpTransport.setPersistentConnections(persistentConnections);
+        return httpTransport;
+    }
+
+    /**
+     * Lets tests stand in for a slow DNS
+     */
+    void setHostnameResolver(Callable<String> hostnameResolver) {
+        this.hostnameResolver = hostnameResolver;
+    }
+
+    /**
+     * Lets benchmarks measure the appender on its own, with a buffer that costs nothing
+     */
+    void setLogsBuffer(LogsBuffer logsBuffer) {
+        this.logsBuffer = logsBuffer;
     }
 
     @Override
     public void stop() {
+        Thread pendingStart = startThread;
+        startThread = null;
+        if (pendingStart != null && pendingStart.isAlive()) {
+            try {
+                pendingStart.join(ASYNC_START_STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (pendingStart.isAlive()) {
+                addWarn("The appender is stopped before it finished starting, " + preStartBuffer.size() + " events logged meanwhile are discarded");
+                pendingStart.interrupt();
+            }
+        }
+        stopping = true;
+        // Hand everything still in the ring buffer to the sender, before it drains for the last time. Events keep
+        // going to the sender meanwhile, until it is stopped
+        LogsRingBuffer stoppingRingBuffer = ringBuffer;
+        if (stoppingRingBuffer != null) {
+            stoppingRingBuffer.stop(RING_BUFFER_STOP_TIMEOUT_MILLIS);
+            ringBuffer = null;
+            levelShedder = null;
+        }
+        if (dropSummaryTask != null) {
+            dropSummaryTask.cancel(false);
+            dropSummaryTask = null;
+        }
+        if (logzioSender != null && jsonEncoder != null) sendDropSummary();
         if (logzioSender != null) logzioSender.stop();
+        senderReady = false;
         if ( throwableProxyConverter != null ) throwableProxyConverter.stop();
+        unregisterMBean();
         super.stop();
+        stopping = false;
+    }
+
+    private void registerMBean() {
+        if (!jmxEnabled) return;
+        try {
+            ObjectName name = new ObjectName("io.logz.logback:type=LogzioLogbackAppender,name=" + ObjectName.quote(logzioType));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            mbeanName = name;
+        } catch (JMException e) {
+            addWarn("Could not register the appender metrics with JMX, another appender of type " + logzioType + " may have them", e);
+        }
+    }
+
+    private void unregisterMBean() {
+        ObjectName name = mbeanName;
+        if (name == null) return;
+        mbeanName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            addWarn("Could not unregister the appender metrics from JMX", e);
+        }
     }
 
     private String getValueFromSystemEnvironmentIfNeeded(String value) {
@@ -219,46 +1114,194 @@ public class LogzioLogbackAppender extends UnsynchronizedAppenderBase<ILoggingEv
         return value;
     }
 
-    private JsonObject formatMessageAsJson(ILoggingEvent loggingEvent) {
-        JsonObject logMessage = new JsonObject();
-
-        // Adding MDC first, as I dont want it to collide with any one of the following fields
-        if (loggingEvent.getMDCPropertyMap() != null) {
-            loggingEvent.getMDCPropertyMap().forEach(logMessage::addProperty);
+    @Override
+    protected void append(ILoggingEvent loggingEvent) {
+        if (loggingEvent.getLoggerName().contains("io.logz.sender")) return;
+        appendedEvents.increment();
+        if (senderReady) {
+            appendToSender(loggingEvent);
+        } else if (stopping || preStartBuffer == null) {
+            // The sender is stopped, or stopping before it was ever ready
+            droppedEvents.increment(DroppedEvents.Reason.STOPPING, DroppedEvents.levelIndex(loggingEvent.getLevel()));
+        } else {
+            keepUntilSenderReady(loggingEvent);
         }
+    }
 
-        logMessage.addProperty(TIMESTAMP, new Date(loggingEvent.getTimeStamp()).toInstant().toString());
-        logMessage.addProperty(LOGLEVEL,loggingEvent.getLevel().levelStr);
+    private void keepUntilSenderReady(ILoggingEvent loggingEvent) {
+        // The event is encoded later on another thread, so whatever it computes lazily from this one is taken now
+        loggingEvent.prepareForDeferredProcessing();
+        if (line) loggingEvent.getCallerData();
+        if (!preStartBuffer.offer(loggingEvent)) {
+            droppedEvents.increment(DroppedEvents.Reason.PRE_START_BUFFER_FULL, DroppedEvents.levelIndex(loggingEvent.getLevel()));
+        }
+        // The sender may have become ready, and the buffer flushed, since senderReady was read
+        if (senderReady) flushPreStartBuffer();
+    }
 
-        if (loggingEvent.getMarker() != null) {
-            logMessage.addProperty(MARKER, loggingEvent.getMarker().toString());
+    /**
+     * Hands the events kept while starting to the sender, encoded now that the hostname is known
+     */
+    private void flushPreStartBuffer() {
+        ILoggingEvent loggingEvent;
+        while ((loggingEvent = preStartBuffer.poll()) != null) {
+            appendToSender(loggingEvent);
         }
+    }
 
-        logMessage.addProperty(MESSAGE, loggingEvent.getFormattedMessage());
-        logMessage.addProperty(LOGGER, loggingEvent.getLoggerName());
-        logMessage.addProperty(THREAD, loggingEvent.getThreadName());
-        if (line) {
-            logMessage.addProperty(LINE, lineOfCallerConverter.convert(loggingEvent));
+    private void appendToSender(ILoggingEvent loggingEvent) {
+        int levelIndex = DroppedEvents.levelIndex(loggingEvent.getLevel());
+        // Read once, stop() clears them while events are still appended
+        LogsRingBuffer ring = ringBuffer;
+        LevelShedder shedder = levelShedder;
+        if (ring != null && shedder != null && shedder.shouldShed(levelIndex, ring.size())) {
+            // Shed before serializing, so a logging storm costs as little as possible
+            droppedEvents.increment(DroppedEvents.Reason.SHED, levelIndex);
+            return;
         }
+        JsonByteBuffer jsonLine = jsonEncoder.encode(loggingEvent);
+        serializedBytes.add(jsonLine.size());
+        if (ring == null || !ring.isRunning()) {
+            // No ring buffer, or one that is stopping and may not take it anymore
+            if (!logzioSender.send(jsonLine.toByteArray())) {
+                droppedEvents.increment(bufferFullReason, levelIndex);
+            }
+        } else {
+            publish(ring, jsonLine, levelIndex);
+        }
+    }
 
-        if (loggingEvent.getThrowableProxy() != null) {
-            logMessage.addProperty(EXCEPTION, throwableProxyConverter.convert(loggingEvent));
+    private void publish(LogsRingBuffer ringBuffer, JsonByteBuffer jsonLine, int levelIndex) {
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+                if (!ringBuffer.tryPublish(jsonLine.array(), 0, jsonLine.size(), levelIndex)) {
+                    droppedEvents.increment(DroppedEvents.Reason.BUFFER_FULL, levelIndex);
+                }
+                return;
+            case DROP_OLDEST:
+                for (int attempt = 0; !ringBuffer.tryPublish(jsonLine.array(), 0, jsonLine.size(), levelIndex); attempt++) {
+                    int evictedLevelIndex = attempt < MAX_EVICTION_ATTEMPTS ? ringBuffer.evictOldest() : -1;
+                    if (evictedLevelIndex < 0) {
+                        // Other producers keep taking the freed slots, or the oldest one is still being written
+                        droppedEvents.increment(DroppedEvents.Reason.BUFFER_FULL, levelIndex);
+                        return;
+                    }
+                    droppedEvents.increment(DroppedEvents.Reason.EVICTED, evictedLevelIndex);
+                }
+                return;
+            case SAMPLE:
+                if (ringBuffer.size() >= samplingThreshold && ThreadLocalRandom.current().nextDouble() >= overflowSampleRate) {
+                    droppedEvents.increment(DroppedEvents.Reason.SAMPLED, levelIndex);
+                } else if (!ringBuffer.tryPublish(jsonLine.array(), 0, jsonLine.size(), levelIndex)) {
+                    droppedEvents.increment(DroppedEvents.Reason.BUFFER_FULL, levelIndex);
+                }
+                return;
+            case BLOCK:
+            default:
+                if (!ringBuffer.tryPublish(jsonLine.array(), 0, jsonLine.size(), levelIndex) && !publishWithin(ringBuffer, jsonLine, levelIndex, overflowBlockTimeoutMillis)) {
+                    droppedEvents.increment(DroppedEvents.Reason.BLOCK_TIMEOUT, levelIndex);
+                }
         }
+    }
 
-        if (additionalFieldsMap != null) {
-            additionalFieldsMap.forEach(logMessage::addProperty);
+    private boolean publishWithin(LogsRingBuffer ringBuffer, JsonByteBuffer jsonLine, int levelIndex, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int tries = 0;
+        while (System.nanoTime() - deadline < 0) {
+            if (tries++ < BLOCK_YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+            }
+            if (ringBuffer.tryPublish(jsonLine.array(), 0, jsonLine.size(), levelIndex)) return true;
         }
+        return false;
+    }
 
-        return logMessage;
+    private void sendBatch(List<byte[]> jsonLines, int[] levelIndexes) {
+        if (!logzioSender.send(jsonLines)) {
+            for (int levelIndex : levelIndexes) {
+                droppedEvents.increment(bufferFullReason, levelIndex);
+            }
+        }
     }
 
-    @Override
-    protected void append(ILoggingEvent loggingEvent) {
-        if (!loggingEvent.getLoggerName().contains("io.logz.sender")) {
-            logzioSender.send(formatMessageAsJson(loggingEvent));
+    /**
+     * Reports how many events were dropped since the last summary, both as a status message and as a log event
+     * shipped with the rest of the logs. Does nothing if nothing was dropped. Events evicted from the disk buffer
+     * are reported without their levels, which are not known once encoded. The final summary on stop() waits for
+     * a scheduled one still running, so the same drops are never reported twice.
+     */
+    private synchronized void sendDropSummary() {
+        try {
+            long now = System.currentTimeMillis();
+            long intervalSeconds = TimeUnit.MILLISECONDS.toSeconds(now - lastDropSummaryMillis);
+            lastDropSummaryMillis = now;
+            Map<DroppedEvents.Reason, long[]> dropped = droppedEvents.drain();
+            long evictedForBytes = 0;
+            long evictedForAge = 0;
+            SegmentedLog log = logzioSender.getSegmentedLog();
+            if (log != null) {
+                evictedForBytes = log.getEvictedForBytes() - lastEvictedForBytes;
+                evictedForAge = log.getEvictedForAge() - lastEvictedForAge;
+                lastEvictedForBytes += evictedForBytes;
+                lastEvictedForAge += evictedForAge;
+            }
+            if (dropped.isEmpty() && evictedForBytes == 0 && evictedForAge == 0) return;
+
+            Map<String, String> fields = new LinkedHashMap<>();
+            StringBuilder reasons = new StringBuilder();
+            long total = 0;
+            for (Map.Entry<DroppedEvents.Reason, long[]> entry : dropped.entrySet()) {
+                String reason = entry.getKey().toString();
+                long[] perLevel = entry.getValue();
+                long reasonTotal = 0;
+                StringBuilder levels = new StringBuilder();
+                for (int i = 0; i < perLevel.length; i++) {
+                    if (perLevel[i] == 0) continue;
+                    String level = DroppedEvents.LEVELS[i].levelStr;
+                    fields.put("droppedEvents_" + reason + "_" + level, Long.toString(perLevel[i]));
+                    if (levels.length() > 0) levels.append(", ");
+                    levels.append(level).append('=').append(perLevel[i]);
+                    reasonTotal += perLevel[i];
+                }
+                fields.put("droppedEvents_" + reason, Long.toString(reasonTotal));
+                if (reasons.length() > 0) reasons.append("; ");
+                reasons.append(reason).append(" (").append(levels).append(')');
+                total += reasonTotal;
+            }
+            total += appendEvicted(fields, reasons, "maxBufferBytes", evictedForBytes);
+            total += appendEvicted(fields, reasons, "maxBufferedEventAge", evictedForAge);
+            fields.put("droppedEvents", Long.toString(total));
+            fields.put("sheddingTier", Integer.toString(getSheddingTier()));
+
+            String message = "Logz.io appender dropped " + total + " log events in the last " + intervalSeconds + " seconds: " + reasons;
+            addWarn(message);
+
+            LoggingEvent summary = new LoggingEvent();
+            summary.setTimeStamp(now);
+            summary.setLevel(Level.WARN);
+            summary.setLoggerName(LogzioLogbackAppender.class.getName());
+            summary.setThreadName(Thread.currentThread().getName());
+            summary.setMessage(message);
+            summary.setMDCPropertyMap(fields);
+            summary.setCallerData(new StackTraceElement[0]);
+            // Straight to the sender, the summary should not be dropped by the policy it reports on
+            logzioSender.send(jsonEncoder.encode(summary).toByteArray());
+        } catch (Exception e) {
+            // Never kill the scheduled task
+            addError("Failed to report dropped log events", e);
         }
     }
 
+    private static long appendEvicted(Map<String, String> fields, StringBuilder reasons, String reason, long evicted) {
+        if (evicted == 0) return 0;
+        fields.put("droppedEvents_" + reason, Long.toString(evicted));
+        if (reasons.length() > 0) reasons.append("; ");
+        reasons.append(reason).append(" (").append(evicted).append(')');
+        return evicted;
+    }
+
     private class StatusReporter implements SenderStatusReporter {
 
         @Override
@@ -0,0 +1,57 @@
+package io.logz.logback;
+
+/**
+ * The runtime metrics of a LogzioLogbackAppender, registered with the platform MBeanServer while it is started, as
+ * io.logz.logback:type=LogzioLogbackAppender,name=&lt;logzioType&gt; (unless jmxEnabled is off).
+ *
+ * Counts are since the appender (or, for what the sender does, the sender of its type) was created. Everything is
+ * read from counters and gauges the appender keeps anyway, so reading them never waits on the logging threads.
+ */
+public interface LogzioLogbackAppenderMXBean {
+
+    long getAppendedEvents();
+
+    long getDroppedEventCount();
+
+    long getSerializedBytes();
+
+    long getBufferedEvents();
+
+    long getOldestBufferedEventAgeMillis();
+
+    long getBufferBytesOnDisk();
+
+    double getFileSystemUsedPercent();
+
+    long getShippedEvents();
+
+    long getShippedBytes();
+
+    long getBulkSendLatencyMeanMicros();
+
+    long getBulkSendLatencyP99Micros();
+
+    long getHttp2xxResponses();
+
+    long getHttp4xxResponses();
+
+    long getHttp429Responses();
+
+    long getHttp5xxResponses();
+
+    long getSendErrors();
+
+    String getCircuitBreakerState();
+
+    int getSheddingTier();
+
+    long getHandshakes();
+
+    int getOpenConnections();
+
+    long getEvictedForMaxBufferBytes();
+
+    long getEvictedForMaxBufferedEventAge();
+
+    long getSpilledBytes();
+}
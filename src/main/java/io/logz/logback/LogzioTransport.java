@@ -0,0 +1,142 @@
+package io.logz.logback;
+
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends bulks to the listener. The sender takes care of batching, compression, retries and the buffer, a transport
+ * only posts a ready payload once and reports the response.
+ *
+ * Set in logback XML with a nested component, {@link HttpTransport} being the default:
+ * <pre>
+ * &lt;transport class="io.logz.logback.AsyncHttpTransport"/&gt;
+ * </pre>
+ * Implementations need a public no argument constructor, and can take their own settings as XML properties.
+ */
+public interface LogzioTransport {
+
+    /**
+     * Called when the sender starts, before the first {@link #send(byte[], boolean)}. A sender may be stopped and
+     * started again, with the same settings.
+     *
+     * @throws IllegalStateException if the transport can't start, the appender then reports it and doesn't start
+     */
+    void start(Settings settings);
+
+    /**
+     * Posts a bulk of new line separated JSON lines, up to maxInFlightRequests of them at once.
+     *
+     * @param gzip whether the payload is gzip compressed
+     * @return completed with the listener response, or exceptionally with the IOException that prevented getting one
+     */
+    CompletableFuture<Response> send(byte[] payload, boolean gzip);
+
+    /**
+     * Called when the sender stops, after its final drain
+     */
+    void stop();
+
+    /**
+     * Connections opened to the listener (each with its TCP and TLS handshake), for transports that count them
+     */
+    default long getHandshakes() {
+        return 0;
+    }
+
+    /**
+     * Connections opened to the listener over the last minute, for transports that count them
+     */
+    default int getHandshakesPerMinute() {
+        return 0;
+    }
+
+    /**
+     * Requests sent over an already open connection, for transports that count them
+     */
+    default long getReusedConnectionRequests() {
+        return 0;
+    }
+
+    default int getOpenConnections() {
+        return 0;
+    }
+
+    final class Settings {
+        private final URL listenerUrl;
+        private final int connectTimeout;
+        private final int socketTimeout;
+        private final int maxInFlightRequests;
+        private final String name;
+
+        Settings(URL listenerUrl, int connectTimeout, int socketTimeout, int maxInFlightRequests, String name) {
+            this.listenerUrl = listenerUrl;
+            this.connectTimeout = connectTimeout;
+            this.socketTimeout = socketTimeout;
+            this.maxInFlightRequests = maxInFlightRequests;
+            this.name = name;
+        }
+
+        /**
+         * The bulk URL, token and type included
+         */
+        public URL getListenerUrl() {
+            return listenerUrl;
+        }
+
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public int getSocketTimeout() {
+            return socketTimeout;
+        }
+
+        public int getMaxInFlightRequests() {
+            return maxInFlightRequests;
+        }
+
+        /**
+         * The log type of the sender, to name threads after
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    final class Response {
+        private final int code;
+        private final String message;
+        private final byte[] body;
+        private final long retryAfterMillis;
+
+        public Response(int code, String message, byte[] body) {
+            this(code, message, body, 0);
+        }
+
+        /**
+         * @param retryAfterMillis the Retry-After header of the response, 0 if there is none
+         */
+        public Response(int code, String message, byte[] body, long retryAfterMillis) {
+            this.code = code;
+            this.message = message;
+            this.body = body;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package io.logz.logback;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded FIFO of log lines in a single direct (off-heap) ByteBuffer, used as a circular log of
+ * length-prefixed records. Lines are copied in and out, so the heap only holds them while they are shipped.
+ *
+ * All operations are guarded by the buffer's monitor; the copies are short. The sender peeks at a window of
+ * lines in one call, and removes them in one call once the listener acknowledged them, the same way it does from
+ * the disk buffer.
+ */
+class MemoryLogsBuffer implements LogsBuffer {
+
+    private static final int LENGTH_PREFIX_BYTES = 4;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final byte[] lengthPrefix = new byte[LENGTH_PREFIX_BYTES];
+
+    // Guarded by this
+    private int readPosition = 0;
+    private int writePosition = 0;
+    private int usedBytes = 0;
+    private int storedLines = 0;
+
+    MemoryLogsBuffer(int capacityBytes) {
+        this.capacity = capacityBytes;
+        this.buffer = ByteBuffer.allocateDirect(capacityBytes);
+    }
+
+    @Override
+    public synchronized boolean enqueue(byte[] line) {
+        if (!hasRoomFor(LENGTH_PREFIX_BYTES + line.length)) return false;
+        write(line);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean enqueue(List<byte[]> lines) {
+        int batchBytes = 0;
+        for (byte[] line : lines) batchBytes += LENGTH_PREFIX_BYTES + line.length;
+        if (!hasRoomFor(batchBytes)) return false;
+        lines.forEach(this::write);
+        return true;
+    }
+
+    @Override
+    public synchronized byte[] dequeue() {
+        if (usedBytes == 0) return null;
+        byte[] line = new byte[readLength(readPosition)];
+        readPosition = get(line, line.length, advance(readPosition, LENGTH_PREFIX_BYTES));
+        usedBytes -= LENGTH_PREFIX_BYTES + line.length;
+        storedLines--;
+        return line;
+    }
+
+    @Override
+    public synchronized List<byte[]> peek(int maxLines) {
+        List<byte[]> lines = new ArrayList<>();
+        int position = readPosition;
+        int bytesLeft = usedBytes;
+        while (bytesLeft > 0 && lines.size() < maxLines) {
+            byte[] line = new byte[readLength(position)];
+            position = get(line, line.length, advance(position, LENGTH_PREFIX_BYTES));
+            bytesLeft -= LENGTH_PREFIX_BYTES + line.length;
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @Override
+    public synchronized long remove(int lines) {
+        long bytes = 0;
+        for (int i = 0; i < lines && usedBytes > 0; i++) {
+            int length = readLength(readPosition);
+            readPosition = advance(readPosition, LENGTH_PREFIX_BYTES + length);
+            usedBytes -= LENGTH_PREFIX_BYTES + length;
+            storedLines--;
+            bytes += length;
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return usedBytes == 0;
+    }
+
+    @Override
+    public synchronized long size() {
+        return storedLines;
+    }
+
+    @Override
+    public void gc() {
+        // Space is reused as soon as a line is removed
+    }
+
+    synchronized int getUsedBytes() {
+        return usedBytes;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    private boolean hasRoomFor(int bytes) {
+        return bytes >= 0 && bytes <= capacity - usedBytes;
+    }
+
+    private void write(byte[] line) {
+        int length = line.length;
+        lengthPrefix[0] = (byte) (length >>> 24);
+        lengthPrefix[1] = (byte) (length >>> 16);
+        lengthPrefix[2] = (byte) (length >>> 8);
+        lengthPrefix[3] = (byte) length;
+        put(lengthPrefix, LENGTH_PREFIX_BYTES);
+        put(line, length);
+        usedBytes += LENGTH_PREFIX_BYTES + length;
+        storedLines++;
+    }
+
+    private void put(byte[] source, int length) {
+        int untilEnd = Math.min(length, capacity - writePosition);
+        // Cast to Buffer, as ByteBuffer.position(int) only returns a ByteBuffer from Java 9
+        ((Buffer) buffer).position(writePosition);
+        buffer.put(source, 0, untilEnd);
+        if (untilEnd < length) {
+            ((Buffer) buffer).position(0);
+            buffer.put(source, untilEnd, length - untilEnd);
+        }
+        writePosition = (writePosition + length) % capacity;
+    }
+
+    private int readLength(int position) {
+        get(lengthPrefix, LENGTH_PREFIX_BYTES, position);
+        return ((lengthPrefix[0] & 0xff) << 24) | ((lengthPrefix[1] & 0xff) << 16) | ((lengthPrefix[2] & 0xff) << 8) | (lengthPrefix[3] & 0xff);
+    }
+
+    /**
+     * @return the position right after the bytes read
+     */
+    private int get(byte[] destination, int length, int position) {
+        int untilEnd = Math.min(length, capacity - position);
+        ((Buffer) buffer).position(position);
+        buffer.get(destination, 0, untilEnd);
+        if (untilEnd < length) {
+            ((Buffer) buffer).position(0);
+            buffer.get(destination, untilEnd, length - untilEnd);
+        }
+        return advance(position, length);
+    }
+
+    private int advance(int position, int length) {
+        return (position + length) % capacity;
+    }
+}
@@ -0,0 +1,672 @@
+package io.logz.logback;
+
+import io.logz.sender.SenderStatusReporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * An append only log of records in memory mapped segment files, read from the head in batches and deleted a whole
+ * segment at a time once all its records are acknowledged, so there is nothing to compact or garbage collect.
+ *
+ * A segment file, segment-&lt;id&gt;.log, starts with a magic number and a version, followed by records of a 4 bytes
+ * length, the CRC32 of the payload, and the payload. Segments are created zero filled, and the length of a record
+ * is written last, so a zero length marks the end of what was written. On open, the last segment is scanned for its
+ * end, and records failing their CRC (a write torn by a crash) end the segment they are in.
+ *
+ * The segment header also keeps how many records the segment has and when the last one was appended, so retention
+ * (maxBytes and maxAgeMillis) drops whole segments, oldest first, without reading them.
+ *
+ * The head, the oldest record not acknowledged yet, is kept in a small mapped head file, so acknowledged records
+ * are not read again after a restart.
+ *
+ * When appended records reach stable storage depends on the {@link Durability}. With batch, appenders wait for a
+ * sync covering their records, and while one of them syncs the others queue up behind it, to share the next one.
+ *
+ * All operations are guarded by the log's monitor, except for syncing. Once closed, the log refuses appends and
+ * reads as empty, and the directory can be opened again by a new log.
+ */
+class SegmentedLog {
+
+    enum Durability {
+        // Left to the OS page cache, lost if the machine (not only the process) crashes
+        NONE("none"),
+        // Synced every durabilityIntervalMs, by the sender
+        INTERVAL("interval"),
+        // Appends return once synced, concurrent appends sharing a sync
+        BATCH("batch");
+
+        private final String name;
+
+        Durability(String name) {
+            this.name = name;
+        }
+
+        static Durability fromName(String name) {
+            for (Durability durability : values()) {
+                if (durability.name.equalsIgnoreCase(name)) return durability;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+    // Magic, version, records, and the time of the last record
+    static final int SEGMENT_HEADER_BYTES = 24;
+    static final int RECORD_HEADER_BYTES = 8;
+
+    private static final int SEGMENT_MAGIC = 0x4c5a5347;  // LZSG
+    private static final int HEAD_MAGIC = 0x4c5a4844;  // LZHD
+    private static final int VERSION = 1;
+    private static final int HEAD_FILE_BYTES = 24;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String HEAD_FILE = "head";
+
+    private final File directory;
+    private final int segmentBytes;
+    private final SenderStatusReporter reporter;
+    private final Durability durability;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+    private final CRC32 crc = new CRC32();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram syncLatency = new LatencyHistogram();
+
+    // Oldest first, the last one is appended to
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final List<File> undeletedSegments = new ArrayList<>();
+    // Null once closed
+    private MappedByteBuffer headFile;
+    private boolean closed = false;
+    private int headPosition;
+    // Records removed from the head segment
+    private int headRecords;
+    private long segmentsBytes;
+    private long nextSegmentId;
+    // Records evicted from the head since the last read, some of which the reader may be about to remove
+    private long evictedSinceRead;
+    private volatile long evictedForBytes;
+    private volatile long evictedForAge;
+    private long appendedRecords;
+    // Segments rolled over since the last sync, that it must cover too
+    private final List<MappedByteBuffer> unsyncedSegments = new ArrayList<>();
+
+    private final Object syncLock = new Object();
+    // Guarded by syncLock
+    private long syncedRecords;
+    private boolean syncing;
+
+    SegmentedLog(File directory, SenderStatusReporter reporter) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, Durability.NONE, reporter);
+    }
+
+    SegmentedLog(File directory, int segmentBytes, SenderStatusReporter reporter) throws IOException {
+        this(directory, segmentBytes, Durability.NONE, reporter);
+    }
+
+    SegmentedLog(File directory, int segmentBytes, Durability durability, SenderStatusReporter reporter) throws IOException {
+        this(directory, segmentBytes, durability, 0, 0, System::currentTimeMillis, reporter);
+    }
+
+    /**
+     * @param maxBytes the most bytes of segments to keep, 0 for no limit. Never less than a segment
+     * @param maxAgeMillis how long records are kept, 0 for no limit
+     */
+    SegmentedLog(File directory, int segmentBytes, Durability durability, long maxBytes, long maxAgeMillis, LongSupplier clock,
+                 SenderStatusReporter reporter) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.durability = durability;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+        this.reporter = reporter;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the buffer directory " + directory.getAbsolutePath());
+        }
+        headFile = map(new File(directory, HEAD_FILE), HEAD_FILE_BYTES);
+        open();
+    }
+
+    /**
+     * Appends the record, rolling to a new segment if the last one has no room for it. Empty records are ignored,
+     * as a zero length marks the end of a segment. With batch durability, returns once the record is synced
+     */
+    void append(byte[] record) throws IOException {
+        long startNanos = System.nanoTime();
+        long appended;
+        synchronized (this) {
+            checkOpen();
+            if (record.length > 0) write(tailWithRoomFor(record.length), record);
+            appended = appendedRecords;
+        }
+        if (durability == Durability.BATCH) syncUpTo(appended);
+        writeLatency.record(System.nanoTime() - startNanos);
+    }
+
+    void append(List<byte[]> records) throws IOException {
+        long startNanos = System.nanoTime();
+        long appended;
+        synchronized (this) {
+            checkOpen();
+            for (byte[] record : records) {
+                if (record.length > 0) write(tailWithRoomFor(record.length), record);
+            }
+            appended = appendedRecords;
+        }
+        if (durability == Durability.BATCH) syncUpTo(appended);
+        writeLatency.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Forces the records appended so far, and the head, to stable storage
+     */
+    void sync() {
+        long startNanos = System.nanoTime();
+        long appended;
+        List<MappedByteBuffer> maps;
+        MappedByteBuffer head;
+        synchronized (this) {
+            if (closed) return;
+            appended = appendedRecords;
+            head = headFile;
+            maps = new ArrayList<>(unsyncedSegments);
+            unsyncedSegments.clear();
+            ByteBuffer tail = segments.peekLast().view();
+            if (tail instanceof MappedByteBuffer) maps.add((MappedByteBuffer) tail);
+        }
+        // Appending goes on meanwhile, the mappings stay valid even if their segments are deleted
+        for (MappedByteBuffer map : maps) map.force();
+        head.force();
+        syncLatency.record(System.nanoTime() - startNanos);
+        synchronized (syncLock) {
+            syncedRecords = Math.max(syncedRecords, appended);
+        }
+    }
+
+    /**
+     * Group commit: the first appender to get here syncs, and the ones coming in meanwhile wait for it to finish.
+     * If it didn't cover their records, one of them syncs again for all of them
+     */
+    private void syncUpTo(long records) {
+        synchronized (syncLock) {
+            while (syncing && syncedRecords < records) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    // The record is appended, it is only not known to be synced
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (syncedRecords >= records) return;
+            syncing = true;
+        }
+        try {
+            sync();
+        } finally {
+            synchronized (syncLock) {
+                syncing = false;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Syncs unless the durability is none, and drops the mappings of the segments and of the head file. They are
+     * unmapped once collected, there is no way to unmap them right away in Java 8
+     */
+    void close() {
+        if (durability != Durability.NONE) sync();
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            for (Segment segment : segments) segment.release();
+            segments.clear();
+            unsyncedSegments.clear();
+            headFile = null;
+        }
+    }
+
+    Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * From appending to returning, so including the wait for the sync with batch durability
+     */
+    LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    LatencyHistogram getSyncLatency() {
+        return syncLatency;
+    }
+
+    /**
+     * @return up to maxRecords of the oldest records, without removing them
+     */
+    synchronized List<byte[]> read(int maxRecords) {
+        evictedSinceRead = 0;
+        List<byte[]> records = new ArrayList<>();
+        if (closed) return records;
+        Iterator<Segment> iterator = segments.iterator();
+        Segment segment = iterator.next();
+        int position = headPosition;
+        while (records.size() < maxRecords) {
+            int length = recordLength(segment, position);
+            if (length < 0) {
+                if (!iterator.hasNext()) break;
+                segment = iterator.next();
+                position = SEGMENT_HEADER_BYTES;
+                continue;
+            }
+            byte[] record = new byte[length];
+            ByteBuffer view = segment.view();
+            ((Buffer) view).position(position + RECORD_HEADER_BYTES);
+            view.get(record);
+            if (!checksumMatches(view.getInt(position + 4), record)) {
+                corrupted(segment, position);
+                continue;
+            }
+            records.add(record);
+            position += RECORD_HEADER_BYTES + length;
+        }
+        return records;
+    }
+
+    /**
+     * Acknowledges the oldest records, and deletes the segments left with no record to read. Records read, but
+     * evicted since, are not there to remove anymore
+     *
+     * @return the bytes of the records removed
+     */
+    synchronized long remove(int records) {
+        if (closed) return 0;
+        int evicted = (int) Math.min(records, evictedSinceRead);
+        evictedSinceRead -= evicted;
+        long bytes = 0;
+        for (int i = evicted; i < records; i++) {
+            int length = headRecordLength();
+            if (length < 0) break;
+            headPosition += RECORD_HEADER_BYTES + length;
+            headRecords++;
+            bytes += length;
+        }
+        headRecordLength();
+        saveHead();
+        return bytes;
+    }
+
+    synchronized boolean isEmpty() {
+        return closed || headRecordLength() < 0;
+    }
+
+    /**
+     * Evicts the segments past the retention, and retries deleting segments that could not be deleted while mapped
+     * (on Windows)
+     */
+    synchronized void gc() {
+        if (closed) return;
+        enforceRetention();
+        undeletedSegments.removeIf(File::delete);
+    }
+
+    /**
+     * Bytes of the segments on disk, written or not
+     */
+    synchronized long getSegmentsBytes() {
+        return segmentsBytes;
+    }
+
+    /**
+     * Records dropped since the log was opened, to keep it within maxBytes
+     */
+    long getEvictedForBytes() {
+        return evictedForBytes;
+    }
+
+    /**
+     * Records dropped since the log was opened, as they were older than maxAgeMillis
+     */
+    long getEvictedForAge() {
+        return evictedForAge;
+    }
+
+    /**
+     * Records appended and not removed or evicted yet, as counted in the segment headers
+     */
+    synchronized long getPendingRecords() {
+        if (closed) return 0;
+        long records = -headRecords;
+        for (Segment segment : segments) records += segment.records;
+        return Math.max(0, records);
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) throw new IOException("The buffer under " + directory.getAbsolutePath() + " is closed");
+    }
+
+    /**
+     * The length of the record at the head, moving the head past exhausted segments (and deleting them) first
+     *
+     * @return -1 if there is no record to read
+     */
+    private int headRecordLength() {
+        while (true) {
+            Segment head = segments.peekFirst();
+            int length = recordLength(head, headPosition);
+            if (length >= 0 || segments.size() == 1) return length;
+            segments.pollFirst();
+            delete(head);
+            headPosition = SEGMENT_HEADER_BYTES;
+            headRecords = 0;
+        }
+    }
+
+    /**
+     * Drops the oldest segments while there are too many bytes of them, or their newest record is too old. The
+     * segment appended to is never deleted, if its records are all too old the head is moved past them instead
+     */
+    private void enforceRetention() {
+        if (maxBytes <= 0 && maxAgeMillis <= 0) return;
+        long expiredBefore = maxAgeMillis > 0 ? clock.getAsLong() - maxAgeMillis : Long.MIN_VALUE;
+        boolean evicted = false;
+        while (segments.size() > 1) {
+            Segment oldest = segments.peekFirst();
+            boolean tooBig = maxBytes > 0 && segmentsBytes > maxBytes;
+            if (!tooBig && oldest.newestMillis >= expiredBefore) break;
+            long dropped = Math.max(0, oldest.records - headRecords);
+            if (tooBig) {
+                evictedForBytes += dropped;
+            } else {
+                evictedForAge += dropped;
+            }
+            evictedSinceRead += dropped;
+            segments.pollFirst();
+            delete(oldest);
+            headPosition = SEGMENT_HEADER_BYTES;
+            headRecords = 0;
+            evicted = true;
+        }
+        Segment tail = segments.peekLast();
+        if (tail.newestMillis < expiredBefore && headPosition < tail.writePosition) {
+            long dropped = Math.max(0, tail.records - headRecords);
+            evictedForAge += dropped;
+            evictedSinceRead += dropped;
+            headPosition = tail.writePosition;
+            headRecords = tail.records;
+            evicted = true;
+        }
+        if (evicted) saveHead();
+    }
+
+    /**
+     * @return the length of the record at the position, or -1 at the end of what was written in the segment
+     */
+    private int recordLength(Segment segment, int position) {
+        if (position + RECORD_HEADER_BYTES > segment.end()) return -1;
+        int length = segment.view().getInt(position);
+        if (length <= 0) {
+            segment.limit = position;
+            return -1;
+        }
+        if (position + RECORD_HEADER_BYTES + length > segment.end()) {
+            corrupted(segment, position);
+            return -1;
+        }
+        return length;
+    }
+
+    private void corrupted(Segment segment, int position) {
+        reporter.warning("Logz.io: The buffer segment " + segment.file.getAbsolutePath() + " is corrupted at position " + position
+                + ", the rest of it is skipped");
+        segment.limit = position;
+    }
+
+    private boolean checksumMatches(int checksum, byte[] record) {
+        crc.reset();
+        crc.update(record, 0, record.length);
+        return (int) crc.getValue() == checksum;
+    }
+
+    private void write(Segment tail, byte[] record) {
+        ByteBuffer view = tail.view();
+        int position = tail.writePosition;
+        ((Buffer) view).position(position + RECORD_HEADER_BYTES);
+        view.put(record);
+        crc.reset();
+        crc.update(record, 0, record.length);
+        view.putInt(position + 4, (int) crc.getValue());
+        // Last, so a torn record reads as the end of the segment
+        view.putInt(position, record.length);
+        tail.writePosition = position + RECORD_HEADER_BYTES + record.length;
+        tail.limit = tail.writePosition;
+        tail.records++;
+        tail.newestMillis = clock.getAsLong();
+        view.putInt(8, tail.records);
+        view.putLong(12, tail.newestMillis);
+        appendedRecords++;
+    }
+
+    private Segment tailWithRoomFor(int length) throws IOException {
+        Segment tail = segments.peekLast();
+        if (tail.writePosition + RECORD_HEADER_BYTES + length <= tail.size) return tail;
+        // Records bigger than a segment get a segment of their own
+        Segment segment = create(nextSegmentId++, Math.max(segmentBytes, SEGMENT_HEADER_BYTES + RECORD_HEADER_BYTES + length));
+        if (durability != Durability.NONE && tail.view() instanceof MappedByteBuffer) {
+            unsyncedSegments.add((MappedByteBuffer) tail.view());
+        }
+        if (tail != segments.peekFirst()) tail.release();
+        segments.addLast(segment);
+        segmentsBytes += segment.size;
+        enforceRetention();
+        return segment;
+    }
+
+    private void open() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        long[] ids = files == null ? new long[0] : new long[files.length];
+        for (int i = 0; i < ids.length; i++) {
+            String name = files[i].getName();
+            try {
+                ids[i] = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                ids[i] = -1;
+            }
+        }
+        Arrays.sort(ids);
+
+        long headSegmentId = -1;
+        int savedHeadPosition = SEGMENT_HEADER_BYTES;
+        int savedHeadRecords = 0;
+        if (headFile.getInt(0) == HEAD_MAGIC) {
+            savedHeadPosition = headFile.getInt(4);
+            headSegmentId = headFile.getLong(8);
+            savedHeadRecords = headFile.getInt(16);
+        }
+
+        for (long id : ids) {
+            if (id < 0) continue;
+            File file = segmentFile(id);
+            if (id < headSegmentId) {
+                // Acknowledged before a restart, but not deleted yet
+                delete(file);
+                continue;
+            }
+            Segment segment = new Segment(id, file, (int) file.length());
+            if (segment.size < SEGMENT_HEADER_BYTES || segment.view().getInt(0) != SEGMENT_MAGIC
+                    || segment.view().getInt(4) != VERSION) {
+                reporter.warning("Logz.io: Skipping " + file.getAbsolutePath() + ", it is not a buffer segment");
+                segment.release();
+                continue;
+            }
+            segment.records = segment.view().getInt(8);
+            segment.newestMillis = segment.view().getLong(12);
+            // Mapped again when read
+            segment.release();
+            segments.addLast(segment);
+            segmentsBytes += segment.size;
+            nextSegmentId = id + 1;
+        }
+
+        if (segments.isEmpty()) {
+            Segment segment = create(nextSegmentId++, segmentBytes);
+            segments.addLast(segment);
+            segmentsBytes += segment.size;
+            headPosition = SEGMENT_HEADER_BYTES;
+        } else {
+            // Only the last segment may have room left, its end is found by reading it through
+            Segment tail = segments.peekLast();
+            int position = SEGMENT_HEADER_BYTES;
+            int records = 0;
+            int length;
+            while ((length = recordLength(tail, position)) >= 0) {
+                byte[] record = new byte[length];
+                ByteBuffer view = tail.view();
+                ((Buffer) view).position(position + RECORD_HEADER_BYTES);
+                view.get(record);
+                if (!checksumMatches(view.getInt(position + 4), record)) {
+                    corrupted(tail, position);
+                    break;
+                }
+                position += RECORD_HEADER_BYTES + length;
+                records++;
+            }
+            tail.writePosition = position;
+            tail.limit = position;
+            tail.records = records;
+            tail.view().putInt(8, records);
+            Segment head = segments.peekFirst();
+            boolean sameHead = head.id == headSegmentId;
+            headPosition = sameHead ? Math.max(SEGMENT_HEADER_BYTES, savedHeadPosition) : SEGMENT_HEADER_BYTES;
+            headRecords = sameHead ? savedHeadRecords : 0;
+            // Past the end, if the head file is newer than what made it to the segment
+            if (head == tail && headPosition > tail.writePosition) {
+                headPosition = tail.writePosition;
+                headRecords = tail.records;
+            }
+        }
+        headRecordLength();
+        enforceRetention();
+        saveHead();
+    }
+
+    private Segment create(long id, int size) throws IOException {
+        File file = segmentFile(id);
+        MappedByteBuffer map = map(file, size);
+        map.putInt(0, SEGMENT_MAGIC);
+        map.putInt(4, VERSION);
+        Segment segment = new Segment(id, file, size);
+        segment.map = map;
+        segment.writePosition = SEGMENT_HEADER_BYTES;
+        segment.limit = SEGMENT_HEADER_BYTES;
+        segment.newestMillis = clock.getAsLong();
+        map.putLong(12, segment.newestMillis);
+        return segment;
+    }
+
+    private void saveHead() {
+        Segment head = segments.peekFirst();
+        headFile.putLong(8, head.id);
+        headFile.putInt(4, headPosition);
+        headFile.putInt(16, headRecords);
+        headFile.putInt(0, HEAD_MAGIC);
+    }
+
+    private void delete(Segment segment) {
+        segment.release();
+        segmentsBytes -= segment.size;
+        delete(segment.file);
+    }
+
+    private void delete(File file) {
+        if (!file.delete() && file.exists()) undeletedSegments.add(file);
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            if (randomAccessFile.length() < size) randomAccessFile.setLength(size);
+            // The mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private class Segment {
+        final long id;
+        final File file;
+        final int size;
+        // Mapped while it is the head or the tail, or read through, null otherwise
+        ByteBuffer map;
+        private ByteBuffer view;
+        // Where the next record goes, only for the tail
+        int writePosition;
+        // The end of what can be read, the whole segment until its end is found
+        int limit;
+        // As kept in the header
+        int records;
+        long newestMillis;
+
+        Segment(long id, File file, int size) {
+            this.id = id;
+            this.file = file;
+            this.size = size;
+            this.limit = size;
+            this.writePosition = size;
+        }
+
+        int end() {
+            return this == segments.peekLast() ? Math.min(writePosition, limit) : limit;
+        }
+
+        ByteBuffer view() {
+            if (view == null) {
+                if (map == null) {
+                    try {
+                        map = map(file, size);
+                    } catch (IOException e) {
+                        reporter.error("Logz.io: Could not map the buffer segment " + file.getAbsolutePath() + ", skipping it", e);
+                        map = ByteBuffer.allocate(size);
+                        limit = SEGMENT_HEADER_BYTES;
+                    }
+                }
+                view = map.duplicate();
+            }
+            return view;
+        }
+
+        void release() {
+            view = null;
+            map = null;
+        }
+    }
+}
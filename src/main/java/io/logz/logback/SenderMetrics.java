@@ -0,0 +1,76 @@
+package io.logz.logback;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What the sender shipped, and how the listener answered, since the sender was created. Bulks are sent by the
+ * draining thread, but responses complete on the transport's threads, so every count is a LongAdder.
+ */
+class SenderMetrics {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    // By the first digit of the status code, 1xx to 5xx. Anything else counts as 5xx
+    private final LongAdder[] responses = new LongAdder[6];
+    private final LongAdder tooManyRequestsResponses = new LongAdder();
+    private final LongAdder sendErrors = new LongAdder();
+    private final LongAdder shippedLines = new LongAdder();
+    private final LongAdder shippedBytes = new LongAdder();
+
+    SenderMetrics() {
+        for (int i = 1; i < responses.length; i++) responses[i] = new LongAdder();
+    }
+
+    /**
+     * @param nanos from posting the bulk to the response
+     */
+    void onResponse(int statusCode, long nanos) {
+        int statusClass = statusCode / 100;
+        responses[statusClass >= 1 && statusClass <= 5 ? statusClass : 5].increment();
+        if (statusCode == TOO_MANY_REQUESTS) tooManyRequestsResponses.increment();
+        sendLatency.record(nanos);
+    }
+
+    /**
+     * A bulk that got no response, the connection failed or timed out
+     */
+    void onSendError() {
+        sendErrors.increment();
+    }
+
+    /**
+     * Lines removed from the buffer once the listener acknowledged them
+     */
+    void onShipped(int lines, long bytes) {
+        shippedLines.add(lines);
+        shippedBytes.add(bytes);
+    }
+
+    LatencyHistogram getSendLatency() {
+        return sendLatency;
+    }
+
+    /**
+     * @param statusClass 1 to 5, for 1xx to 5xx
+     */
+    long getResponses(int statusClass) {
+        return responses[statusClass].sum();
+    }
+
+    long getTooManyRequestsResponses() {
+        return tooManyRequestsResponses.sum();
+    }
+
+    long getSendErrors() {
+        return sendErrors.sum();
+    }
+
+    long getShippedLines() {
+        return shippedLines.sum();
+    }
+
+    long getShippedBytes() {
+        return shippedBytes.sum();
+    }
+}
@@ -0,0 +1,125 @@
+package io.logz.logback;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Writes the @timestamp value of an event.
+ *
+ * In ISO-8601 mode the output is exactly Instant.toString() (the milliseconds are omitted when they are zero),
+ * but the "yyyy-MM-ddTHH:mm:ss" part is formatted once per second and cached, so most events only write the
+ * millisecond digits. The cache is a single immutable entry published through a volatile field: concurrent
+ * appenders never lock, and at worst format the same second twice.
+ */
+class TimestampEncoder {
+
+    enum Format {
+        ISO8601("iso8601"),
+        EPOCH_MILLIS("epochMillis");
+
+        private final String name;
+
+        Format(String name) {
+            this.name = name;
+        }
+
+        static Format fromName(String name) {
+            for (Format format : values()) {
+                if (format.name.equalsIgnoreCase(name)) return format;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final byte[] TIMESTAMP_PREFIX = ("\"" + LogzioLogbackAppender.TIMESTAMP + "\":").getBytes(StandardCharsets.UTF_8);
+
+    private final Format format;
+    private volatile CachedSecond cachedSecond = new CachedSecond(0);
+
+    TimestampEncoder(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Writes the timestamp as a JSON value - a quoted ISO-8601 string, or a plain number of epoch millis
+     */
+    void write(JsonByteBuffer out, long timestampMillis) {
+        if (format == Format.EPOCH_MILLIS) {
+            out.writeLong(timestampMillis);
+            return;
+        }
+        long epochSecond = Math.floorDiv(timestampMillis, 1000L);
+        int millis = (int) Math.floorMod(timestampMillis, 1000L);
+        CachedSecond second = cachedSecond;
+        if (second.epochSecond != epochSecond) {
+            second = new CachedSecond(epochSecond);
+            cachedSecond = second;
+        }
+        out.writeByte('"');
+        out.writeBytes(second.prefix);
+        if (millis != 0) {
+            out.writeByte('.');
+            out.writeByte('0' + millis / 100);
+            out.writeByte('0' + (millis / 10) % 10);
+            out.writeByte('0' + millis % 10);
+        }
+        out.writeByte('Z');
+        out.writeByte('"');
+    }
+
+    /**
+     * Reads back the @timestamp of a JSON line, written in either format
+     *
+     * @return the epoch millis, or -1 if the line has no @timestamp that can be read
+     */
+    static long read(byte[] line) {
+        int start = indexOf(line, TIMESTAMP_PREFIX);
+        if (start < 0) return -1;
+        int i = start + TIMESTAMP_PREFIX.length;
+        if (i < line.length && line[i] == '"') {
+            int end = i + 1;
+            while (end < line.length && line[end] != '"') end++;
+            if (end == line.length) return -1;
+            try {
+                return Instant.parse(new String(line, i + 1, end - i - 1, StandardCharsets.US_ASCII)).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return -1;
+            }
+        }
+        long millis = 0;
+        int digits = 0;
+        for (; i < line.length && line[i] >= '0' && line[i] <= '9'; i++, digits++) {
+            millis = millis * 10 + (line[i] - '0');
+        }
+        return digits == 0 ? -1 : millis;
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        outer:
+        for (int i = 0; i <= bytes.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static class CachedSecond {
+        private final long epochSecond;
+        private final byte[] prefix;
+
+        CachedSecond(long epochSecond) {
+            this.epochSecond = epochSecond;
+            // A whole second is printed without a fraction, only the trailing 'Z' needs to go
+            String formatted = Instant.ofEpochSecond(epochSecond).toString();
+            this.prefix = formatted.substring(0, formatted.length() - 1).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+}
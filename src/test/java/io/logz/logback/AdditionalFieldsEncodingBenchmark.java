@@ -0,0 +1,94 @@
+package io.logz.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.pattern.LineOfCallerConverter;
+import ch.qos.logback.classic.pattern.ThrowableProxyConverter;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per event cost of encoding with a growing number of additional fields.
+ * "encode" splices the pre-encoded additional fields, while "encodeResolvingDuplicates" also has a "message"
+ * additional field overriding the event's, and an MDC key that is also an additional field, either of which forces
+ * the field by field path (the way every event used to be encoded).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdditionalFieldsEncodingBenchmark {
+
+    @Param({"0", "1", "4", "12", "32"})
+    private int additionalFieldsCount;
+
+    private LogzioJsonEncoder encoder;
+    private LogzioJsonEncoder collidingEncoder;
+    private LoggingEvent event;
+    private LoggingEvent collidingEvent;
+    private JsonByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> additionalFields = new LinkedHashMap<>();
+        for (int i = 0; i < additionalFieldsCount; i++) {
+            additionalFields.put("field" + i, "some-static-value-" + i);
+        }
+        ThrowableProxyConverter throwableProxyConverter = new ThrowableProxyConverter();
+        throwableProxyConverter.start();
+        encoder = new LogzioJsonEncoder(throwableProxyConverter, new LineOfCallerConverter(), additionalFields, false);
+        Map<String, String> collidingFields = new LinkedHashMap<>(additionalFields);
+        collidingFields.put(LogzioLogbackAppender.MESSAGE, "overridden-message");
+        collidingEncoder = new LogzioJsonEncoder(throwableProxyConverter, new LineOfCallerConverter(), collidingFields, false);
+        buffer = new JsonByteBuffer();
+
+        ch.qos.logback.classic.Logger logger = new LoggerContext().getLogger("benchmarkLogger");
+        Map<String, String> mdc = new HashMap<>();
+        mdc.put("requestId", "5f2b7c9e-3f4d-4c4e-9a51-0d8a5b3c2e11");
+        event = new LoggingEvent(AdditionalFieldsEncodingBenchmark.class.getName(), logger, Level.INFO, "Handled request in {} ms", null, new Object[]{42});
+        event.setMDCPropertyMap(mdc);
+
+        Map<String, String> collidingMdc = new HashMap<>(mdc);
+        collidingMdc.put(additionalFieldsCount > 0 ? "field0" : LogzioLogbackAppender.MESSAGE, "from-mdc");
+        collidingEvent = new LoggingEvent(AdditionalFieldsEncodingBenchmark.class.getName(), logger, Level.INFO, "Handled request in {} ms", null, new Object[]{42});
+        collidingEvent.setMDCPropertyMap(collidingMdc);
+    }
+
+    @Benchmark
+    public int encode() {
+        buffer.reset();
+        encoder.encode(event, buffer);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public int encodeResolvingDuplicates() {
+        buffer.reset();
+        collidingEncoder.encode(collidingEvent, buffer);
+        return buffer.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AdditionalFieldsEncodingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,179 @@
+package io.logz.logback;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of LogzioLogbackAppender.doAppend on the application thread, with a buffer that drops every line, so
+ * only the appender's own cost is measured: encoding the event and handing it to the sender. Every operation
+ * creates the event, as the logger would, so what logback computes lazily (caller data, the throwable proxy) is
+ * computed every time. Run with -prof gc (the default of the benchmarks profile) for gc.alloc.rate.norm, the bytes
+ * allocated per event.
+ *
+ * plain is a short message with one argument, mdc adds 20 MDC entries, marker a marker, line the caller's line,
+ * exception a throwable 100 frames deep with a cause, and additionalFields 32 additional fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AppendBenchmark {
+
+    private static final int MDC_ENTRIES = 20;
+    private static final int ADDITIONAL_FIELDS = 32;
+    private static final int STACK_DEPTH = 100;
+    private static int trials = 0;
+
+    @Param({"plain", "mdc", "marker", "line", "exception", "additionalFields"})
+    private String scenario;
+
+    private LoggerContext context;
+    private Logger logger;
+    private LogzioLogbackAppender appender;
+    private Map<String, String> mdc = Collections.emptyMap();
+    private Marker marker;
+    private Throwable throwable;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new LoggerContext();
+        logger = context.getLogger("benchmarkLogger");
+        appender = new LogzioLogbackAppender();
+        appender.setContext(context);
+        appender.setToken("benchmarkToken");
+        // A new type every trial, since senders are kept per type
+        appender.setLogzioType("appendBenchmark" + trials++);
+        appender.setLogzioUrl("http://127.0.0.1:1");
+        appender.setBufferMode("memory");
+        appender.setMemoryBufferCapacityBytes(1024);
+        appender.setDropSummaryIntervalSeconds(0);
+        appender.setLogsBuffer(new NoOpLogsBuffer());
+
+        switch (scenario) {
+            case "mdc":
+                mdc = new HashMap<>();
+                for (int i = 0; i < MDC_ENTRIES; i++) {
+                    mdc.put("mdcKey" + i, "some-request-scoped-value-" + i);
+                }
+                break;
+            case "marker":
+                marker = MarkerFactory.getMarker("AUDIT");
+                break;
+            case "line":
+                appender.setLine(true);
+                break;
+            case "exception":
+                throwable = new IllegalStateException("Failed to handle request", deepException(STACK_DEPTH));
+                break;
+            case "additionalFields":
+                StringBuilder additionalFields = new StringBuilder();
+                for (int i = 0; i < ADDITIONAL_FIELDS; i++) {
+                    additionalFields.append("field").append(i).append("=some-static-value-").append(i).append(';');
+                }
+                appender.setAdditionalFields(additionalFields.toString());
+                break;
+            default:
+        }
+        appender.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        appender.stop();
+        context.stop();
+    }
+
+    @Benchmark
+    public void doAppend() {
+        LoggingEvent event = new LoggingEvent(AppendBenchmark.class.getName(), logger, ch.qos.logback.classic.Level.INFO,
+                "Handled request in {} ms", throwable, new Object[]{42});
+        event.setMDCPropertyMap(mdc);
+        event.setMarker(marker);
+        appender.doAppend(event);
+    }
+
+    private static Exception deepException(int depth) {
+        if (depth == 0) return new RuntimeException("Connection refused");
+        return deepException(depth - 1);
+    }
+
+    /**
+     * Takes every line and keeps none, so the sender never has anything to ship
+     */
+    private static class NoOpLogsBuffer implements LogsBuffer {
+
+        @Override
+        public boolean enqueue(byte[] line) {
+            return true;
+        }
+
+        @Override
+        public boolean enqueue(List<byte[]> lines) {
+            return true;
+        }
+
+        @Override
+        public byte[] dequeue() {
+            return null;
+        }
+
+        @Override
+        public List<byte[]> peek(int maxLines) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public long remove(int lines) {
+            return 0;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+
+        @Override
+        public long size() {
+            return 0;
+        }
+
+        @Override
+        public void gc() {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AppendBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,94 @@
+package io.logz.logback;
+
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class AsyncHttpTransportTest {
+
+    private static final byte[] PAYLOAD = "{\"message\":\"hello\"}\n".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void requestsShareTheInFlightConnections() throws Exception {
+        try (LocalBulkListener listener = new LocalBulkListener(50)) {
+            AsyncHttpTransport transport = new AsyncHttpTransport();
+            transport.start(settings(new URL(listener.getUrl() + "/?token=t&type=x"), 5000, 2));
+            try {
+                List<CompletableFuture<LogzioTransport.Response>> responses = new ArrayList<>();
+                for (int i = 0; i < 6; i++) {
+                    responses.add(transport.send(PAYLOAD, false));
+                }
+                for (CompletableFuture<LogzioTransport.Response> response : responses) {
+                    assertThat(response.get(10, TimeUnit.SECONDS).getCode()).isEqualTo(200);
+                }
+
+                assertThat(listener.getLines()).isEqualTo(6);
+                assertThat(transport.getHandshakes()).isEqualTo(2);
+                assertThat(transport.getReusedConnectionRequests()).isEqualTo(4);
+                assertThat(transport.getOpenConnections()).isEqualTo(2);
+            } finally {
+                transport.stop();
+            }
+            assertThat(transport.getOpenConnections()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void connectionClosedByTheListenerIsReplaced() throws Exception {
+        try (ListenerConnectionPoolTest.OneShotServer server = new ListenerConnectionPoolTest.OneShotServer("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n")) {
+            AsyncHttpTransport transport = new AsyncHttpTransport();
+            transport.start(settings(server.getUrl(), 5000, 1));
+            try {
+                assertThat(transport.send(PAYLOAD, false).get(10, TimeUnit.SECONDS).getCode()).isEqualTo(200);
+                assertThat(transport.send(PAYLOAD, false).get(10, TimeUnit.SECONDS).getCode()).isEqualTo(200);
+
+                assertThat(transport.getHandshakes()).isEqualTo(2);
+            } finally {
+                transport.stop();
+            }
+        }
+    }
+
+    @Test
+    public void slowListenerTimesOut() throws Exception {
+        try (LocalBulkListener listener = new LocalBulkListener(2000)) {
+            AsyncHttpTransport transport = new AsyncHttpTransport();
+            transport.start(settings(new URL(listener.getUrl() + "/?token=t&type=x"), 200, 1));
+            try {
+                transport.send(PAYLOAD, false).get(10, TimeUnit.SECONDS);
+                fail("Expected a timeout");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(SocketTimeoutException.class);
+            } finally {
+                transport.stop();
+            }
+        }
+    }
+
+    @Test
+    public void zeroTimeoutWaitsForever() throws Exception {
+        try (LocalBulkListener listener = new LocalBulkListener(300)) {
+            AsyncHttpTransport transport = new AsyncHttpTransport();
+            transport.start(new LogzioTransport.Settings(new URL(listener.getUrl() + "/?token=t&type=x"), 0, 0, 1, "test"));
+            try {
+                assertThat(transport.send(PAYLOAD, false).get(10, TimeUnit.SECONDS).getCode()).isEqualTo(200);
+            } finally {
+                transport.stop();
+            }
+        }
+    }
+
+    private static LogzioTransport.Settings settings(URL url, int socketTimeout, int maxInFlightRequests) {
+        return new LogzioTransport.Settings(url, 1000, socketTimeout, maxInFlightRequests, "test");
+    }
+}
@@ -1,12 +1,17 @@
 package io.logz.logback;
 
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.Context;
 import io.logz.test.MockLogzioBulkListener;
 import org.junit.After;
 import org.junit.Before;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.time.Duration;
+import java.util.Iterator;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -16,6 +21,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 public class BaseLogbackAppenderTest {
 
     private final static Logger logger = LoggerFactory.getLogger(BaseLogbackAppenderTest.class);
+    private final static Duration AWAIT_DRAINED_TIMEOUT = Duration.ofSeconds(10);
 
     protected MockLogzioBulkListener mockListener;
 
@@ -32,6 +38,12 @@ public class BaseLogbackAppenderTest {
 
     protected Logger createLogger(String token, String type, String loggerName, Integer drainTimeout,
                                   boolean addHostname,boolean line, String additionalFields, boolean compressRequests) {
+        return createLogger(token, type, loggerName, drainTimeout, addHostname, line, additionalFields, compressRequests, appender -> {});
+    }
+
+    protected Logger createLogger(String token, String type, String loggerName, Integer drainTimeout,
+                                  boolean addHostname,boolean line, String additionalFields, boolean compressRequests,
+                                  Consumer<LogzioLogbackAppender> configurer) {
 
         logger.info("Creating logger {}. token={}, type={}, drainTimeout={}, addHostname={}, line={}, additionalFields={} ",
                 loggerName, token, type, drainTimeout, addHostname, line, additionalFields);
@@ -53,6 +65,7 @@ public class BaseLogbackAppenderTest {
         if (additionalFields != null) {
             logzioLogbackAppender.setAdditionalFields(additionalFields);
         }
+        configurer.accept(logzioLogbackAppender);
         logzioLogbackAppender.start();
         assertThat(logzioLogbackAppender.isStarted()).isTrue();
         logbackLogger.addAppender(logzioLogbackAppender);
@@ -65,6 +78,21 @@ public class BaseLogbackAppenderTest {
         return createLogger(token, type, loggerName, drainTimeout, addHostname, line, additionalFields, false);
     }
 
+    /**
+     * Waits until everything logged to the logger was shipped by its Logz.io appender
+     */
+    protected void awaitDrained(Logger testLogger) {
+        Iterator<Appender<ILoggingEvent>> appenders = ((ch.qos.logback.classic.Logger) testLogger).iteratorForAppenders();
+        while (appenders.hasNext()) {
+            Appender<ILoggingEvent> appender = appenders.next();
+            if (appender instanceof LogzioLogbackAppender) {
+                assertThat(((LogzioLogbackAppender) appender).awaitDrained(AWAIT_DRAINED_TIMEOUT)).isTrue();
+                return;
+            }
+        }
+        throw new IllegalStateException("No Logz.io appender on " + testLogger.getName());
+    }
+
     protected void sleepSeconds(int seconds) {
         logger.info("Sleeping {} [sec]...", seconds);
         try {
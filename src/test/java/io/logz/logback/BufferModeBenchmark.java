@@ -0,0 +1,95 @@
+package io.logz.logback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steady-state cost of buffering an event: every operation enqueues a ~250 bytes line and dequeues the oldest one,
+ * with a backlog of a few thousand lines, the way the sender sees it while the listener keeps up.
+ *
+ * disk is today's always-on-disk persisted queue, memory the off-heap buffer, and hybrid the memory-first buffer
+ * that only spills to disk when needed (so it should stay close to memory here).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class BufferModeBenchmark {
+
+    private static final int BACKLOG = 4096;
+    private static final int MEMORY_CAPACITY_BYTES = 32 * 1024 * 1024;
+
+    @Param({"disk", "memory", "hybrid"})
+    private String bufferMode;
+
+    private Path tempDir;
+    private LogsBuffer logsBuffer;
+    private byte[] line;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StringBuilder json = new StringBuilder("{\"@timestamp\":\"2017-07-14T02:40:00.123Z\",\"loglevel\":\"INFO\",\"message\":\"");
+        while (json.length() < 250) json.append('x');
+        line = json.append("\"}\n").toString().getBytes(StandardCharsets.UTF_8);
+
+        tempDir = Files.createTempDirectory("buffer-mode-benchmark");
+        File queueDirectory = new File(tempDir.toFile(), "queue");
+        switch (LogsBuffer.Mode.fromName(bufferMode)) {
+            case MEMORY:
+                logsBuffer = new MemoryLogsBuffer(MEMORY_CAPACITY_BYTES);
+                break;
+            case HYBRID:
+                logsBuffer = new HybridLogsBuffer(new MemoryLogsBuffer(MEMORY_CAPACITY_BYTES),
+                        new DiskLogsBuffer(queueDirectory, -1, new HybridLogsBufferTest.NoOpReporter()), 80);
+                break;
+            case DISK:
+            default:
+                // The file system check is on the path too, a read of the last sample
+                logsBuffer = new DiskLogsBuffer(queueDirectory, 98, new HybridLogsBufferTest.NoOpReporter());
+        }
+        for (int i = 0; i < BACKLOG; i++) {
+            logsBuffer.enqueue(line);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Benchmark
+    public byte[] enqueueAndDequeue() {
+        logsBuffer.enqueue(line);
+        return logsBuffer.dequeue();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BufferModeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,144 @@
+package io.logz.logback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompressedBlocksLogsBufferTest {
+
+    private Path tempDir;
+    private DiskLogsBuffer disk;
+    private GzipCompressor compressor;
+    private CompressedBlocksLogsBuffer buffer;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("compressed-blocks");
+        disk = new DiskLogsBuffer(new File(tempDir.toFile(), "queue"), -1, new HybridLogsBufferTest.NoOpReporter());
+        compressor = new GzipCompressor(6, 0);
+        // 10 lines of 3 bytes a block
+        buffer = new CompressedBlocksLogsBuffer(disk, compressor, 30);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        compressor.close();
+        Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Test
+    public void storesBlocksOnceFullOrWhenPeeked() throws IOException {
+        for (int i = 0; i < 12; i++) {
+            assertThat(buffer.enqueue(line(i))).isTrue();
+        }
+        assertThat(disk.peek(100)).hasSize(1);
+        assertThat(buffer.isEmpty()).isFalse();
+
+        List<byte[]> blocks = buffer.peek(100);
+        assertThat(blocks).hasSize(2);
+        assertThat(GzipCompressor.isGzipped(blocks.get(0))).isTrue();
+        assertThat(gunzip(blocks.get(0))).isEqualTo("00\n01\n02\n03\n04\n05\n06\n07\n08\n09\n");
+        assertThat(gunzip(blocks.get(1))).isEqualTo("10\n11\n");
+
+        buffer.remove(2);
+        assertThat(buffer.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void blocksAreCompressedOnlyOnce() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            buffer.enqueue(line(i));
+        }
+        byte[] block = buffer.peek(1).get(0);
+        long compressedBytes = compressor.getCompressedBytes();
+
+        // As on a retry in a later drain
+        assertThat(buffer.peek(1).get(0)).isEqualTo(block);
+        assertThat(compressor.getCompressedBytes()).isEqualTo(compressedBytes);
+    }
+
+    @Test
+    public void syncStoresTheBlockBeingFilled() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            buffer.enqueue(line(i));
+        }
+        assertThat(disk.isEmpty()).isTrue();
+
+        buffer.sync();
+        assertThat(disk.peek(100)).hasSize(1);
+        assertThat(gunzip(disk.peek(1).get(0))).isEqualTo("00\n01\n02\n");
+    }
+
+    @Test
+    public void batchIsDroppedWholeWhenTheDiskIsFull() throws IOException {
+        // Refuses every record, whatever the file system usage
+        DiskLogsBuffer fullDisk = new DiskLogsBuffer(new File(tempDir.toFile(), "full"), 0, new HybridLogsBufferTest.NoOpReporter());
+        CompressedBlocksLogsBuffer fullBuffer = new CompressedBlocksLogsBuffer(fullDisk, compressor, 30);
+        fullBuffer.enqueue(line(0));
+
+        assertThat(fullBuffer.enqueue(Arrays.asList(line(1), line(2), line(3), line(4), line(5), line(6),
+                line(7), line(8), line(9), line(10), line(11)))).isFalse();
+        // Only the line enqueued before the batch is left
+        assertThat(fullBuffer.size()).isEqualTo(1);
+        assertThat(fullBuffer.isEmpty()).isFalse();
+    }
+
+    @Test
+    public void blockIsKeptWhenTheDiskIsFull() throws IOException {
+        DiskLogsBuffer fullDisk = new DiskLogsBuffer(new File(tempDir.toFile(), "full"), 0, new HybridLogsBufferTest.NoOpReporter());
+        CompressedBlocksLogsBuffer fullBuffer = new CompressedBlocksLogsBuffer(fullDisk, compressor, 30);
+        for (int i = 0; i < 9; i++) {
+            assertThat(fullBuffer.enqueue(line(i))).isTrue();
+        }
+
+        // Filling the block can't store it, only the line that filled it is dropped
+        assertThat(fullBuffer.enqueue(line(9))).isFalse();
+        assertThat(fullBuffer.size()).isEqualTo(9);
+        // Neither does peeking or syncing drop what could not be stored
+        assertThat(fullBuffer.peek(100)).isEmpty();
+        fullBuffer.sync();
+        assertThat(fullBuffer.size()).isEqualTo(9);
+    }
+
+    @Test
+    public void peekingAtTheOldestLineDoesNotStoreTheBlock() throws IOException {
+        assertThat(buffer.peekOldest()).isNull();
+        buffer.enqueue(line(0));
+        buffer.enqueue(line(1));
+
+        assertThat(new String(buffer.peekOldest(), StandardCharsets.UTF_8)).isEqualTo("00\n");
+        assertThat(disk.isEmpty()).isTrue();
+
+        buffer.peek(1);
+        assertThat(gunzip(buffer.peekOldest())).isEqualTo("00\n01\n");
+    }
+
+    private static byte[] line(int i) {
+        return String.format("%02d\n", i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String gunzip(byte[] block) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(block))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.logz.logback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cost of compressing a 1MB bulk of log lines, so the score is the CPU time per MB (on the single draining thread).
+ * The compression ratio of every level is printed at the end of its trial.
+ *
+ * pooled is GzipCompressor, streamed is the GZIPOutputStream per bulk the sender used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final int BULK_BYTES = 1024 * 1024;
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "WARN", "ERROR", "DEBUG"};
+    private static final String[] LOGGERS = {"com.example.orders.OrderService", "com.example.http.RequestLogger", "org.hibernate.SQL"};
+
+    @Param({"1", "3", "6", "9"})
+    private int compressionLevel;
+
+    @Param({"pooled", "streamed"})
+    private String compressor;
+
+    private List<byte[]> lines;
+    private int size;
+    private GzipCompressor gzipCompressor;
+    private long compressedBytes;
+    private long compressions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        lines = new ArrayList<>();
+        size = 0;
+        for (int i = 0; size < BULK_BYTES; i++) {
+            String line = "{\"@timestamp\":\"2017-07-14T02:40:" + String.format("%02d.%03d", i / 1000 % 60, i % 1000) + "Z\"," +
+                    "\"loglevel\":\"" + LEVELS[random.nextInt(LEVELS.length)] + "\"," +
+                    "\"logger\":\"" + LOGGERS[random.nextInt(LOGGERS.length)] + "\"," +
+                    "\"thread\":\"http-nio-8080-exec-" + random.nextInt(200) + "\"," +
+                    "\"message\":\"Order " + Long.toHexString(random.nextLong()) + " for customer " + random.nextInt(100_000) +
+                    " took " + random.nextInt(5000) + " ms\"}\n";
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            lines.add(bytes);
+            size += bytes.length;
+        }
+        gzipCompressor = new GzipCompressor(compressionLevel, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gzipCompressor.close();
+        System.out.printf("%n%s level %d: compression ratio %.2f (%d bytes to %d)%n", compressor, compressionLevel,
+                (double) size * compressions / compressedBytes, size, compressedBytes / Math.max(1, compressions));
+    }
+
+    @Benchmark
+    public byte[] compressBulk() throws IOException {
+        byte[] compressed = compressor.equals("pooled") ? gzipCompressor.compress(lines, size) : gzipOutputStream();
+        compressedBytes += compressed.length;
+        compressions++;
+        return compressed;
+    }
+
+    private byte[] gzipOutputStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(compressionLevel);
+            }
+        }) {
+            for (byte[] line : lines) gzip.write(line);
+        }
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CompressionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,153 @@
+package io.logz.logback;
+
+import io.logz.sender.com.bluejeans.common.bigqueue.BigQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends per second to the disk buffer, the way the sender uses it: ~250 bytes lines appended one by one, and
+ * shipped (read then removed) 1000 at a time.
+ *
+ * bigQueue is the persisted queue the disk buffer used before, segmentedLog the log it uses now, and compressedBlocks
+ * the log storing gzipped blocks of 256KB (compressRequests with compressedBlockBytes), which pays for compressing
+ * on append instead of on send. All are memory mapped, so the bytes written per event are the bytes of the pages
+ * dirtied, taken from /proc/self/io after every iteration (Linux only).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class DiskBufferBenchmark {
+
+    private static final int SHIP_BATCH = 1000;
+    // The sender gc'ed the queue every 30 seconds by default, about every 100 batches here
+    private static final int BATCHES_PER_GC = 100;
+    private static final int BLOCK_BYTES = 256 * 1024;
+
+    @Param({"bigQueue", "segmentedLog", "compressedBlocks"})
+    private String store;
+
+    private Path tempDir;
+    private BigQueue bigQueue;
+    private SegmentedLog segmentedLog;
+    private GzipCompressor compressor;
+    private CompressedBlocksLogsBuffer compressedBlocks;
+    private byte[] line;
+    private long appended;
+    private long batches;
+    private long iterationAppended;
+    private long iterationWriteBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StringBuilder json = new StringBuilder("{\"@timestamp\":\"2017-07-14T02:40:00.123Z\",\"loglevel\":\"INFO\",\"message\":\"");
+        while (json.length() < 250) json.append('x');
+        line = json.append("\"}\n").toString().getBytes(StandardCharsets.UTF_8);
+
+        tempDir = Files.createTempDirectory("disk-buffer-benchmark");
+        if (store.equals("bigQueue")) {
+            bigQueue = new BigQueue(tempDir.toString(), "queue");
+        } else if (store.equals("compressedBlocks")) {
+            compressor = new GzipCompressor(6, 1024);
+            compressedBlocks = new CompressedBlocksLogsBuffer(new DiskLogsBuffer(new File(tempDir.toFile(), "queue"), -1,
+                    new HybridLogsBufferTest.NoOpReporter()), compressor, BLOCK_BYTES);
+        } else {
+            segmentedLog = new SegmentedLog(new File(tempDir.toFile(), "queue"), new HybridLogsBufferTest.NoOpReporter());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() throws IOException {
+        iterationAppended = appended;
+        iterationWriteBytes = writeBytes();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() throws IOException {
+        long events = appended - iterationAppended;
+        long bytes = writeBytes() - iterationWriteBytes;
+        if (events > 0 && bytes >= 0) {
+            System.out.printf("%n%s: %d events, %.1f bytes written per event (%d bytes lines)%n", store, events,
+                    (double) bytes / events, line.length);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (bigQueue != null) bigQueue.close();
+        if (compressor != null) compressor.close();
+        Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Benchmark
+    public void append() throws IOException {
+        if (bigQueue != null) {
+            bigQueue.enqueue(line);
+        } else if (compressedBlocks != null) {
+            compressedBlocks.enqueue(line);
+        } else {
+            segmentedLog.append(line);
+        }
+        if (++appended % SHIP_BATCH == 0) ship();
+    }
+
+    private void ship() {
+        batches++;
+        if (bigQueue != null) {
+            for (int i = 0; i < SHIP_BATCH; i++) {
+                bigQueue.dequeue();
+            }
+            if (batches % BATCHES_PER_GC == 0) bigQueue.gc();
+        } else if (compressedBlocks != null) {
+            // Ships the stored blocks, and the one being filled
+            int blocks = compressedBlocks.peek(SHIP_BATCH).size();
+            compressedBlocks.remove(blocks);
+        } else {
+            segmentedLog.read(SHIP_BATCH);
+            segmentedLog.remove(SHIP_BATCH);
+        }
+    }
+
+    /**
+     * Bytes this process caused to be written to storage, including dirtied pages of mapped files, -1 if unknown
+     */
+    private static long writeBytes() throws IOException {
+        Path io = Paths.get("/proc/self/io");
+        if (!Files.isReadable(io)) return -1;
+        for (String entry : Files.readAllLines(io)) {
+            if (entry.startsWith("write_bytes:")) return Long.parseLong(entry.substring("write_bytes:".length()).trim());
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DiskBufferBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
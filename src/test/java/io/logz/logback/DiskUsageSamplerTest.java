@@ -0,0 +1,65 @@
+package io.logz.logback;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class DiskUsageSamplerTest {
+
+    private double usedPercent;
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void refusesEverythingPastTheThreshold() {
+        DiskUsageSampler sampler = new DiskUsageSampler(90, () -> usedPercent, clock::get);
+        usedPercent = 50;
+        sampler.sample();
+        assertThat(sampler.getUsedPercent()).isEqualTo(50);
+        assertThat(sampler.shouldAccept()).isTrue();
+
+        clock.addAndGet(60_000);
+        usedPercent = 90;
+        sampler.sample();
+        assertThat(sampler.getSheddingRatio()).isEqualTo(1);
+        assertThat(sampler.shouldAccept()).isFalse();
+    }
+
+    @Test
+    public void shedsGraduallyWhenGrowingTowardsTheThreshold() {
+        DiskUsageSampler sampler = new DiskUsageSampler(90, () -> usedPercent, clock::get);
+        usedPercent = 80;
+        sampler.sample();
+        // Growing 1 then 2 percent a second, smoothed to 1.25 percent a second: 5.6 seconds to go
+        clock.addAndGet(1000);
+        usedPercent = 81;
+        sampler.sample();
+        clock.addAndGet(1000);
+        usedPercent = 83;
+        sampler.sample();
+        assertThat(sampler.getSheddingRatio()).isCloseTo(1 - 5_600.0 / DiskUsageSampler.SHEDDING_LEAD_MILLIS, within(0.01));
+
+        int accepted = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (sampler.shouldAccept()) accepted++;
+        }
+        assertThat(accepted).isBetween(1000, 4000);
+
+        // Not growing anymore, the projection fades out
+        for (int i = 0; i < 3; i++) {
+            clock.addAndGet(60_000);
+            sampler.sample();
+        }
+        assertThat(sampler.getSheddingRatio()).isZero();
+    }
+
+    @Test
+    public void neverRefusesWithoutAThreshold() {
+        DiskUsageSampler sampler = new DiskUsageSampler(-1, () -> usedPercent, clock::get);
+        usedPercent = 100;
+        sampler.sample();
+        assertThat(sampler.shouldAccept()).isTrue();
+    }
+}
@@ -0,0 +1,119 @@
+package io.logz.logback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DrainSchedulerTest {
+
+    private ScheduledExecutorService executor;
+    private final AtomicInteger drains = new AtomicInteger();
+    private DrainScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void drainsRightAwayOnceOverTheEventsThreshold() throws Exception {
+        scheduler = createScheduler(10, 0, 60_000, 60_000, 60_000);
+        scheduler.start();
+        awaitDrains(1);
+
+        for (int i = 0; i < 9; i++) scheduler.onEnqueued(1, 100);
+        Thread.sleep(200);
+        assertThat(drains.get()).isEqualTo(1);
+
+        scheduler.onEnqueued(1, 100);
+        awaitDrains(2);
+    }
+
+    @Test
+    public void drainsRightAwayOnceOverTheBytesThreshold() throws Exception {
+        scheduler = createScheduler(0, 1000, 60_000, 60_000, 60_000);
+        scheduler.start();
+        awaitDrains(1);
+
+        scheduler.onEnqueued(3, 999);
+        Thread.sleep(200);
+        assertThat(drains.get()).isEqualTo(1);
+
+        scheduler.onEnqueued(1, 1);
+        awaitDrains(2);
+    }
+
+    @Test
+    public void drainsOnceTheFirstEventReachesTheMaxAge() throws Exception {
+        scheduler = createScheduler(0, 0, 300, 60_000, 60_000);
+        scheduler.start();
+        awaitDrains(1);
+
+        long enqueuedAt = System.currentTimeMillis();
+        scheduler.onEnqueued(1, 100);
+        scheduler.onEnqueued(1, 100);
+        awaitDrains(2);
+        assertThat(System.currentTimeMillis() - enqueuedAt).isGreaterThanOrEqualTo(250);
+
+        // A single timer per drain
+        Thread.sleep(500);
+        assertThat(drains.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void drainByThresholdCancelsTheAgeTimer() throws Exception {
+        scheduler = createScheduler(2, 0, 300, 60_000, 60_000);
+        scheduler.start();
+        awaitDrains(1);
+
+        scheduler.onEnqueued(1, 100);
+        scheduler.onEnqueued(1, 100);
+        awaitDrains(2);
+
+        // The events the age timer was armed for are already drained
+        Thread.sleep(500);
+        assertThat(drains.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void pollBacksOffWhenIdle() throws Exception {
+        scheduler = createScheduler(0, 0, 60_000, 20, 160);
+        scheduler.start();
+        Thread.sleep(1000);
+
+        assertThat(scheduler.getPollIntervalMillis()).isEqualTo(160);
+        // 0, 40, 80, 160 and then every 160 ms, rather than every 20 ms
+        assertThat(drains.get()).isLessThan(15);
+    }
+
+    private DrainScheduler createScheduler(long thresholdEvents, long thresholdBytes, long maxEventAgeMillis,
+                                           long minPollIntervalMillis, long maxPollIntervalMillis) {
+        DrainScheduler[] self = new DrainScheduler[1];
+        self[0] = new DrainScheduler(() -> executor, () -> {
+            self[0].onDrainStarting();
+            drains.incrementAndGet();
+            self[0].onDrainFinished(false);
+        }, thresholdEvents, thresholdBytes, maxEventAgeMillis, minPollIntervalMillis, maxPollIntervalMillis);
+        return self[0];
+    }
+
+    private void awaitDrains(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (drains.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(drains.get()).isEqualTo(expected);
+    }
+}
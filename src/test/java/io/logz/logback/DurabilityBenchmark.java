@@ -0,0 +1,111 @@
+package io.logz.logback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of appending a ~250 bytes line to the disk buffer per durability, from 4 threads at once: none leaves it
+ * to the page cache, interval syncs every second in the background, and batch waits for a sync shared by whoever
+ * appended meanwhile. The syncs per append are printed after every iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(4)
+@Fork(1)
+public class DurabilityBenchmark {
+
+    private static final int INTERVAL_MS = 1000;
+    private static final int SHIP_BATCH = 1000;
+
+    @Param({"none", "interval", "batch"})
+    private String durability;
+
+    private Path tempDir;
+    private SegmentedLog log;
+    private ScheduledExecutorService syncer;
+    private byte[] line;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StringBuilder json = new StringBuilder("{\"@timestamp\":\"2017-07-14T02:40:00.123Z\",\"loglevel\":\"INFO\",\"message\":\"");
+        while (json.length() < 250) json.append('x');
+        line = json.append("\"}\n").toString().getBytes(StandardCharsets.UTF_8);
+
+        tempDir = Files.createTempDirectory("durability-benchmark");
+        SegmentedLog.Durability value = SegmentedLog.Durability.fromName(durability);
+        log = new SegmentedLog(new File(tempDir.toFile(), "queue"), SegmentedLog.DEFAULT_SEGMENT_BYTES, value,
+                new HybridLogsBufferTest.NoOpReporter());
+        if (value == SegmentedLog.Durability.INTERVAL) {
+            syncer = Executors.newSingleThreadScheduledExecutor();
+            syncer.scheduleWithFixedDelay(log::sync, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        long appends = log.getWriteLatency().getCount();
+        if (appends > 0) {
+            System.out.printf("%n%s: %d appends, %d syncs, mean sync %d us%n", durability, appends,
+                    log.getSyncLatency().getCount(), TimeUnit.NANOSECONDS.toMicros(log.getSyncLatency().getMeanNanos()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (syncer != null) syncer.shutdownNow();
+        Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Benchmark
+    public void append() throws IOException {
+        log.append(line);
+        // Keeps the log from growing, the way the sender ships it
+        if (ThreadLocalCounter.next() % SHIP_BATCH == 0) {
+            synchronized (log) {
+                log.remove(log.read(SHIP_BATCH).size());
+            }
+        }
+    }
+
+    private static class ThreadLocalCounter {
+        private static final ThreadLocal<long[]> COUNTER = ThreadLocal.withInitial(() -> new long[1]);
+
+        static long next() {
+            return ++COUNTER.get()[0];
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DurabilityBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
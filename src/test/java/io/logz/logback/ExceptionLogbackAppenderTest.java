@@ -44,7 +44,7 @@ public class ExceptionLogbackAppenderTest extends BaseLogbackAppenderTest {
         Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null);
 
         testLogger.info(message1, exceptionGenerator.getE());
-        sleepSeconds(drainTimeout * 2);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(1);
         LogRequest logRequest = mockListener.assertLogReceivedByMessage(message1);
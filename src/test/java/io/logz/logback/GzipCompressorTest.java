@@ -0,0 +1,89 @@
+package io.logz.logback;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GzipCompressorTest {
+
+    @Test
+    public void everyLevelIsReadableGzip() throws Exception {
+        List<byte[]> lines = lines(2000);
+        int size = size(lines);
+        for (int level = 1; level <= 9; level++) {
+            GzipCompressor compressor = new GzipCompressor(level, 0);
+            // The second bulk goes through the Deflater the first one left in the pool
+            for (int bulk = 0; bulk < 2; bulk++) {
+                byte[] compressed = compressor.compress(lines, size);
+                assertThat(compressed.length).isLessThan(size / 4);
+                assertThat(gunzip(compressed)).isEqualTo(concat(lines));
+            }
+            assertThat(compressor.getUncompressedBytes()).isEqualTo(2L * size);
+            compressor.close();
+        }
+    }
+
+    @Test
+    public void smallBulksAreLeftUncompressed() throws Exception {
+        GzipCompressor compressor = new GzipCompressor(6, 1024);
+        List<byte[]> small = lines(3);
+        assertThat(compressor.compress(small, size(small))).isNull();
+
+        List<byte[]> large = lines(30);
+        assertThat(gunzip(compressor.compress(large, size(large)))).isEqualTo(concat(large));
+    }
+
+    @Test
+    public void incompressibleBulkGrowsTheOutput() throws Exception {
+        GzipCompressor compressor = new GzipCompressor(1, 0);
+        List<byte[]> lines = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 64; i++) {
+            byte[] line = new byte[1024];
+            random.nextBytes(line);
+            lines.add(line);
+        }
+        assertThat(gunzip(compressor.compress(lines, size(lines)))).isEqualTo(concat(lines));
+    }
+
+    private static List<byte[]> lines(int count) {
+        List<byte[]> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add(("{\"@timestamp\":\"2017-07-14T02:40:00.123Z\",\"loglevel\":\"INFO\",\"message\":\"Request " + i + " served\"}\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+
+    private static int size(List<byte[]> lines) {
+        int size = 0;
+        for (byte[] line : lines) size += line.length;
+        return size;
+    }
+
+    private static byte[] concat(List<byte[]> lines) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] line : lines) out.write(line);
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] payload) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            return out.toByteArray();
+        }
+    }
+}
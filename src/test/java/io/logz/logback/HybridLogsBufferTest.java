@@ -0,0 +1,106 @@
+package io.logz.logback;
+
+import io.logz.sender.SenderStatusReporter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HybridLogsBufferTest {
+
+    private Path tempDir;
+    private MemoryLogsBuffer memory;
+    private DiskLogsBuffer disk;
+    private HybridLogsBuffer buffer;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("hybrid-logs-buffer");
+        // 10 lines of 6 bytes (4 bytes of length prefix + 2) before crossing the spill threshold
+        memory = new MemoryLogsBuffer(100);
+        disk = new DiskLogsBuffer(new File(tempDir.toFile(), "queue"), -1, new NoOpReporter());
+        buffer = new HybridLogsBuffer(memory, disk, 60);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Test
+    public void staysInMemoryBelowTheThreshold() {
+        for (int i = 0; i < 10; i++) {
+            assertThat(buffer.enqueue(line(i))).isTrue();
+        }
+        assertThat(disk.isEmpty()).isTrue();
+        assertThat(buffer.getSpilledBytes()).isZero();
+        assertAllDequeuedInOrder(0, 10);
+    }
+
+    @Test
+    public void spillsEverythingToDiskOnceOverTheThresholdAndDrainsDiskFirst() {
+        for (int i = 0; i < 15; i++) {
+            assertThat(buffer.enqueue(line(i))).isTrue();
+        }
+        assertThat(memory.isEmpty()).isTrue();
+        assertThat(buffer.getSpilledBytes()).isEqualTo(15 * 2);
+
+        // Order is kept while taking the spill back, and appending goes on to disk until it is empty
+        assertThat(text(buffer.dequeue())).isEqualTo("00");
+        assertThat(buffer.enqueue(line(15))).isTrue();
+        assertThat(memory.isEmpty()).isTrue();
+        assertAllDequeuedInOrder(1, 16);
+        assertThat(buffer.getUnspilledBytes()).isEqualTo(16 * 2);
+
+        // Back to memory
+        assertThat(buffer.enqueue(line(16))).isTrue();
+        assertThat(disk.isEmpty()).isTrue();
+        assertThat(text(buffer.dequeue())).isEqualTo("16");
+    }
+
+    @Test
+    public void spillsWhileTheListenerIsUnreachable() {
+        assertThat(buffer.enqueue(line(0))).isTrue();
+        buffer.listenerReachabilityChanged(false);
+        assertThat(buffer.enqueue(line(1))).isTrue();
+        assertThat(memory.isEmpty()).isTrue();
+        assertThat(buffer.getSpilledBytes()).isEqualTo(2 * 2);
+
+        buffer.listenerReachabilityChanged(true);
+        assertAllDequeuedInOrder(0, 2);
+        assertThat(buffer.enqueue(line(2))).isTrue();
+        assertThat(disk.isEmpty()).isTrue();
+    }
+
+    private void assertAllDequeuedInOrder(int from, int to) {
+        for (int i = from; i < to; i++) {
+            assertThat(text(buffer.dequeue())).isEqualTo(String.format("%02d", i));
+        }
+        assertThat(buffer.isEmpty()).isTrue();
+    }
+
+    private static byte[] line(int i) {
+        return String.format("%02d", i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] line) {
+        return new String(line, StandardCharsets.UTF_8);
+    }
+
+    static class NoOpReporter implements SenderStatusReporter {
+        @Override public void error(String msg) {}
+        @Override public void error(String msg, Throwable e) {}
+        @Override public void warning(String msg) {}
+        @Override public void warning(String msg, Throwable e) {}
+        @Override public void info(String msg) {}
+        @Override public void info(String msg, Throwable e) {}
+    }
+}
@@ -0,0 +1,112 @@
+package io.logz.logback;
+
+import io.logz.sender.exceptions.LogzioParameterErrorException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to ship a backlog of 8 bulks of 3MB to a local listener that answers every request after latencyMillis,
+ * like a listener 100ms away would. With a single request in flight it is at least 8 round trips, with
+ * maxInFlightRequests of 8 it should get close to a single one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 4)
+@Fork(1)
+public class InFlightRequestsBenchmark {
+
+    private static final int BULKS = 8;
+    private static final int LINE_SIZE = 1024;
+    // A bulk is closed once it reaches 3MB
+    private static final int BACKLOG = BULKS * 3 * 1024 * 1024 / LINE_SIZE;
+
+    @Param({"1", "2", "4", "8"})
+    private int maxInFlightRequests;
+
+    @Param({"100"})
+    private long latencyMillis;
+
+    private LocalBulkListener listener;
+    private ScheduledExecutorService tasksExecutor;
+    private LogzioBulkSender sender;
+    private byte[] line;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, LogzioParameterErrorException {
+        StringBuilder json = new StringBuilder("{\"@timestamp\":\"2017-07-14T02:40:00.123Z\",\"loglevel\":\"INFO\",\"message\":\"");
+        while (json.length() < LINE_SIZE - 3) json.append('x');
+        line = json.append("\"}\n").toString().getBytes(StandardCharsets.UTF_8);
+
+        listener = new LocalBulkListener(latencyMillis);
+        tasksExecutor = Executors.newScheduledThreadPool(2);
+        sender = LogzioBulkSender.builder()
+                .setLogzioToken("benchmarkToken")
+                .setLogzioType("inFlightBenchmark" + maxInFlightRequests)
+                .setLogzioUrl(listener.getUrl())
+                .setBufferMode(LogsBuffer.Mode.MEMORY)
+                .setMemoryBufferCapacityBytes(64 * 1024 * 1024)
+                // Only the benchmark drains
+                .setDrainTimeout(3600)
+                .setDrainThresholdEvents(0)
+                .setDrainThresholdBytes(0)
+                .setSocketTimeout(10000)
+                .setConnectTimeout(10000)
+                .setReporter(new HybridLogsBufferTest.NoOpReporter())
+                .setTasksExecutor(tasksExecutor)
+                .setGcPersistedQueueFilesIntervalSeconds(3600)
+                .setMaxInFlightRequests(maxInFlightRequests)
+                .getOrCreateSenderByType();
+        sender.start();
+    }
+
+    @Setup(Level.Invocation)
+    public void fillBacklog() {
+        for (int i = 0; i < BACKLOG; i++) {
+            sender.getLogsBuffer().enqueue(line);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sender.stop();
+        tasksExecutor.shutdownNow();
+        listener.close();
+    }
+
+    @Benchmark
+    public void shipBacklog() {
+        // The drain sender.start() schedules right away may still be running, and then this call only asks it to go on
+        while (!sender.getLogsBuffer().isEmpty()) {
+            sender.drainQueueAndSend();
+            Thread.yield();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(InFlightRequestsBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
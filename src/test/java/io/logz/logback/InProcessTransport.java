@@ -0,0 +1,103 @@
+package io.logz.logback;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A transport that never leaves the JVM: it keeps the bulks it is sent and answers with the configured response
+ * code, so tests can check what the sender ships without a listener. Can be set from logback XML like any
+ * other transport.
+ */
+public class InProcessTransport implements LogzioTransport {
+
+    private final List<String> bulks = new CopyOnWriteArrayList<>();
+    private final AtomicInteger gzippedBulks = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int responseCode = 200;
+    private volatile long retryAfterMillis = 0;
+    private volatile Settings settings;
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    public void setResponseCode(int responseCode) {
+        this.responseCode = responseCode;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    public void setRetryAfterMillis(long retryAfterMillis) {
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    @Override
+    public void start(Settings settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public CompletableFuture<Response> send(byte[] payload, boolean gzip) {
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        requests.incrementAndGet();
+        try {
+            int code = responseCode;
+            if (code == 200) {
+                bulks.add(new String(gzip ? gunzip(payload) : payload, StandardCharsets.UTF_8));
+                if (gzip) gzippedBulks.incrementAndGet();
+            }
+            response.complete(new Response(code, "In process " + code, new byte[0], code == 200 ? 0 : retryAfterMillis));
+        } catch (IOException e) {
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    Settings getSettings() {
+        return settings;
+    }
+
+    List<String> getBulks() {
+        return bulks;
+    }
+
+    int getRequests() {
+        return requests.get();
+    }
+
+    int getGzippedBulks() {
+        return gzippedBulks.get();
+    }
+
+    List<String> getLines() {
+        List<String> lines = new ArrayList<>();
+        for (String bulk : bulks) lines.addAll(Arrays.asList(bulk.split("\n")));
+        return lines;
+    }
+
+    private static byte[] gunzip(byte[] payload) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package io.logz.logback;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesAreTheUpperBoundOfTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getPercentileNanos(99)).isZero();
+
+        for (int i = 0; i < 98; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(5000);
+        histogram.record(1_000_000);
+
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getMeanNanos()).isEqualTo((98 * 1000 + 5000 + 1_000_000) / 100);
+        // 1000 falls in [512, 1023]
+        assertThat(histogram.getPercentileNanos(50)).isEqualTo(1023);
+        assertThat(histogram.getPercentileNanos(99)).isEqualTo(8191);
+        assertThat(histogram.getPercentileNanos(100)).isEqualTo((1 << 20) - 1);
+    }
+}
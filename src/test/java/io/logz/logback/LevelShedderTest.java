@@ -0,0 +1,64 @@
+package io.logz.logback;
+
+import ch.qos.logback.classic.Level;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class LevelShedderTest {
+
+    private static final int TRACE = DroppedEvents.levelIndex(Level.TRACE);
+    private static final int DEBUG = DroppedEvents.levelIndex(Level.DEBUG);
+    private static final int INFO = DroppedEvents.levelIndex(Level.INFO);
+    private static final int WARN = DroppedEvents.levelIndex(Level.WARN);
+    private static final int ERROR = DroppedEvents.levelIndex(Level.ERROR);
+
+    @Test
+    public void eachTierShedsOneMoreLevel() {
+        LevelShedder shedder = new LevelShedder(new int[] {50, 70, 90}, 100);
+
+        assertThat(shedder.shouldShed(TRACE, 49)).isFalse();
+        assertThat(shedder.getTier()).isEqualTo(0);
+
+        assertThat(shedder.shouldShed(DEBUG, 50)).isTrue();
+        assertThat(shedder.shouldShed(INFO, 50)).isFalse();
+        assertThat(shedder.getTier()).isEqualTo(1);
+
+        assertThat(shedder.shouldShed(INFO, 70)).isTrue();
+        assertThat(shedder.shouldShed(WARN, 70)).isFalse();
+        assertThat(shedder.getTier()).isEqualTo(2);
+
+        assertThat(shedder.shouldShed(WARN, 90)).isTrue();
+        assertThat(shedder.shouldShed(ERROR, 100)).isFalse();
+        assertThat(shedder.getTier()).isEqualTo(3);
+
+        assertThat(shedder.shouldShed(INFO, 10)).isFalse();
+        assertThat(shedder.getTier()).isEqualTo(0);
+    }
+
+    @Test
+    public void fewerWatermarksStopAtTheirLastTier() {
+        LevelShedder shedder = new LevelShedder(new int[] {80}, 1024);
+
+        assertThat(shedder.shouldShed(DEBUG, 819)).isFalse();
+        assertThat(shedder.shouldShed(DEBUG, 820)).isTrue();
+        assertThat(shedder.shouldShed(INFO, 1024)).isFalse();
+        assertThat(shedder.getTier()).isEqualTo(1);
+    }
+
+    @Test
+    public void parseWatermarks() {
+        assertThat(LevelShedder.parseWatermarks("50, 70,90")).containsExactly(50, 70, 90);
+        assertThat(LevelShedder.parseWatermarks("75")).containsExactly(75);
+
+        for (String invalid : new String[] {"10,20,30,40", "70,50", "0", "101", "half"}) {
+            try {
+                LevelShedder.parseWatermarks(invalid);
+                fail("Expected " + invalid + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package io.logz.logback;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ListenerCircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    public void opensAfterTheThresholdAndProbesOnceTheOpenTimeIsOver() {
+        ListenerCircuitBreaker breaker = new ListenerCircuitBreaker(3, 1000, 60_000, now::get);
+
+        assertThat(breaker.onFailure(0)).isEqualTo(0);
+        assertThat(breaker.onFailure(0)).isEqualTo(0);
+        long openMillis = breaker.onFailure(0);
+        assertThat(openMillis).isBetween(500L, 1000L);
+        assertThat(breaker.getState()).isEqualTo(ListenerCircuitBreaker.State.OPEN);
+        assertThat(breaker.allowDrain()).isFalse();
+
+        now.addAndGet(openMillis);
+        assertThat(breaker.allowDrain()).isTrue();
+        assertThat(breaker.isProbing()).isTrue();
+
+        // A failed probe opens again, for twice as long
+        assertThat(breaker.onFailure(0)).isBetween(1000L, 2000L);
+        assertThat(breaker.allowDrain()).isFalse();
+        now.addAndGet(2000);
+        assertThat(breaker.allowDrain()).isTrue();
+
+        breaker.onSuccess();
+        assertThat(breaker.getState()).isEqualTo(ListenerCircuitBreaker.State.CLOSED);
+        assertThat(breaker.isProbing()).isFalse();
+        assertThat(breaker.onFailure(0)).isEqualTo(0);
+    }
+
+    @Test
+    public void openTimeIsCapped() {
+        ListenerCircuitBreaker breaker = new ListenerCircuitBreaker(1, 1000, 4000, now::get);
+        for (int i = 0; i < 10; i++) {
+            long openMillis = breaker.onFailure(0);
+            assertThat(openMillis).isBetween(500L, 4000L);
+            now.addAndGet(openMillis);
+            assertThat(breaker.allowDrain()).isTrue();
+        }
+    }
+
+    @Test
+    public void retryAfterOpensRightAway() {
+        // 0 never opens on failures alone
+        ListenerCircuitBreaker breaker = new ListenerCircuitBreaker(0, 1000, 60_000, now::get);
+        for (int i = 0; i < 5; i++) {
+            assertThat(breaker.onFailure(0)).isEqualTo(0);
+        }
+
+        assertThat(breaker.onFailure(30_000)).isEqualTo(30_000);
+        now.addAndGet(29_999);
+        assertThat(breaker.allowDrain()).isFalse();
+        now.addAndGet(1);
+        assertThat(breaker.allowDrain()).isTrue();
+    }
+
+    @Test
+    public void retryAfterIsSecondsOrADate() {
+        assertThat(HttpResponseParser.parseRetryAfter("120", 0)).isEqualTo(120_000);
+        assertThat(HttpResponseParser.parseRetryAfter(" 7 ", 0)).isEqualTo(7000);
+        // Wed, 21 Oct 2015 07:28:00 GMT
+        long date = 1445412480000L;
+        assertThat(HttpResponseParser.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT", date - 5000)).isEqualTo(5000);
+        assertThat(HttpResponseParser.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT", date + 5000)).isEqualTo(0);
+        assertThat(HttpResponseParser.parseRetryAfter("soon", 0)).isEqualTo(0);
+        assertThat(HttpResponseParser.parseRetryAfter(null, 0)).isEqualTo(0);
+    }
+}
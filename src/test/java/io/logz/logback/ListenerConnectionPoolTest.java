@@ -0,0 +1,166 @@
+package io.logz.logback;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ListenerConnectionPoolTest {
+
+    private static final byte[] PAYLOAD = "{\"message\":\"hello\"}\n".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void warmConnectionsAreReused() throws Exception {
+        try (LocalBulkListener listener = new LocalBulkListener(0)) {
+            ListenerConnectionPool pool = new ListenerConnectionPool(new URL(listener.getUrl() + "/?token=t&type=x"), 1000, 5000, 2);
+            pool.warmUp(2);
+            assertThat(pool.getHandshakes()).isEqualTo(2);
+            assertThat(pool.getOpenConnections()).isEqualTo(2);
+
+            for (int i = 0; i < 5; i++) {
+                assertThat(pool.post(PAYLOAD, false).getCode()).isEqualTo(200);
+            }
+
+            assertThat(listener.getRequests()).isEqualTo(5);
+            assertThat(listener.getLines()).isEqualTo(5);
+            assertThat(pool.getHandshakes()).isEqualTo(2);
+            assertThat(pool.getHandshakesPerMinute()).isEqualTo(2);
+            assertThat(pool.getReusedRequests()).isEqualTo(5);
+
+            pool.stop();
+            assertThat(pool.getOpenConnections()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void connectionClosedByTheListenerIsReplaced() throws Exception {
+        // Answers a single request per connection, and closes it without telling
+        try (OneShotServer server = new OneShotServer("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n")) {
+            ListenerConnectionPool pool = new ListenerConnectionPool(server.getUrl(), 1000, 5000, 1);
+
+            assertThat(pool.post(PAYLOAD, false).getCode()).isEqualTo(200);
+            assertThat(pool.post(PAYLOAD, false).getCode()).isEqualTo(200);
+
+            assertThat(pool.getReusedRequests()).isEqualTo(1);
+            assertThat(pool.getHandshakes()).isEqualTo(2);
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void chunkedBodyIsRead() throws Exception {
+        try (OneShotServer server = new OneShotServer("HTTP/1.1 100 Continue\r\n\r\n" +
+                "HTTP/1.1 400 Bad Request\r\nTransfer-Encoding: chunked\r\nConnection: close\r\n\r\n" +
+                "6\r\nfield \r\n7;ext=1\r\ninvalid\r\n0\r\n\r\n")) {
+            ListenerConnectionPool pool = new ListenerConnectionPool(server.getUrl(), 1000, 5000, 1);
+
+            LogzioTransport.Response response = pool.post(PAYLOAD, false);
+
+            assertThat(response.getCode()).isEqualTo(400);
+            assertThat(response.getMessage()).isEqualTo("Bad Request");
+            assertThat(new String(response.getBody(), StandardCharsets.UTF_8)).isEqualTo("field invalid");
+            // Connection: close
+            assertThat(pool.getOpenConnections()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void onlyTheStartOfALongBodyIsKept() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < HttpResponseParser.MAX_BODY_BYTES + 1000; i++) body.append('x');
+        // No framing, the body goes on until the listener closes the connection
+        try (OneShotServer server = new OneShotServer("HTTP/1.1 400 Bad Request\r\n\r\n" + body)) {
+            ListenerConnectionPool pool = new ListenerConnectionPool(server.getUrl(), 1000, 5000, 1);
+
+            LogzioTransport.Response response = pool.post(PAYLOAD, false);
+
+            assertThat(response.getCode()).isEqualTo(400);
+            assertThat(response.getBody()).hasSize(HttpResponseParser.MAX_BODY_BYTES);
+            assertThat(pool.getOpenConnections()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void requestIsNotSentAgainOnceItsResponseStarted() throws Exception {
+        // The second response is cut short, after the listener may have taken the bulk
+        try (OneShotServer server = new OneShotServer("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n", "HTTP/1.1 200 OK\r\nContent-Le")) {
+            ListenerConnectionPool pool = new ListenerConnectionPool(server.getUrl(), 1000, 5000, 1);
+
+            assertThat(pool.post(PAYLOAD, false).getCode()).isEqualTo(200);
+            assertThatThrownBy(() -> pool.post(PAYLOAD, false)).isInstanceOf(IOException.class);
+
+            assertThat(server.getRequests()).isEqualTo(2);
+            assertThat(pool.getHandshakes()).isEqualTo(1);
+            pool.stop();
+        }
+    }
+
+    /**
+     * Reads requests and writes the canned responses in order over a connection, and closes it after the last one
+     */
+    static class OneShotServer implements AutoCloseable {
+
+        private final ServerSocket serverSocket;
+        private final Thread thread;
+        private final AtomicInteger requests = new AtomicInteger();
+
+        OneShotServer(String... responses) throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            thread = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    try (Socket socket = serverSocket.accept()) {
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                        OutputStream out = socket.getOutputStream();
+                        for (String response : responses) {
+                            int contentLength = 0;
+                            String line;
+                            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                                if (line.toLowerCase().startsWith("content-length:")) {
+                                    contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                                }
+                            }
+                            if (line == null) break;
+                            reader.skip(contentLength);
+                            requests.incrementAndGet();
+                            out.write(response.getBytes(StandardCharsets.US_ASCII));
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        // Closed
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getRequests() {
+            return requests.get();
+        }
+
+        URL getUrl() throws IOException {
+            return new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/?token=t&type=x");
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
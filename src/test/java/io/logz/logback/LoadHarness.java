@@ -0,0 +1,232 @@
+package io.logz.logback;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the whole pipeline, offline: producer threads log through a LogzioLogbackAppender for a fixed
+ * duration, and a {@link LocalBulkListener} takes the bulks. The delivery latency of every event is the time from
+ * its timestamp to the moment the listener reads it, so it includes buffering, draining, compression and the round
+ * trip.
+ *
+ * Runs every configuration in turn, a buffer mode optionally followed by +gzip for compressRequests, and prints
+ * events/sec and bytes/sec as received by the listener, and the p50, p99 and p99.9 delivery latency:
+ *
+ *     mvn -Pload-test test -Dload.args="threads=4 seconds=30 eventsPerSecond=20000 configs=disk,memory+gzip"
+ *
+ * eventsPerSecond is the total rate of the producers, 0 to log as fast as they can (the latency then mostly measures
+ * how full the buffer gets).
+ */
+public class LoadHarness {
+
+    private static final String DEFAULT_CONFIGS = "disk,disk+gzip,memory,memory+gzip,hybrid,hybrid+gzip";
+    private static final long DELIVERY_TIMEOUT_MILLIS = 60 * 1000;
+    // Latencies are counted per millisecond up to a minute, and above it in the last slot
+    private static final int MAX_LATENCY_MILLIS = 60 * 1000;
+    private static final byte[] TIMESTAMP_FIELD = "\"@timestamp\":".getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        int threads = 4;
+        int seconds = 30;
+        int eventsPerSecond = 20000;
+        String configs = DEFAULT_CONFIGS;
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2) throw new IllegalArgumentException("Expected key=value, got " + arg);
+            switch (keyValue[0]) {
+                case "threads":
+                    threads = Integer.parseInt(keyValue[1]);
+                    break;
+                case "seconds":
+                    seconds = Integer.parseInt(keyValue[1]);
+                    break;
+                case "eventsPerSecond":
+                    eventsPerSecond = Integer.parseInt(keyValue[1]);
+                    break;
+                case "configs":
+                    configs = keyValue[1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + keyValue[0]);
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (String config : configs.split(",")) {
+            System.out.printf("Running %s: %d threads for %d seconds at %s events/sec%n", config, threads, seconds,
+                    eventsPerSecond > 0 ? Integer.toString(eventsPerSecond) : "most");
+            results.add(run(config.trim(), threads, seconds, eventsPerSecond));
+        }
+        System.out.printf("%n%-14s %10s %10s %8s %11s %10s %8s %8s %9s%n", "config", "produced", "delivered", "dropped",
+                "events/sec", "KB/sec", "p50 ms", "p99 ms", "p99.9 ms");
+        for (Result result : results) {
+            System.out.printf("%-14s %10d %10d %8d %11.0f %10.0f %8d %8d %9d%n", result.config, result.produced,
+                    result.delivered, result.dropped, result.eventsPerSecond, result.bytesPerSecond / 1024,
+                    result.latency.percentile(50), result.latency.percentile(99), result.latency.percentile(99.9));
+        }
+    }
+
+    static Result run(String config, int threads, int seconds, int eventsPerSecond) throws Exception {
+        String[] parts = config.split("\\+");
+        boolean gzip = parts.length > 1 && parts[1].equals("gzip");
+        Path bufferDir = Files.createTempDirectory("load-harness");
+        LatencyRecorder latency = new LatencyRecorder();
+        AtomicLong lastReceiptMillis = new AtomicLong();
+        LoggerContext context = new LoggerContext();
+        try (LocalBulkListener listener = new LocalBulkListener(0)) {
+            listener.setBulkConsumer(bulk -> {
+                long now = System.currentTimeMillis();
+                recordLatencies(bulk, now, latency);
+                lastReceiptMillis.set(now);
+            });
+            LogzioLogbackAppender appender = new LogzioLogbackAppender();
+            appender.setContext(context);
+            appender.setToken("loadToken");
+            // A new type every run, since senders are kept per type
+            appender.setLogzioType("load-" + parts[0] + (gzip ? "-gzip-" : "-") + System.nanoTime());
+            appender.setLogzioUrl(listener.getUrl());
+            appender.setBufferDir(bufferDir.toString());
+            appender.setBufferMode(parts[0]);
+            appender.setCompressRequests(gzip);
+            appender.setTimestampFormat("epochMillis");
+            appender.setDropSummaryIntervalSeconds(0);
+            appender.start();
+            Logger logger = context.getLogger(Logger.ROOT_LOGGER_NAME);
+            logger.addAppender(appender);
+
+            LongAdder produced = new LongAdder();
+            long startMillis = System.currentTimeMillis();
+            long endNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            long nanosPerEvent = eventsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(threads) / eventsPerSecond : 0;
+            List<Thread> producers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread producer = new Thread(() -> produce(logger, endNanos, nanosPerEvent, produced), "load-producer-" + t);
+                producer.start();
+                producers.add(producer);
+            }
+            for (Thread producer : producers) producer.join();
+
+            // Until every event that was not dropped made it to the listener
+            long deadline = System.currentTimeMillis() + DELIVERY_TIMEOUT_MILLIS;
+            while (latency.count() + appender.getDroppedEvents().total() < produced.sum() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            double elapsedSeconds = Math.max(1, lastReceiptMillis.get() - startMillis) / 1000.0;
+            Result result = new Result(config, produced.sum(), latency.count(), appender.getDroppedEvents().total(),
+                    latency.count() / elapsedSeconds, listener.getBytes() / elapsedSeconds, latency);
+            appender.stop();
+            return result;
+        } finally {
+            context.stop();
+            Files.walk(bufferDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static void produce(Logger logger, long endNanos, long nanosPerEvent, LongAdder produced) {
+        long next = System.nanoTime();
+        long sequence = 0;
+        while (next - endNanos < 0) {
+            logger.info("Handled request {} for customer {} in {} ms with status {}", sequence++, "customer-1234", 42, 200);
+            produced.increment();
+            if (nanosPerEvent > 0) {
+                next += nanosPerEvent;
+                long wait = next - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+            } else {
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Records the latency of every line of the bulk, from its epoch millis @timestamp
+     */
+    private static void recordLatencies(byte[] bulk, long receiptMillis, LatencyRecorder latency) {
+        int i = 0;
+        while ((i = indexOf(bulk, TIMESTAMP_FIELD, i)) >= 0) {
+            i += TIMESTAMP_FIELD.length;
+            long timestamp = 0;
+            while (i < bulk.length && bulk[i] >= '0' && bulk[i] <= '9') {
+                timestamp = timestamp * 10 + (bulk[i++] - '0');
+            }
+            latency.record(receiptMillis - timestamp);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target, int from) {
+        outer:
+        for (int i = from; i <= bytes.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    static class Result {
+        final String config;
+        final long produced;
+        final long delivered;
+        final long dropped;
+        final double eventsPerSecond;
+        final double bytesPerSecond;
+        final LatencyRecorder latency;
+
+        Result(String config, long produced, long delivered, long dropped, double eventsPerSecond, double bytesPerSecond,
+               LatencyRecorder latency) {
+            this.config = config;
+            this.produced = produced;
+            this.delivered = delivered;
+            this.dropped = dropped;
+            this.eventsPerSecond = eventsPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+            this.latency = latency;
+        }
+    }
+
+    /**
+     * Latencies counted per millisecond, so percentiles are exact to the millisecond
+     */
+    static class LatencyRecorder {
+        private final AtomicLongArray counts = new AtomicLongArray(MAX_LATENCY_MILLIS + 1);
+        private final LongAdder count = new LongAdder();
+
+        void record(long millis) {
+            counts.incrementAndGet((int) Math.max(0, Math.min(MAX_LATENCY_MILLIS, millis)));
+            count.increment();
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        /**
+         * @return the latency in milliseconds under which percent of the events were delivered
+         */
+        long percentile(double percent) {
+            long total = count.sum();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * percent / 100);
+            long seen = 0;
+            for (int millis = 0; millis <= MAX_LATENCY_MILLIS; millis++) {
+                seen += counts.get(millis);
+                if (seen >= rank) return millis;
+            }
+            return MAX_LATENCY_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package io.logz.logback;
+
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A bare bulk listener for benchmarks, on Jetty: it answers 200 to every request after the injected latency, and
+ * only counts what it got instead of parsing it like MockLogzioBulkListener does. Gzipped bulks are inflated to
+ * count their lines, bytes are counted as received. A bulk consumer can look at the lines themselves.
+ *
+ * Faults can be injected, and cleared, while it runs: a latency for a slow listener, a {@link Fault} answering
+ * every request with an error or resetting its connection, and a bandwidth limit on reading the bulks. Lines are
+ * only counted, and passed to the bulk consumer, when their bulk is answered 200.
+ *
+ * Not on the JDK HTTP server, which under a stream of small keep-alive requests sometimes reads a connection from
+ * two threads at once, and leaves the request stuck until the client times out.
+ */
+class LocalBulkListener implements AutoCloseable {
+
+    enum Fault {
+        NONE,
+        // 503, as a listener that is down behind its load balancer
+        SERVER_ERROR,
+        // 429 with a Retry-After of retryAfterSeconds
+        TOO_MANY_REQUESTS,
+        // Reads the bulk, then resets the connection instead of answering
+        CONNECTION_RESET
+    }
+
+    private static final int READ_CHUNK_BYTES = 16 * 1024;
+
+    private final Server server;
+    private final ServerConnector connector;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private volatile long latencyMillis;
+    private volatile Consumer<byte[]> bulkConsumer = bulk -> { };
+    private volatile Fault fault = Fault.NONE;
+    private volatile int retryAfterSeconds = 1;
+    private volatile long bytesPerSecond = 0;
+
+    LocalBulkListener(long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        // Jetty's pool has a thread per request, so the latency of one request doesn't delay the others
+        server = new Server();
+        connector = new ServerConnector(server);
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                byte[] bulk;
+                try (InputStream body = request.getInputStream()) {
+                    bulk = readThrottled(body);
+                }
+                sleep(latencyMillis);
+                requests.increment();
+                baseRequest.setHandled(true);
+                switch (fault) {
+                    case SERVER_ERROR:
+                        response.setStatus(503);
+                        return;
+                    case TOO_MANY_REQUESTS:
+                        response.setStatus(429);
+                        response.setHeader("Retry-After", Integer.toString(retryAfterSeconds));
+                        return;
+                    case CONNECTION_RESET:
+                        reset(baseRequest.getHttpChannel().getEndPoint());
+                        return;
+                    default:
+                }
+                if ("gzip".equals(request.getHeader("Content-Encoding"))) {
+                    try (InputStream inflated = new GZIPInputStream(new ByteArrayInputStream(bulk))) {
+                        bulk = readFully(inflated);
+                    }
+                }
+                for (byte b : bulk) {
+                    if (b == '\n') lines.increment();
+                }
+                bulkConsumer.accept(bulk);
+                response.setStatus(200);
+            }
+        });
+        try {
+            server.start();
+        } catch (Exception e) {
+            throw new IOException("Could not start the listener", e);
+        }
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + connector.getLocalPort();
+    }
+
+    void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Fault.NONE to answer 200 again
+     */
+    void setFault(Fault fault) {
+        this.fault = fault;
+    }
+
+    void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * How fast each request is read, 0 for as fast as possible. TCP then slows down the sender to match
+     */
+    void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Called with every bulk, inflated, on the thread handling its request
+     */
+    void setBulkConsumer(Consumer<byte[]> bulkConsumer) {
+        this.bulkConsumer = bulkConsumer;
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    long getLines() {
+        return lines.sum();
+    }
+
+    long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.stop();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not stop the listener", e);
+        }
+    }
+
+    private byte[] readThrottled(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[READ_CHUNK_BYTES];
+        long start = System.nanoTime();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            bytes.add(read);
+            long rate = bytesPerSecond;
+            if (rate > 0) {
+                // Until what was read so far took as long as it should have at that rate
+                long aheadNanos = out.size() * TimeUnit.SECONDS.toNanos(1) / rate - (System.nanoTime() - start);
+                if (aheadNanos > 0) sleep(TimeUnit.NANOSECONDS.toMillis(aheadNanos));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Closes the connection with a TCP reset, without answering
+     */
+    private static void reset(EndPoint endPoint) throws IOException {
+        Object transport = endPoint.getTransport();
+        if (transport instanceof SocketChannel) {
+            ((SocketChannel) transport).socket().setSoLinger(true, 0);
+        }
+        endPoint.close();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.logz.logback;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogsRingBufferTest {
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertThat(new LogsRingBuffer(1000, LogsRingBuffer.WaitStrategy.BLOCKING, "test", (lines, tags) -> {}).getCapacity()).isEqualTo(1024);
+        assertThat(new LogsRingBuffer(1024, LogsRingBuffer.WaitStrategy.BLOCKING, "test", (lines, tags) -> {}).getCapacity()).isEqualTo(1024);
+        assertThat(new LogsRingBuffer(0, LogsRingBuffer.WaitStrategy.BLOCKING, "test", (lines, tags) -> {}).getCapacity()).isEqualTo(2);
+        assertThat(new LogsRingBuffer(1, LogsRingBuffer.WaitStrategy.BLOCKING, "test", (lines, tags) -> {}).getCapacity()).isEqualTo(2);
+    }
+
+    @Test
+    public void fullRingRejectsUntilConsumed() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+        LogsRingBuffer ringBuffer = new LogsRingBuffer(4, LogsRingBuffer.WaitStrategy.BLOCKING, "test", (lines, tags) -> {
+            awaitQuietly(release);
+            received.addAll(lines);
+        });
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(publish(ringBuffer, "line-" + i)).isTrue();
+        }
+        assertThat(publish(ringBuffer, "one too many")).isFalse();
+        assertThat(ringBuffer.size()).isEqualTo(4);
+
+        ringBuffer.start();
+        release.countDown();
+        ringBuffer.stop(5000);
+
+        assertThat(received).hasSize(4);
+        assertThat(new String(received.get(3), StandardCharsets.UTF_8)).isEqualTo("line-3");
+        assertThat(ringBuffer.size()).isZero();
+    }
+
+    @Test
+    public void evictingTheOldestMakesRoomAndReturnsItsTag() {
+        List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> receivedTags = Collections.synchronizedList(new ArrayList<>());
+        LogsRingBuffer ringBuffer = new LogsRingBuffer(4, LogsRingBuffer.WaitStrategy.BLOCKING, "test", (lines, tags) -> {
+            received.addAll(lines);
+            for (int tag : tags) receivedTags.add(tag);
+        });
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(publish(ringBuffer, "line-" + i, i)).isTrue();
+        }
+        assertThat(publish(ringBuffer, "line-4", 4)).isFalse();
+        assertThat(ringBuffer.evictOldest()).isEqualTo(0);
+        assertThat(publish(ringBuffer, "line-4", 4)).isTrue();
+        assertThat(ringBuffer.size()).isEqualTo(4);
+
+        ringBuffer.start();
+        ringBuffer.stop(5000);
+
+        assertThat(received).hasSize(4);
+        assertThat(new String(received.get(0), StandardCharsets.UTF_8)).isEqualTo("line-1");
+        assertThat(receivedTags).containsExactly(1, 2, 3, 4);
+        assertThat(ringBuffer.evictOldest()).isEqualTo(-1);
+    }
+
+    @Test
+    public void slotsGrowForLargeEvents() {
+        List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+        LogsRingBuffer ringBuffer = new LogsRingBuffer(2, LogsRingBuffer.WaitStrategy.SLEEPING, "test", (lines, tags) -> received.addAll(lines));
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) large.append('x');
+
+        ringBuffer.start();
+        assertThat(publish(ringBuffer, large.toString())).isTrue();
+        ringBuffer.stop(5000);
+
+        assertThat(received).hasSize(1);
+        assertThat(received.get(0)).hasSize(10_000);
+    }
+
+    @Test
+    public void publishingAfterStopIsHandedOverByTheProducer() {
+        List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+        LogsRingBuffer ringBuffer = new LogsRingBuffer(4, LogsRingBuffer.WaitStrategy.BLOCKING, "test", (lines, tags) -> received.addAll(lines));
+
+        ringBuffer.start();
+        ringBuffer.stop(5000);
+        assertThat(ringBuffer.isRunning()).isFalse();
+        assertThat(publish(ringBuffer, "late line")).isTrue();
+
+        assertThat(received).hasSize(1);
+        assertThat(ringBuffer.size()).isZero();
+    }
+
+    @Test
+    public void everyStrategyDeliversAllEventsInProducerOrder() throws Exception {
+        for (LogsRingBuffer.WaitStrategy waitStrategy : LogsRingBuffer.WaitStrategy.values()) {
+            assertAllDeliveredInOrder(waitStrategy, 8, 20_000);
+        }
+    }
+
+    private void assertAllDeliveredInOrder(LogsRingBuffer.WaitStrategy waitStrategy, int producers, int eventsPerProducer) throws Exception {
+        List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+        LogsRingBuffer ringBuffer = new LogsRingBuffer(256, waitStrategy, "test", (lines, tags) -> received.addAll(lines));
+        ringBuffer.start();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int producer = 0; producer < producers; producer++) {
+            int producerId = producer;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < eventsPerProducer; i++) {
+                    while (!publish(ringBuffer, producerId + ":" + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        ringBuffer.stop(5000);
+
+        assertThat(received).describedAs("events received with %s", waitStrategy).hasSize(producers * eventsPerProducer);
+        Map<String, Integer> lastSeen = new HashMap<>();
+        for (byte[] line : received) {
+            String[] parts = new String(line, StandardCharsets.UTF_8).split(":");
+            int sequence = Integer.parseInt(parts[1]);
+            assertThat(sequence).isEqualTo(lastSeen.getOrDefault(parts[0], -1) + 1);
+            lastSeen.put(parts[0], sequence);
+        }
+    }
+
+    private boolean publish(LogsRingBuffer ringBuffer, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return ringBuffer.tryPublish(bytes, 0, bytes.length);
+    }
+
+    private boolean publish(LogsRingBuffer ringBuffer, String line, int tag) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return ringBuffer.tryPublish(bytes, 0, bytes.length, tag);
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.logz.logback;
+
+import io.logz.sender.exceptions.LogzioParameterErrorException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogzioBulkSenderTest {
+
+    private ScheduledThreadPoolExecutor tasksExecutor;
+
+    @Before
+    public void setUp() {
+        tasksExecutor = new ScheduledThreadPoolExecutor(1);
+        tasksExecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    @After
+    public void tearDown() {
+        tasksExecutor.shutdownNow();
+    }
+
+    @Test
+    public void runningSenderIsSharedByType() throws Exception {
+        String type = "sharedType" + System.nanoTime();
+        LogzioBulkSender sender = builder(type, 1024).getOrCreateSenderByType();
+        sender.start();
+        // Starting it again, as a second appender of the same type does, must not schedule its tasks twice
+        sender.start();
+
+        assertThat(builder(type, 2048).getOrCreateSenderByType()).isSameAs(sender);
+        sender.stop();
+    }
+
+    @Test
+    public void stopCancelsThePeriodicTasks() throws Exception {
+        LogzioBulkSender sender = builder("cancelledType" + System.nanoTime(), 1024).getOrCreateSenderByType();
+        sender.start();
+        assertThat(tasksExecutor.getQueue()).isNotEmpty();
+
+        sender.stop();
+        // The executor belongs to the logger context, it would keep running them after the sender is gone
+        assertThat(tasksExecutor.getQueue()).isEmpty();
+    }
+
+    @Test
+    public void stoppedSenderIsNotReused() throws Exception {
+        String type = "stoppedType" + System.nanoTime();
+        LogzioBulkSender sender = builder(type, 1024).getOrCreateSenderByType();
+        sender.start();
+        sender.stop();
+
+        LogzioBulkSender restarted = builder(type, 2048).getOrCreateSenderByType();
+        assertThat(restarted).isNotSameAs(sender);
+        assertThat(((MemoryLogsBuffer) restarted.getLogsBuffer()).getCapacity()).isEqualTo(2048);
+        restarted.stop();
+    }
+
+    @Test
+    public void lostResponseDoesNotHoldTheDrainForever() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        LogzioTransport losingTheFirstResponse = new LogzioTransport() {
+            @Override
+            public void start(Settings settings) {
+            }
+
+            @Override
+            public CompletableFuture<Response> send(byte[] payload, boolean gzip) {
+                if (requests.incrementAndGet() == 1) return new CompletableFuture<>();
+                return CompletableFuture.completedFuture(new Response(200, "OK", new byte[0], 0));
+            }
+
+            @Override
+            public void stop() {
+            }
+        };
+        LogzioBulkSender sender = builder("lostResponseType" + System.nanoTime(), 1024)
+                .setTransport(losingTheFirstResponse)
+                .setConnectTimeout(10)
+                .setSocketTimeout(10)
+                .getOrCreateSenderByType();
+        sender.start();
+        sender.send("{\"message\":\"hello\"}\n".getBytes(StandardCharsets.UTF_8));
+
+        // The first try gives up on its response, and the retry ships the line
+        assertThat(sender.awaitDrained(10_000)).isTrue();
+        assertThat(requests.get()).isEqualTo(2);
+        sender.stop();
+    }
+
+    @Test
+    public void awaitingTheDrainGivesUpOnceTheExecutorIsShutDown() throws Exception {
+        LogzioBulkSender sender = builder("shutDownType" + System.nanoTime(), 1024).getOrCreateSenderByType();
+        sender.start();
+        // As when the logger context stops before the appender
+        tasksExecutor.shutdownNow();
+        sender.send("{\"message\":\"hello\"}\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(sender.awaitDrained(10_000)).isFalse();
+        sender.stop();
+        assertThat(sender.getLogsBuffer().isEmpty()).isTrue();
+    }
+
+    private LogzioBulkSender.Builder builder(String type, int memoryBufferCapacityBytes) throws LogzioParameterErrorException {
+        return LogzioBulkSender.builder()
+                .setLogzioToken("senderToken")
+                .setLogzioType(type)
+                .setBufferMode(LogsBuffer.Mode.MEMORY)
+                .setMemoryBufferCapacityBytes(memoryBufferCapacityBytes)
+                .setDrainTimeout(3600)
+                .setTransport(new InProcessTransport())
+                .setReporter(new HybridLogsBufferTest.NoOpReporter())
+                .setTasksExecutor(tasksExecutor)
+                .setGcPersistedQueueFilesIntervalSeconds(3600);
+    }
+}
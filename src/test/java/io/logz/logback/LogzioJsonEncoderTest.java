@@ -0,0 +1,171 @@
+package io.logz.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.pattern.LineOfCallerConverter;
+import ch.qos.logback.classic.pattern.ThrowableProxyConverter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import io.logz.sender.com.google.gson.JsonObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MarkerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogzioJsonEncoderTest {
+
+    private ThrowableProxyConverter throwableProxyConverter;
+    private LineOfCallerConverter lineOfCallerConverter;
+    private ch.qos.logback.classic.Logger logger;
+
+    @Before
+    public void setUp() {
+        LoggerContext loggerContext = new LoggerContext();
+        logger = loggerContext.getLogger("encoderTesting");
+        throwableProxyConverter = new ThrowableProxyConverter();
+        throwableProxyConverter.setOptionList(Arrays.asList("full"));
+        throwableProxyConverter.start();
+        lineOfCallerConverter = new LineOfCallerConverter();
+    }
+
+    @Test
+    public void simpleEvent() {
+        assertSameAsGson(event(Level.INFO, "Just a simple message"), new HashMap<>(), false);
+    }
+
+    @Test
+    public void eventWithEverything() {
+        Map<String, String> mdc = new HashMap<>();
+        mdc.put("mdc-key", "mdc-value");
+        mdc.put("request", "1234");
+        LoggingEvent event = event(Level.ERROR, "Something {} happened", mdc, "bad", new RuntimeException("Oh no", new NullPointerException()));
+        event.setMarker(MarkerFactory.getMarker("MyMarker"));
+        Map<String, String> additionalFields = new LinkedHashMap<>();
+        additionalFields.put("region", "us-east-1");
+        additionalFields.put("hostname", "my-host");
+
+        assertSameAsGson(event, additionalFields, true);
+    }
+
+    @Test
+    public void collidingKeysKeepTheirFirstPositionAndLastValue() {
+        Map<String, String> mdc = new HashMap<>();
+        mdc.put("logger", "Doesn't matter");
+        mdc.put("hostname", "mdc-host");
+        mdc.put("marker", "no marker on this event");
+        mdc.put("line", "mdc-line");
+        LoggingEvent event = event(Level.WARN, "Colliding", mdc);
+        Map<String, String> additionalFields = new LinkedHashMap<>();
+        additionalFields.put("hostname", "my-host");
+        additionalFields.put("line", "additional-line");
+
+        assertSameAsGson(event, additionalFields, true);
+        assertSameAsGson(event, additionalFields, false);
+    }
+
+    @Test
+    public void additionalFieldOverridesEventField() {
+        Map<String, String> additionalFields = new LinkedHashMap<>();
+        additionalFields.put("line", "additional-line");
+
+        assertSameAsGson(event(Level.INFO, "Overridden line"), additionalFields, true);
+    }
+
+    @Test
+    public void escapingAndEncoding() {
+        String message = "quote \" backslash \\ slash / tab \t new line \n cr \r bell \u0007 nul \u0000 " +
+                "html <a href='x'>&amp;</a>= unicode \u05e9\u05dc\u05d5\u05dd \u00fcmlaut \u20ac emoji \uD83D\uDE00 separators \u2028 \u2029 " +
+                "lonely surrogates \uD83D x \uDE00 del \u007f";
+        Map<String, String> mdc = new HashMap<>();
+        mdc.put("key with \"quotes\"", "value\twith\ttabs");
+        mdc.put("null-value", null);
+
+        assertSameAsGson(event(Level.DEBUG, message, mdc), new HashMap<>(), false);
+    }
+
+    @Test
+    public void nullMessage() {
+        assertSameAsGson(event(Level.INFO, null), new HashMap<>(), false);
+    }
+
+    @Test
+    public void timestampFromMdcIsOverridden() {
+        Map<String, String> mdc = new HashMap<>();
+        mdc.put("@timestamp", "yesterday");
+
+        assertSameAsGson(event(Level.INFO, "When?", mdc), new HashMap<>(), false);
+    }
+
+    @Test
+    public void epochMillisTimestamp() {
+        LogzioJsonEncoder encoder = new LogzioJsonEncoder(throwableProxyConverter, lineOfCallerConverter, new HashMap<>(),
+                false, TimestampEncoder.Format.EPOCH_MILLIS);
+        LoggingEvent event = event(Level.INFO, "Numeric timestamp");
+        event.setTimeStamp(1500000000123L);
+
+        assertThat(new String(encoder.encode(event).toByteArray(), StandardCharsets.UTF_8))
+                .startsWith("{\"@timestamp\":1500000000123,\"loglevel\":\"INFO\",");
+    }
+
+    @Test
+    public void bufferIsReusedBetweenEvents() {
+        LogzioJsonEncoder encoder = new LogzioJsonEncoder(throwableProxyConverter, lineOfCallerConverter, new HashMap<>(), false);
+        JsonByteBuffer first = encoder.encode(event(Level.INFO, "A rather long message to grow the buffer a bit"));
+        JsonByteBuffer second = encoder.encode(event(Level.INFO, "short"));
+
+        assertThat(second).isSameAs(first);
+        assertThat(new String(second.toByteArray(), StandardCharsets.UTF_8)).contains("\"message\":\"short\"").endsWith("}\n");
+    }
+
+    private LoggingEvent event(Level level, String message, Object... args) {
+        return event(level, message, new HashMap<>(), args);
+    }
+
+    private LoggingEvent event(Level level, String message, Map<String, String> mdc, Object... args) {
+        // A trailing throwable argument is picked up by logback as the event's throwable
+        LoggingEvent event = new LoggingEvent(LogzioJsonEncoderTest.class.getName(), logger, level, message, null, args);
+        event.setMDCPropertyMap(mdc);
+        return event;
+    }
+
+    private void assertSameAsGson(ILoggingEvent event, Map<String, String> additionalFields, boolean line) {
+        LogzioJsonEncoder encoder = new LogzioJsonEncoder(throwableProxyConverter, lineOfCallerConverter, additionalFields, line);
+        byte[] expected = (formatWithGson(event, additionalFields, line).toString() + "\n").getBytes(StandardCharsets.UTF_8);
+        byte[] actual = encoder.encode(event).toByteArray();
+
+        assertThat(new String(actual, StandardCharsets.UTF_8)).isEqualTo(new String(expected, StandardCharsets.UTF_8));
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    // The way events were formatted before the streaming encoder
+    private JsonObject formatWithGson(ILoggingEvent loggingEvent, Map<String, String> additionalFieldsMap, boolean line) {
+        JsonObject logMessage = new JsonObject();
+        if (loggingEvent.getMDCPropertyMap() != null) {
+            loggingEvent.getMDCPropertyMap().forEach(logMessage::addProperty);
+        }
+        logMessage.addProperty("@timestamp", new Date(loggingEvent.getTimeStamp()).toInstant().toString());
+        logMessage.addProperty("loglevel", loggingEvent.getLevel().levelStr);
+        if (loggingEvent.getMarker() != null) {
+            logMessage.addProperty("marker", loggingEvent.getMarker().toString());
+        }
+        logMessage.addProperty("message", loggingEvent.getFormattedMessage());
+        logMessage.addProperty("logger", loggingEvent.getLoggerName());
+        logMessage.addProperty("thread", loggingEvent.getThreadName());
+        if (line) {
+            logMessage.addProperty("line", lineOfCallerConverter.convert(loggingEvent));
+        }
+        if (loggingEvent.getThrowableProxy() != null) {
+            logMessage.addProperty("exception", throwableProxyConverter.convert(loggingEvent));
+        }
+        additionalFieldsMap.forEach(logMessage::addProperty);
+        return logMessage;
+    }
+}
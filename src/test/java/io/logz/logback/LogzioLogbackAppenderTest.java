@@ -3,6 +3,8 @@ package io.logz.logback;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.classic.spi.LoggingEvent;
 import io.logz.test.MockLogzioBulkListener;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -11,9 +13,17 @@ import org.slf4j.MDC;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
@@ -36,7 +46,7 @@ public class LogzioLogbackAppenderTest extends BaseLogbackAppenderTest {
         testLogger.info(message1);
         testLogger.warn(message2);
 
-        sleepSeconds(drainTimeout * 2);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(2);
         mockListener.assertLogReceivedIs(message1, token, type, loggerName, Level.INFO.levelStr);
@@ -56,13 +66,430 @@ public class LogzioLogbackAppenderTest extends BaseLogbackAppenderTest {
         testLogger.info(message1);
         testLogger.warn(message2);
 
-        sleepSeconds(drainTimeout * 2);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(2);
         mockListener.assertLogReceivedIs(message1, token, type, loggerName, Level.INFO.levelStr);
         mockListener.assertLogReceivedIs(message2, token, type, loggerName, Level.WARN.levelStr);
     }
     
+    @Test
+    public void ringBufferAppending() throws Exception {
+        String token = "ringBufferToken";
+        String type = "ringBufferType";
+        String loggerName = "ringBufferAppending";
+        int drainTimeout = 1;
+        String message1 = "Testing ring.." + random(5);
+        String message2 = "Warning ring.." + random(5);
+
+        Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null, false, appender -> {
+            appender.setRingBufferCapacity(1024);
+            appender.setRingBufferWaitStrategy("sleeping");
+        });
+        testLogger.info(message1);
+        testLogger.warn(message2);
+
+        awaitDrained(testLogger);
+
+        mockListener.assertNumberOfReceivedMsgs(2);
+        mockListener.assertLogReceivedIs(message1, token, type, loggerName, Level.INFO.levelStr);
+        mockListener.assertLogReceivedIs(message2, token, type, loggerName, Level.WARN.levelStr);
+    }
+
+    @Test
+    public void memoryBufferMode() throws Exception {
+        String token = "memoryToken";
+        String type = "memoryType";
+        String loggerName = "memoryBufferMode";
+        int drainTimeout = 1;
+        String message1 = "Testing memory.." + random(5);
+        String message2 = "Warning memory.." + random(5);
+
+        Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null, false, appender -> {
+            appender.setBufferMode("memory");
+            appender.setMemoryBufferCapacityBytes(1024 * 1024);
+            // Would fail the start in disk mode
+            appender.setFileSystemFullPercentThreshold(0);
+            appender.setBufferDir("/proc/this/can/not/be/created");
+        });
+        testLogger.info(message1);
+        testLogger.warn(message2);
+
+        awaitDrained(testLogger);
+
+        mockListener.assertNumberOfReceivedMsgs(2);
+        mockListener.assertLogReceivedIs(message1, token, type, loggerName, Level.INFO.levelStr);
+        mockListener.assertLogReceivedIs(message2, token, type, loggerName, Level.WARN.levelStr);
+    }
+
+    @Test
+    public void burstIsShippedBeforeTheDrainTimeout() throws Exception {
+        String token = "burstToken";
+        String type = "burstType";
+        String loggerName = "burstIsShippedBeforeTheDrainTimeout";
+        int drainTimeout = 30;
+
+        Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null, false, appender -> {
+            appender.setDrainThresholdEvents(10);
+        });
+        for (int i = 0; i < 10; i++) {
+            testLogger.info("Burst " + i);
+        }
+
+        sleepSeconds(2);
+
+        mockListener.assertNumberOfReceivedMsgs(10);
+    }
+
+    @Test
+    public void flushShipsRightAway() throws Exception {
+        String token = "flushToken";
+        String type = "flushType" + random(5);
+        String loggerName = "flushShipsRightAway";
+        int drainTimeout = 60;
+        LogzioLogbackAppender[] appender = new LogzioLogbackAppender[1];
+
+        Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null, false, configured -> {
+            configured.setRingBufferCapacity(1024);
+            appender[0] = configured;
+        });
+        testLogger.info("Flushed 1");
+        testLogger.info("Flushed 2");
+
+        long startNanos = System.nanoTime();
+        appender[0].flush();
+        // Long before the next scheduled drain
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)).isLessThan(5000);
+        mockListener.assertNumberOfReceivedMsgs(2);
+
+        appender[0].stop();
+        assertThat(appender[0].awaitDrained(Duration.ofSeconds(1))).isFalse();
+    }
+
+    @Test
+    public void metricsAreExposedOverJmx() throws Exception {
+        String token = "jmxToken";
+        String type = "jmxType" + random(5);
+        String loggerName = "metricsAreExposedOverJmx";
+        int drainTimeout = 1;
+        LogzioLogbackAppender[] appender = new LogzioLogbackAppender[1];
+
+        Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null, false, configured -> {
+            appender[0] = configured;
+        });
+        testLogger.info("Measured 1");
+        testLogger.warn("Measured 2");
+        awaitDrained(testLogger);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("io.logz.logback:type=LogzioLogbackAppender,name=" + ObjectName.quote(type));
+        assertThat(server.getAttribute(name, "AppendedEvents")).isEqualTo(2L);
+        assertThat((Long) server.getAttribute(name, "SerializedBytes")).isGreaterThan(0);
+        assertThat(server.getAttribute(name, "ShippedEvents")).isEqualTo(2L);
+        assertThat(server.getAttribute(name, "BufferedEvents")).isEqualTo(0L);
+        assertThat(server.getAttribute(name, "DroppedEventCount")).isEqualTo(0L);
+        assertThat((Long) server.getAttribute(name, "Http2xxResponses")).isGreaterThan(0);
+        assertThat(server.getAttribute(name, "Http5xxResponses")).isEqualTo(0L);
+        assertThat((Long) server.getAttribute(name, "BufferBytesOnDisk")).isGreaterThan(0);
+        assertThat(server.getAttribute(name, "CircuitBreakerState")).isEqualTo("closed");
+
+        appender[0].stop();
+        assertThat(server.isRegistered(name)).isFalse();
+    }
+
+    @Test
+    public void severalBulksAreSentInFlight() throws Exception {
+        String token = "inFlightToken";
+        String type = "inFlightType";
+        String loggerName = "severalBulksAreSentInFlight";
+        int drainTimeout = 1;
+        // About 9MB, so 3 to 4 bulks of 3MB
+        int events = 3000;
+        String padding = new String(new char[3000]).replace('\0', 'x');
+
+        Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null, false, appender -> {
+            appender.setMaxInFlightRequests(4);
+        });
+        for (int i = 0; i < events; i++) {
+            testLogger.info("In flight " + i + " " + padding);
+        }
+
+        awaitDrained(testLogger);
+
+        mockListener.assertNumberOfReceivedMsgs(events);
+    }
+
+    @Test
+    public void linesAreKeptUntilTheListenerAcknowledgesThem() throws Exception {
+        String token = "acknowledgedToken";
+        String type = "acknowledgedType";
+        String loggerName = "linesAreKeptUntilTheListenerAcknowledgesThem";
+        int drainTimeout = 1;
+        String message1 = "Testing failure.." + random(5);
+        String message2 = "Warning failure.." + random(5);
+
+        mockListener.setFailWithServerError(true);
+        try {
+            Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null, false, appender -> {
+                appender.setMaxInFlightRequests(2);
+                appender.setMaxDrainIntervalSec(1);
+            });
+            testLogger.info(message1);
+            testLogger.warn(message2);
+
+            sleepSeconds(drainTimeout * 2);
+            mockListener.assertNumberOfReceivedMsgs(0);
+        } finally {
+            mockListener.setFailWithServerError(false);
+        }
+
+        // The retries back off with jitter, the third one is up to 6 seconds after the first
+        sleepSeconds(drainTimeout * 6);
+
+        mockListener.assertNumberOfReceivedMsgs(2);
+        mockListener.assertLogReceivedIs(message1, token, type, loggerName, Level.INFO.levelStr);
+        mockListener.assertLogReceivedIs(message2, token, type, loggerName, Level.WARN.levelStr);
+    }
+
+    @Test
+    public void connectionsAreKeptAcrossDrains() throws Exception {
+        String token = "keepAliveToken";
+        String type = "keepAliveType";
+        String loggerName = "connectionsAreKeptAcrossDrains";
+        int drainTimeout = 1;
+        LogzioLogbackAppender[] appender = new LogzioLogbackAppender[1];
+
+        Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null, false, configured -> {
+            appender[0] = configured;
+        });
+        for (int i = 0; i < 3; i++) {
+            testLogger.info("Keep alive " + i);
+            awaitDrained(testLogger);
+        }
+
+        mockListener.assertNumberOfReceivedMsgs(3);
+        // The connection opened on start carries every bulk
+        assertThat(appender[0].getHandshakes()).isEqualTo(1);
+        assertThat(appender[0].getReusedConnectionRequests()).isEqualTo(3);
+        assertThat(appender[0].getOpenConnections()).isEqualTo(1);
+    }
+
+    @Test
+    public void asyncTransportShipsOverOneConnection() throws Exception {
+        String token = "asyncToken";
+        String type = "asyncType";
+        String loggerName = "asyncTransportShipsOverOneConnection";
+        int drainTimeout = 1;
+        LogzioLogbackAppender[] appender = new LogzioLogbackAppender[1];
+
+        Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null, true, configured -> {
+            configured.setTransport(new AsyncHttpTransport());
+            appender[0] = configured;
+        });
+        for (int i = 0; i < 3; i++) {
+            testLogger.info("Async " + i);
+            awaitDrained(testLogger);
+        }
+
+        mockListener.assertNumberOfReceivedMsgs(3);
+        mockListener.assertLogReceivedIs("Async 2", token, type, loggerName, Level.INFO.levelStr);
+        assertThat(appender[0].getHandshakes()).isEqualTo(1);
+        assertThat(appender[0].getReusedConnectionRequests()).isEqualTo(2);
+    }
+
+    @Test
+    public void transportIsConfiguredFromXml() throws Exception {
+        String xml = "<configuration>" +
+                "  <appender name=\"logzio\" class=\"io.logz.logback.LogzioLogbackAppender\">" +
+                "    <token>xmlToken</token>" +
+                "    <logzioType>xmlType</logzioType>" +
+                "    <bufferMode>memory</bufferMode>" +
+                "    <compressRequests>true</compressRequests>" +
+                "    <maxInFlightRequests>2</maxInFlightRequests>" +
+                "    <transport class=\"io.logz.logback.InProcessTransport\"/>" +
+                "  </appender>" +
+                "  <logger name=\"transportIsConfiguredFromXml\" level=\"INFO\" additivity=\"false\">" +
+                "    <appender-ref ref=\"logzio\"/>" +
+                "  </logger>" +
+                "</configuration>";
+        LoggerContext context = new LoggerContext();
+        JoranConfigurator configurator = new JoranConfigurator();
+        configurator.setContext(context);
+        configurator.doConfigure(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+        ch.qos.logback.classic.Logger testLogger = context.getLogger("transportIsConfiguredFromXml");
+        LogzioLogbackAppender appender = (LogzioLogbackAppender) testLogger.getAppender("logzio");
+        assertThat(appender.getTransport()).isInstanceOf(InProcessTransport.class);
+        InProcessTransport transport = (InProcessTransport) appender.getTransport();
+        assertThat(transport.getSettings().getMaxInFlightRequests()).isEqualTo(2);
+
+        testLogger.info("In process 1");
+        testLogger.warn("In process 2");
+        // The final drain ships what is left
+        context.stop();
+
+        assertThat(transport.getLines()).hasSize(2);
+        assertThat(transport.getLines().get(0)).contains("\"message\":\"In process 1\"");
+        assertThat(transport.getLines().get(1)).contains("\"message\":\"In process 2\"");
+        // Below compressionMinBytes
+        assertThat(transport.getGzippedBulks()).isEqualTo(0);
+    }
+
+    @Test
+    public void retryAfterOpensTheCircuit() throws Exception {
+        String token = "retryAfterToken";
+        String type = "retryAfterType";
+        String loggerName = "retryAfterOpensTheCircuit";
+        int drainTimeout = 1;
+        InProcessTransport transport = new InProcessTransport();
+        transport.setResponseCode(503);
+        transport.setRetryAfterMillis(60_000);
+        LogzioLogbackAppender[] appender = new LogzioLogbackAppender[1];
+
+        Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null, false, configured -> {
+            configured.setTransport(transport);
+            configured.setBufferMode("memory");
+            appender[0] = configured;
+        });
+        testLogger.info("Paused 1");
+        sleepSeconds(drainTimeout * 2);
+        testLogger.info("Paused 2");
+        sleepSeconds(drainTimeout * 2);
+
+        // No retries, and no more drains while the circuit is open
+        assertThat(appender[0].getCircuitBreakerState()).isEqualTo("open");
+        assertThat(transport.getRequests()).isEqualTo(1);
+        assertThat(transport.getLines()).isEmpty();
+
+        // The final drain probes the listener even though the circuit is open
+        transport.setResponseCode(200);
+        appender[0].stop();
+        assertThat(transport.getLines()).hasSize(2);
+        assertThat(appender[0].getCircuitBreakerState()).isEqualTo("closed");
+    }
+
+    @Test
+    public void compressedBlocksAreShippedAsStored() throws Exception {
+        String token = "compressedBlocksToken";
+        String type = "compressedBlocksType" + random(5);
+        String loggerName = "compressedBlocksAreShippedAsStored";
+        int drainTimeout = 1;
+        InProcessTransport transport = new InProcessTransport();
+        LogzioLogbackAppender[] appender = new LogzioLogbackAppender[1];
+
+        Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null, true, configured -> {
+            configured.setTransport(transport);
+            configured.setCompressionMinBytes(0);
+            configured.setCompressedBlockBytes(64 * 1024);
+            appender[0] = configured;
+        });
+        testLogger.info("Block 1");
+        testLogger.info("Block 2");
+        testLogger.info("Block 3");
+        appender[0].stop();
+
+        assertThat(transport.getLines()).hasSize(3);
+        assertThat(transport.getLines().get(2)).contains("\"message\":\"Block 3\"");
+        // Every bulk was a block, stored gzipped
+        assertThat(transport.getGzippedBulks()).isEqualTo(transport.getBulks().size());
+    }
+
+    @Test
+    public void asyncStartKeepsEventsUntilTheSenderIsReady() throws Exception {
+        String token = "asyncStartToken";
+        String type = "asyncStartType" + random(5);
+        String loggerName = "asyncStartKeepsEventsUntilTheSenderIsReady";
+        int drainTimeout = 1;
+        CountDownLatch resolving = new CountDownLatch(1);
+        LogzioLogbackAppender[] appender = new LogzioLogbackAppender[1];
+
+        long startNanos = System.nanoTime();
+        Logger testLogger = createLogger(token, type, loggerName, drainTimeout, true, false, null, false, configured -> {
+            configured.setAsyncStart(true);
+            configured.setPreStartBufferSize(2);
+            // A DNS that takes its time
+            configured.setHostnameResolver(() -> {
+                resolving.await();
+                return "slow-host";
+            });
+            appender[0] = configured;
+        });
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)).isLessThan(1000);
+
+        testLogger.info("Before ready 1");
+        testLogger.info("Before ready 2");
+        testLogger.info("Before ready 3");
+        assertThat(appender[0].isSenderReady()).isFalse();
+        resolving.countDown();
+        awaitDrained(testLogger);
+        testLogger.info("After ready");
+        awaitDrained(testLogger);
+
+        assertThat(appender[0].isSenderReady()).isTrue();
+        // The third event didn't fit in the pre start buffer
+        mockListener.assertNumberOfReceivedMsgs(3);
+        for (String message : new String[] {"Before ready 1", "Before ready 2", "After ready"}) {
+            MockLogzioBulkListener.LogRequest logRequest = mockListener.assertLogReceivedByMessage(message);
+            mockListener.assertLogReceivedIs(logRequest, token, type, loggerName, Level.INFO.levelStr);
+            assertThat(logRequest.getHost()).isEqualTo("slow-host");
+        }
+        assertThat(appender[0].getDroppedEvents().get(DroppedEvents.Reason.PRE_START_BUFFER_FULL, Level.INFO)).isEqualTo(1);
+    }
+
+    @Test
+    public void eventsLoggedWhileStoppingAreCounted() throws Exception {
+        String type = "stoppingType" + random(5);
+        String loggerName = "eventsLoggedWhileStoppingAreCounted";
+        LogzioLogbackAppender[] appender = new LogzioLogbackAppender[1];
+
+        Logger testLogger = createLogger("stoppingToken", type, loggerName, 1, false, false, null, false, configured -> {
+            appender[0] = configured;
+        });
+        appender[0].stop();
+        // As a logging thread that checked isStarted() before the appender stopped
+        appender[0].append(new LoggingEvent(loggerName, (ch.qos.logback.classic.Logger) testLogger, Level.INFO, "Too late", null, null));
+
+        assertThat(appender[0].getDroppedEvents().get(DroppedEvents.Reason.STOPPING, Level.INFO)).isEqualTo(1);
+    }
+
+    @Test
+    public void droppedEventsAreSummarized() throws Exception {
+        String token = "droppingToken";
+        String type = "droppingType" + random(5);
+        String loggerName = "droppedEventsAreSummarized";
+        int events = 500;
+        LogzioLogbackAppender[] appender = new LogzioLogbackAppender[1];
+
+        Logger testLogger = createLogger(token, type, loggerName, 1, false, false, null, false, configured -> {
+            configured.setRingBufferCapacity(1);
+            configured.setOverflowPolicy("dropNewest");
+            configured.setDropSummaryIntervalSeconds(0);
+            appender[0] = configured;
+        });
+        for (int i = 0; i < events; i++) {
+            testLogger.info("Maybe dropped " + i);
+        }
+        // Stopping hands the ring buffer over, reports the drops and drains the sender for the last time
+        appender[0].stop();
+
+        int shipped = 0;
+        long dropped = 0;
+        for (MockLogzioBulkListener.LogRequest logRequest : mockListener.getReceivedMsgs()) {
+            if (logRequest.getLogger().equals(loggerName)) {
+                shipped++;
+            } else {
+                assertThat(logRequest.getLogger()).isEqualTo(LogzioLogbackAppender.class.getName());
+                assertThat(logRequest.getLogLevel()).isEqualTo(Level.WARN.levelStr);
+                assertThat(logRequest.getStringFieldOrNull("droppedEvents_bufferFull"))
+                        .isEqualTo(logRequest.getStringFieldOrNull("droppedEvents_bufferFull_INFO"));
+                dropped += Long.parseLong(logRequest.getStringFieldOrNull("droppedEvents"));
+            }
+        }
+        assertThat(shipped + dropped).isEqualTo(events);
+        // Reporting the drops does not reset the count
+        assertThat(appender[0].getDroppedEventCount()).isEqualTo(dropped);
+    }
+
     @Test
     public void validateAdditionalFields() throws Exception {
         String token = "validatingAdditionalFields";
@@ -78,7 +505,7 @@ public class LogzioLogbackAppenderTest extends BaseLogbackAppenderTest {
         Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, additionalFieldsString);
         testLogger.info(message1);
 
-        sleepSeconds(2 * drainTimeout);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(1);
         MockLogzioBulkListener.LogRequest logRequest = mockListener.assertLogReceivedByMessage(message1);
@@ -97,8 +524,7 @@ public class LogzioLogbackAppenderTest extends BaseLogbackAppenderTest {
         Logger testLogger = createLogger(token, type, loggerName, drainTimeout, true, false, null);
         testLogger.info(message1);
 
-        // Sleep double time the drain timeout
-        sleepSeconds(2 * drainTimeout);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(1);
         MockLogzioBulkListener.LogRequest logRequest = mockListener.assertLogReceivedByMessage(message1);
@@ -119,8 +545,7 @@ public class LogzioLogbackAppenderTest extends BaseLogbackAppenderTest {
         Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, true, null);
         testLogger.info(message1);
 
-        // Sleep double time the drain timeout
-        sleepSeconds(2 * drainTimeout);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(1);
         MockLogzioBulkListener.LogRequest logRequest = mockListener.assertLogReceivedByMessage(message1);
@@ -149,7 +574,7 @@ public class LogzioLogbackAppenderTest extends BaseLogbackAppenderTest {
         }
         assertThat(exception).isNotNull();
 
-        sleepSeconds(2 * drainTimeout);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(1);
         MockLogzioBulkListener.LogRequest logRequest = mockListener.assertLogReceivedByMessage(message1);
@@ -179,7 +604,7 @@ public class LogzioLogbackAppenderTest extends BaseLogbackAppenderTest {
         Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null);
         testLogger.info(message1);
 
-        sleepSeconds(2 * drainTimeout);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(1);
         MockLogzioBulkListener.LogRequest logRequest = mockListener.assertLogReceivedByMessage(message1);
@@ -202,7 +627,7 @@ public class LogzioLogbackAppenderTest extends BaseLogbackAppenderTest {
         Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null);
         testLogger.info(marker, message1);
 
-        sleepSeconds(2 * drainTimeout);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(1);
         MockLogzioBulkListener.LogRequest logRequest = mockListener.assertLogReceivedByMessage(message1);
@@ -224,7 +649,7 @@ public class LogzioLogbackAppenderTest extends BaseLogbackAppenderTest {
         Logger testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null);
 
         testLogger.info(message1);
-        sleepSeconds(2 * drainTimeout);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(1);
         MockLogzioBulkListener.LogRequest logRequest = mockListener.assertLogReceivedByMessage(message1);
@@ -239,7 +664,7 @@ public class LogzioLogbackAppenderTest extends BaseLogbackAppenderTest {
         testLogger = createLogger(token, type, loggerName, drainTimeout, false, false, null);
 
         testLogger.warn(message2);
-        sleepSeconds(2 * drainTimeout);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(2);
         logRequest = mockListener.assertLogReceivedByMessage(message2);
@@ -258,7 +683,7 @@ public class LogzioLogbackAppenderTest extends BaseLogbackAppenderTest {
 
         testLogger.info(message1);
 
-        sleepSeconds(2 * drainTimeout);
+        awaitDrained(testLogger);
 
         mockListener.assertNumberOfReceivedMsgs(1);
         MockLogzioBulkListener.LogRequest logRequest = mockListener.assertLogReceivedByMessage(message1);
@@ -0,0 +1,72 @@
+package io.logz.logback;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MemoryLogsBufferTest {
+
+    @Test
+    public void linesComeOutInOrderAcrossTheEndOfTheBuffer() {
+        // 4 bytes of length prefix + 6 bytes per line, so writes keep wrapping around a 64 bytes buffer
+        MemoryLogsBuffer buffer = new MemoryLogsBuffer(64);
+        for (int i = 0; i < 100; i++) {
+            assertThat(buffer.enqueue(line("line-" + (i % 10)))).isTrue();
+            assertThat(buffer.enqueue(line("line-" + ((i + 1) % 10)))).isTrue();
+            assertThat(text(buffer.dequeue())).isEqualTo("line-" + (i % 10));
+            assertThat(text(buffer.dequeue())).isEqualTo("line-" + ((i + 1) % 10));
+        }
+        assertThat(buffer.isEmpty()).isTrue();
+        assertThat(buffer.dequeue()).isNull();
+    }
+
+    @Test
+    public void refusesLinesOverTheByteCap() {
+        MemoryLogsBuffer buffer = new MemoryLogsBuffer(32);
+        assertThat(buffer.enqueue(line("0123456789"))).isTrue();
+        assertThat(buffer.enqueue(line("0123456789"))).isTrue();
+        assertThat(buffer.getUsedBytes()).isEqualTo(28);
+        assertThat(buffer.size()).isEqualTo(2);
+        assertThat(buffer.enqueue(line("0"))).isFalse();
+        assertThat(buffer.enqueue(new byte[64])).isFalse();
+
+        assertThat(text(buffer.dequeue())).isEqualTo("0123456789");
+        assertThat(buffer.enqueue(line("0"))).isTrue();
+        assertThat(buffer.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void batchesAreAllOrNothing() {
+        MemoryLogsBuffer buffer = new MemoryLogsBuffer(32);
+        assertThat(buffer.enqueue(Arrays.asList(line("0123456789"), line("0123456789"), line("0")))).isFalse();
+        assertThat(buffer.isEmpty()).isTrue();
+        assertThat(buffer.enqueue(Arrays.asList(line("0123456789"), line("0123456789")))).isTrue();
+        assertThat(buffer.getUsedBytes()).isEqualTo(28);
+    }
+
+    @Test
+    public void peekedLinesStayUntilRemoved() {
+        MemoryLogsBuffer buffer = new MemoryLogsBuffer(64);
+        for (int i = 0; i < 5; i++) {
+            buffer.enqueue(line("line-" + i));
+        }
+        assertThat(buffer.peek(3)).extracting(MemoryLogsBufferTest::text).containsExactly("line-0", "line-1", "line-2");
+        assertThat(buffer.peek(3)).extracting(MemoryLogsBufferTest::text).containsExactly("line-0", "line-1", "line-2");
+
+        assertThat(buffer.remove(2)).isEqualTo(12);
+        assertThat(buffer.peek(10)).extracting(MemoryLogsBufferTest::text).containsExactly("line-2", "line-3", "line-4");
+        assertThat(buffer.remove(10)).isEqualTo(18);
+        assertThat(buffer.isEmpty()).isTrue();
+    }
+
+    private static byte[] line(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] line) {
+        return new String(line, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,265 @@
+package io.logz.logback;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How the pipeline rides out a listener fault, offline: producer threads log at a steady rate through a
+ * LogzioLogbackAppender to a {@link LocalBulkListener}, which is healthy for warmupSeconds, then has the fault for
+ * faultSeconds, then is healthy again. Every scenario runs with a new appender and listener:
+ *
+ * - slow: every request is answered after slowMillis
+ * - serverError: every request is answered 503
+ * - tooManyRequests: every request is answered 429, with a Retry-After of 5 seconds
+ * - connectionReset: every connection is reset once the bulk is read
+ * - throttled: the listener reads bulks at throttledBytesPerSecond
+ *
+ * For each it prints the backlog (events logged but neither delivered nor dropped) at its peak and its growth per
+ * second during the fault, the events dropped, the recovery time (from the fault clearing until every event logged
+ * before that was delivered or dropped), and the p50 and p99 time of a logger call on the application thread,
+ * when healthy and during the fault (within a factor of two, from {@link LatencyHistogram}):
+ *
+ *     mvn -Pload-test test -Dload.class=io.logz.logback.ResilienceBenchmark -Dload.args="bufferMode=disk faultSeconds=20"
+ */
+public class ResilienceBenchmark {
+
+    private static final String DEFAULT_SCENARIOS = "slow,serverError,tooManyRequests,connectionReset,throttled";
+    private static final long RECOVERY_TIMEOUT_MILLIS = 120 * 1000;
+    private static final long SAMPLE_INTERVAL_MILLIS = 100;
+    private static final int RETRY_AFTER_SECONDS = 5;
+
+    private int threads = 2;
+    private int eventsPerSecond = 5000;
+    private int warmupSeconds = 5;
+    private int faultSeconds = 20;
+    private String bufferMode = "disk";
+    private long slowMillis = 2000;
+    private long throttledBytesPerSecond = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        ResilienceBenchmark benchmark = new ResilienceBenchmark();
+        String scenarios = DEFAULT_SCENARIOS;
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2) throw new IllegalArgumentException("Expected key=value, got " + arg);
+            switch (keyValue[0]) {
+                case "threads":
+                    benchmark.threads = Integer.parseInt(keyValue[1]);
+                    break;
+                case "eventsPerSecond":
+                    benchmark.eventsPerSecond = Integer.parseInt(keyValue[1]);
+                    break;
+                case "warmupSeconds":
+                    benchmark.warmupSeconds = Integer.parseInt(keyValue[1]);
+                    break;
+                case "faultSeconds":
+                    benchmark.faultSeconds = Integer.parseInt(keyValue[1]);
+                    break;
+                case "bufferMode":
+                    benchmark.bufferMode = keyValue[1];
+                    break;
+                case "slowMillis":
+                    benchmark.slowMillis = Long.parseLong(keyValue[1]);
+                    break;
+                case "throttledBytesPerSecond":
+                    benchmark.throttledBytesPerSecond = Long.parseLong(keyValue[1]);
+                    break;
+                case "scenarios":
+                    scenarios = keyValue[1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + keyValue[0]);
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (String scenario : scenarios.split(",")) {
+            System.out.printf("Running %s: %s buffer, %d events/sec from %d threads, %d seconds healthy then %d seconds of fault%n",
+                    scenario, benchmark.bufferMode, benchmark.eventsPerSecond, benchmark.threads, benchmark.warmupSeconds,
+                    benchmark.faultSeconds);
+            results.add(benchmark.run(scenario.trim()));
+        }
+        System.out.printf("%n%-16s %12s %12s %9s %11s %15s %15s %15s %15s%n", "scenario", "peak backlog", "backlog/sec",
+                "dropped", "recovery s", "healthy p50 us", "healthy p99 us", "fault p50 us", "fault p99 us");
+        for (Result result : results) {
+            System.out.printf("%-16s %12d %12.0f %9d %11s %15d %15d %15d %15d%n", result.scenario, result.peakBacklog,
+                    result.backlogPerSecond, result.dropped,
+                    result.recoveryMillis < 0 ? "timed out" : String.format("%.1f", result.recoveryMillis / 1000.0),
+                    micros(result.healthyAppend, 50), micros(result.healthyAppend, 99),
+                    micros(result.faultAppend, 50), micros(result.faultAppend, 99));
+        }
+    }
+
+    Result run(String scenario) throws Exception {
+        Path bufferDir = Files.createTempDirectory("resilience-benchmark");
+        LoggerContext context = new LoggerContext();
+        try (LocalBulkListener listener = new LocalBulkListener(0)) {
+            LogzioLogbackAppender appender = new LogzioLogbackAppender();
+            appender.setContext(context);
+            appender.setToken("resilienceToken");
+            // A new type every run, since senders are kept per type
+            appender.setLogzioType("resilience-" + scenario + "-" + System.nanoTime());
+            appender.setLogzioUrl(listener.getUrl());
+            appender.setBufferDir(bufferDir.toString());
+            appender.setBufferMode(bufferMode);
+            appender.setDropSummaryIntervalSeconds(0);
+            appender.start();
+            Logger logger = context.getLogger(Logger.ROOT_LOGGER_NAME);
+            logger.addAppender(appender);
+
+            Producers producers = new Producers(logger, threads, eventsPerSecond);
+            producers.start();
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+
+            LatencyHistogram healthyAppend = producers.switchHistogram();
+            long faultStartBacklog = backlog(producers, listener, appender);
+            inject(listener, scenario);
+            long faultStart = System.currentTimeMillis();
+            long faultEnd = faultStart + TimeUnit.SECONDS.toMillis(faultSeconds);
+            long peakBacklog = faultStartBacklog;
+            while (System.currentTimeMillis() < faultEnd) {
+                Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+                peakBacklog = Math.max(peakBacklog, backlog(producers, listener, appender));
+            }
+            long faultEndBacklog = backlog(producers, listener, appender);
+            listener.setFault(LocalBulkListener.Fault.NONE);
+            listener.setLatencyMillis(0);
+            listener.setBytesPerSecond(0);
+            LatencyHistogram faultAppend = producers.switchHistogram();
+
+            // Events are shipped in order, so once as many were delivered or dropped, the ones logged before are
+            long producedBeforeRecovery = producers.produced.sum();
+            long recoveryStart = System.currentTimeMillis();
+            long recoveryMillis = -1;
+            while (System.currentTimeMillis() - recoveryStart < RECOVERY_TIMEOUT_MILLIS) {
+                if (listener.getLines() + appender.getDroppedEvents().total() >= producedBeforeRecovery) {
+                    recoveryMillis = System.currentTimeMillis() - recoveryStart;
+                    break;
+                }
+                Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+            }
+            producers.stop();
+            Result result = new Result(scenario, peakBacklog, (faultEndBacklog - faultStartBacklog) / (double) faultSeconds,
+                    appender.getDroppedEvents().total(), recoveryMillis, healthyAppend, faultAppend);
+            appender.stop();
+            return result;
+        } finally {
+            context.stop();
+            Files.walk(bufferDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private void inject(LocalBulkListener listener, String scenario) {
+        switch (scenario) {
+            case "slow":
+                listener.setLatencyMillis(slowMillis);
+                break;
+            case "serverError":
+                listener.setFault(LocalBulkListener.Fault.SERVER_ERROR);
+                break;
+            case "tooManyRequests":
+                listener.setRetryAfterSeconds(RETRY_AFTER_SECONDS);
+                listener.setFault(LocalBulkListener.Fault.TOO_MANY_REQUESTS);
+                break;
+            case "connectionReset":
+                listener.setFault(LocalBulkListener.Fault.CONNECTION_RESET);
+                break;
+            case "throttled":
+                listener.setBytesPerSecond(throttledBytesPerSecond);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scenario " + scenario);
+        }
+    }
+
+    private static long backlog(Producers producers, LocalBulkListener listener, LogzioLogbackAppender appender) {
+        return Math.max(0, producers.produced.sum() - listener.getLines() - appender.getDroppedEvents().total());
+    }
+
+    private static long micros(LatencyHistogram histogram, double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getPercentileNanos(percentile));
+    }
+
+    /**
+     * Threads logging at a steady total rate, timing every logger call into the current histogram
+     */
+    private static class Producers {
+        private final Logger logger;
+        private final long nanosPerEvent;
+        private final List<Thread> threads = new ArrayList<>();
+        private final LongAdder produced = new LongAdder();
+        private volatile LatencyHistogram appendLatency = new LatencyHistogram();
+        private volatile boolean running = true;
+
+        Producers(Logger logger, int threads, int eventsPerSecond) {
+            this.logger = logger;
+            this.nanosPerEvent = TimeUnit.SECONDS.toNanos(threads) / eventsPerSecond;
+            for (int t = 0; t < threads; t++) {
+                this.threads.add(new Thread(this::produce, "resilience-producer-" + t));
+            }
+        }
+
+        void start() {
+            for (Thread thread : threads) thread.start();
+        }
+
+        /**
+         * @return the histogram so far, the next calls are timed into a new one
+         */
+        LatencyHistogram switchHistogram() {
+            LatencyHistogram previous = appendLatency;
+            appendLatency = new LatencyHistogram();
+            return previous;
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            for (Thread thread : threads) thread.join();
+        }
+
+        private void produce() {
+            long next = System.nanoTime();
+            long sequence = 0;
+            while (running) {
+                long start = System.nanoTime();
+                logger.info("Handled request {} for customer {} in {} ms with status {}", sequence++, "customer-1234", 42, 200);
+                appendLatency.record(System.nanoTime() - start);
+                produced.increment();
+                next += nanosPerEvent;
+                long wait = next - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    static class Result {
+        final String scenario;
+        final long peakBacklog;
+        final double backlogPerSecond;
+        final long dropped;
+        final long recoveryMillis;
+        final LatencyHistogram healthyAppend;
+        final LatencyHistogram faultAppend;
+
+        Result(String scenario, long peakBacklog, double backlogPerSecond, long dropped, long recoveryMillis,
+               LatencyHistogram healthyAppend, LatencyHistogram faultAppend) {
+            this.scenario = scenario;
+            this.peakBacklog = peakBacklog;
+            this.backlogPerSecond = backlogPerSecond;
+            this.dropped = dropped;
+            this.recoveryMillis = recoveryMillis;
+            this.healthyAppend = healthyAppend;
+            this.faultAppend = faultAppend;
+        }
+    }
+}
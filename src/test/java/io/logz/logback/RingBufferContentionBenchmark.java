@@ -0,0 +1,113 @@
+package io.logz.logback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sustained hand-off throughput from many appending threads to a single consumer that discards the events.
+ * Producers retry when the queue is full, so the score is what the whole stage can sustain.
+ *
+ * Compares the lock-free ring buffer (with each wait strategy) against an ArrayBlockingQueue, which is what a
+ * lock based hand-off would look like. Run main() to sweep from 1 to 64 producer threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class RingBufferContentionBenchmark {
+
+    private static final int[] PRODUCER_THREADS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int CAPACITY = 8192;
+
+    @Param({"blocking", "sleeping", "yielding", "arrayBlockingQueue"})
+    private String queue;
+
+    private LogsRingBuffer ringBuffer;
+    private ArrayBlockingQueue<byte[]> arrayBlockingQueue;
+    private Thread arrayBlockingQueueConsumer;
+    private volatile boolean running;
+    private final LongAdder consumed = new LongAdder();
+    private byte[] line;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder json = new StringBuilder("{\"@timestamp\":\"2017-07-14T02:40:00.123Z\",\"loglevel\":\"INFO\",\"message\":\"");
+        while (json.length() < 250) json.append('x');
+        line = json.append("\"}\n").toString().getBytes(StandardCharsets.UTF_8);
+        running = true;
+
+        if (queue.equals("arrayBlockingQueue")) {
+            arrayBlockingQueue = new ArrayBlockingQueue<>(CAPACITY);
+            arrayBlockingQueueConsumer = new Thread(() -> {
+                List<byte[]> batch = new ArrayList<>();
+                while (running) {
+                    try {
+                        byte[] first = arrayBlockingQueue.poll(100, TimeUnit.MILLISECONDS);
+                        if (first == null) continue;
+                        batch.add(first);
+                        arrayBlockingQueue.drainTo(batch, LogsRingBuffer.MAX_BATCH_SIZE);
+                        consumed.add(batch.size());
+                        batch.clear();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            arrayBlockingQueueConsumer.start();
+        } else {
+            ringBuffer = new LogsRingBuffer(CAPACITY, LogsRingBuffer.WaitStrategy.fromName(queue), "benchmark", (lines, tags) -> consumed.add(lines.size()));
+            ringBuffer.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        if (ringBuffer != null) ringBuffer.stop(5000);
+        if (arrayBlockingQueueConsumer != null) arrayBlockingQueueConsumer.join(5000);
+    }
+
+    @Benchmark
+    public void publish() throws InterruptedException {
+        if (ringBuffer != null) {
+            while (!ringBuffer.tryPublish(line, 0, line.length)) {
+                Thread.yield();
+            }
+        } else {
+            arrayBlockingQueue.put(Arrays.copyOf(line, line.length));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : PRODUCER_THREADS) {
+            new Runner(new OptionsBuilder()
+                    .include(RingBufferContentionBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package io.logz.logback;
+
+import io.logz.sender.com.bluejeans.common.bigqueue.BigQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SegmentedLogTest {
+
+    // Room for 4 records of 2 bytes after the segment header
+    private static final int SEGMENT_BYTES = SegmentedLog.SEGMENT_HEADER_BYTES + 4 * (SegmentedLog.RECORD_HEADER_BYTES + 2);
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private Path tempDir;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("segmented-log");
+        directory = new File(tempDir.toFile(), "queue");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Test
+    public void readsInBatchesAcrossSegments() throws IOException {
+        SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, new HybridLogsBufferTest.NoOpReporter());
+        assertThat(log.isEmpty()).isTrue();
+        for (int i = 0; i < 10; i++) {
+            log.append(line(i));
+        }
+        assertThat(log.getSegmentCount()).isEqualTo(3);
+
+        // Reading leaves the records in the log
+        assertThat(texts(log.read(6))).containsExactly("00", "01", "02", "03", "04", "05");
+        assertThat(texts(log.read(2))).containsExactly("00", "01");
+        assertThat(log.remove(6)).isEqualTo(6 * 2);
+        assertThat(texts(log.read(100))).containsExactly("06", "07", "08", "09");
+        assertThat(log.remove(100)).isEqualTo(4 * 2);
+        assertThat(log.isEmpty()).isTrue();
+        assertThat(log.read(100)).isEmpty();
+    }
+
+    @Test
+    public void deletesWholeSegmentsOnceAcknowledged() throws IOException {
+        SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, new HybridLogsBufferTest.NoOpReporter());
+        for (int i = 0; i < 12; i++) {
+            log.append(line(i));
+        }
+        assertThat(segmentFiles()).hasSize(3);
+
+        log.remove(3);
+        assertThat(segmentFiles()).hasSize(3);
+        log.remove(1);
+        assertThat(segmentFiles()).hasSize(2);
+        log.remove(8);
+        assertThat(segmentFiles()).hasSize(1);
+        assertThat(log.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void keepsUnacknowledgedRecordsAcrossReopens() throws IOException {
+        SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, new HybridLogsBufferTest.NoOpReporter());
+        for (int i = 0; i < 6; i++) {
+            log.append(line(i));
+        }
+        log.remove(5);
+
+        log = new SegmentedLog(directory, SEGMENT_BYTES, new HybridLogsBufferTest.NoOpReporter());
+        log.append(line(6));
+        assertThat(texts(log.read(100))).containsExactly("05", "06");
+    }
+
+    @Test
+    public void reopensTheDirectoryOnceClosed() throws IOException {
+        SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, SegmentedLog.Durability.INTERVAL, new HybridLogsBufferTest.NoOpReporter());
+        for (int i = 0; i < 6; i++) {
+            log.append(line(i));
+        }
+        log.remove(2);
+        log.close();
+
+        assertThat(log.isEmpty()).isTrue();
+        assertThat(log.read(100)).isEmpty();
+        assertThatThrownBy(() -> log.append(line(6))).isInstanceOf(IOException.class);
+
+        SegmentedLog reopened = new SegmentedLog(directory, SEGMENT_BYTES, SegmentedLog.Durability.INTERVAL, new HybridLogsBufferTest.NoOpReporter());
+        reopened.append(line(6));
+        assertThat(texts(reopened.read(100))).containsExactly("02", "03", "04", "05", "06");
+        reopened.close();
+    }
+
+    @Test
+    public void truncatesACorruptedTail() throws IOException {
+        SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, new HybridLogsBufferTest.NoOpReporter());
+        for (int i = 0; i < 3; i++) {
+            log.append(line(i));
+        }
+        // Flip the last byte of the second record, as if its write was torn
+        File segment = segmentFiles().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long position = SegmentedLog.SEGMENT_HEADER_BYTES + 2 * SegmentedLog.RECORD_HEADER_BYTES + 2 + 1;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xff);
+        }
+
+        log = new SegmentedLog(directory, SEGMENT_BYTES, new HybridLogsBufferTest.NoOpReporter());
+        assertThat(texts(log.read(100))).containsExactly("00");
+        // Appending goes on from the end of the last good record
+        log.append(line(3));
+        assertThat(texts(log.read(100))).containsExactly("00", "03");
+    }
+
+    @Test
+    public void evictsTheOldestSegmentsPastMaxBytes() throws IOException {
+        SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, SegmentedLog.Durability.NONE, 2 * SEGMENT_BYTES, 0,
+                clock::get, new HybridLogsBufferTest.NoOpReporter());
+        for (int i = 0; i < 9; i++) {
+            log.append(line(i));
+        }
+        // Rolling to the third segment dropped the first one, 4 records
+        assertThat(log.getSegmentCount()).isEqualTo(2);
+        assertThat(log.getSegmentsBytes()).isEqualTo(2 * SEGMENT_BYTES);
+        assertThat(log.getEvictedForBytes()).isEqualTo(4);
+        assertThat(texts(log.read(100))).containsExactly("04", "05", "06", "07", "08");
+    }
+
+    @Test
+    public void evictsSegmentsOlderThanMaxAge() throws IOException {
+        SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, SegmentedLog.Durability.NONE, 0, 1000,
+                clock::get, new HybridLogsBufferTest.NoOpReporter());
+        for (int i = 0; i < 6; i++) {
+            log.append(line(i));
+        }
+        log.remove(1);
+        clock.addAndGet(600);
+        log.append(line(6));
+        clock.addAndGet(600);
+        log.gc();
+        // The first segment, less the record already removed, is too old, the second one is not
+        assertThat(log.getEvictedForAge()).isEqualTo(3);
+        assertThat(texts(log.read(100))).containsExactly("04", "05", "06");
+
+        clock.addAndGet(1000);
+        log.gc();
+        // The last segment is kept to append to, but its records are dropped
+        assertThat(log.getEvictedForAge()).isEqualTo(6);
+        assertThat(log.isEmpty()).isTrue();
+        assertThat(segmentFiles()).hasSize(1);
+    }
+
+    @Test
+    public void removingDoesNotSkipPastRecordsEvictedWhileInFlight() throws IOException {
+        SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, SegmentedLog.Durability.NONE, 0, 1000,
+                clock::get, new HybridLogsBufferTest.NoOpReporter());
+        for (int i = 0; i < 4; i++) {
+            log.append(line(i));
+        }
+        assertThat(texts(log.read(2))).containsExactly("00", "01");
+        // Rolling to a new segment evicts the first one
+        clock.addAndGet(2000);
+        log.append(line(4));
+        log.append(line(5));
+        assertThat(log.getEvictedForAge()).isEqualTo(4);
+
+        // The two records shipped were evicted meanwhile, the records after them are still there
+        log.remove(2);
+        assertThat(texts(log.read(100))).containsExactly("04", "05");
+    }
+
+    @Test
+    public void keepsRetentionCountsAcrossReopens() throws IOException {
+        SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, SegmentedLog.Durability.NONE, 0, 1000,
+                clock::get, new HybridLogsBufferTest.NoOpReporter());
+        for (int i = 0; i < 5; i++) {
+            log.append(line(i));
+        }
+        log.remove(2);
+
+        clock.addAndGet(2000);
+        log = new SegmentedLog(directory, SEGMENT_BYTES, SegmentedLog.Durability.NONE, 0, 1000,
+                clock::get, new HybridLogsBufferTest.NoOpReporter());
+        // Only the records not removed yet are counted as dropped
+        assertThat(log.getEvictedForAge()).isEqualTo(3);
+        assertThat(log.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void concurrentAppendsShareSyncsWithBatchDurability() throws Exception {
+        SegmentedLog log = new SegmentedLog(directory, SegmentedLog.DEFAULT_SEGMENT_BYTES, SegmentedLog.Durability.BATCH,
+                new HybridLogsBufferTest.NoOpReporter());
+        int threads = 8;
+        int appendsPerThread = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> appenders = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            appenders.add(executor.submit(() -> {
+                for (int i = 0; i < appendsPerThread; i++) {
+                    log.append(line(i));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> appender : appenders) appender.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertThat(log.read(Integer.MAX_VALUE)).hasSize(threads * appendsPerThread);
+        assertThat(log.getWriteLatency().getCount()).isEqualTo(threads * appendsPerThread);
+        // Every append waited for a sync, but not one each
+        assertThat(log.getSyncLatency().getCount()).isBetween(1L, (long) threads * appendsPerThread - 1);
+    }
+
+    @Test
+    public void movesTheLinesOfABigQueueIntoTheLog() throws IOException {
+        BigQueue queue = new BigQueue(tempDir.toString(), directory.getName());
+        for (int i = 0; i < 3; i++) {
+            queue.enqueue(line(i));
+        }
+        queue.close();
+
+        DiskLogsBuffer buffer = new DiskLogsBuffer(directory, -1, new HybridLogsBufferTest.NoOpReporter());
+        assertThat(texts(buffer.peek(100))).containsExactly("00", "01", "02");
+        assertThat(new File(directory, "data")).doesNotExist();
+        assertThat(new File(directory, "meta_data")).doesNotExist();
+    }
+
+    private List<File> segmentFiles() {
+        List<File> files = new ArrayList<>();
+        for (File file : directory.listFiles()) {
+            if (file.getName().startsWith("segment-")) files.add(file);
+        }
+        files.sort(Comparator.comparing(File::getName));
+        return files;
+    }
+
+    private static byte[] line(int i) {
+        return String.format("%02d", i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> texts(List<byte[]> lines) {
+        List<String> texts = new ArrayList<>();
+        for (byte[] line : lines) {
+            texts.add(new String(line, StandardCharsets.UTF_8));
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,98 @@
+package io.logz.logback;
+
+import ch.qos.logback.classic.LoggerContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time the logging framework waits for the appender to start, which is added to the application boot time.
+ *
+ * dnsDelayMillis stands in for a slow hostname resolution. With asyncStart it, and the sender setup, happen in the
+ * background, so start() should only take the configuration checks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"false", "true"})
+    private boolean asyncStart;
+
+    @Param({"0", "500"})
+    private long dnsDelayMillis;
+
+    private Path tempDir;
+    private LoggerContext context;
+    private LogzioLogbackAppender appender;
+    private int starts = 0;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        tempDir = Files.createTempDirectory("startup-benchmark");
+        context = new LoggerContext();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        context.stop();
+        Files.walk(tempDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpAppender() {
+        appender = new LogzioLogbackAppender();
+        appender.setContext(context);
+        appender.setToken("startupToken");
+        // A new type every time, since senders are kept per type
+        appender.setLogzioType("startup" + asyncStart + dnsDelayMillis + "-" + starts++);
+        appender.setLogzioUrl("http://127.0.0.1:1");
+        appender.setBufferDir(tempDir.toString());
+        appender.setAddHostname(true);
+        appender.setAsyncStart(asyncStart);
+        appender.setHostnameResolver(() -> {
+            Thread.sleep(dnsDelayMillis);
+            return "benchmark-host";
+        });
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopAppender() {
+        appender.stop();
+    }
+
+    @Benchmark
+    public boolean start() {
+        appender.start();
+        return appender.isStarted();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StartupBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,104 @@
+package io.logz.logback;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimestampEncoderTest {
+
+    @Test
+    public void isoFormatIsSameAsInstant() {
+        TimestampEncoder encoder = new TimestampEncoder(TimestampEncoder.Format.ISO8601);
+        long now = System.currentTimeMillis();
+        long[] timestamps = {0, 1, 10, 100, 999, 1000, 1001, -1, -999, -1000, now, now - now % 1000,
+                253402300799999L, 253402300800000L, -62167219200000L};
+
+        for (long timestamp : timestamps) {
+            assertThat(write(encoder, timestamp)).isEqualTo("\"" + Instant.ofEpochMilli(timestamp).toString() + "\"");
+        }
+    }
+
+    @Test
+    public void sameSecondDifferentMillis() {
+        TimestampEncoder encoder = new TimestampEncoder(TimestampEncoder.Format.ISO8601);
+        long second = 1500000000000L;
+
+        for (long timestamp = second; timestamp < second + 1000; timestamp++) {
+            assertThat(write(encoder, timestamp)).isEqualTo("\"" + Instant.ofEpochMilli(timestamp).toString() + "\"");
+        }
+    }
+
+    @Test
+    public void epochMillis() {
+        TimestampEncoder encoder = new TimestampEncoder(TimestampEncoder.Format.EPOCH_MILLIS);
+
+        assertThat(write(encoder, 1500000000123L)).isEqualTo("1500000000123");
+        assertThat(write(encoder, 0)).isEqualTo("0");
+        assertThat(write(encoder, -5)).isEqualTo("-5");
+        assertThat(write(encoder, Long.MAX_VALUE)).isEqualTo(String.valueOf(Long.MAX_VALUE));
+        assertThat(write(encoder, Long.MIN_VALUE)).isEqualTo(String.valueOf(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void readsBackEitherFormat() {
+        long timestamp = 1500000000123L;
+        for (TimestampEncoder.Format format : TimestampEncoder.Format.values()) {
+            String line = "{\"mdcKey\":\"a \\\"@timestamp\\\": 42\",\"@timestamp\":" + write(new TimestampEncoder(format), timestamp) + ",\"message\":\"m\"}\n";
+            assertThat(TimestampEncoder.read(line.getBytes(StandardCharsets.UTF_8))).isEqualTo(timestamp);
+        }
+        assertThat(TimestampEncoder.read("{\"message\":\"m\"}\n".getBytes(StandardCharsets.UTF_8))).isEqualTo(-1);
+        assertThat(TimestampEncoder.read("{\"@timestamp\":\"yesterday\"}\n".getBytes(StandardCharsets.UTF_8))).isEqualTo(-1);
+    }
+
+    @Test
+    public void formatNames() {
+        assertThat(TimestampEncoder.Format.fromName("iso8601")).isEqualTo(TimestampEncoder.Format.ISO8601);
+        assertThat(TimestampEncoder.Format.fromName("epochMillis")).isEqualTo(TimestampEncoder.Format.EPOCH_MILLIS);
+        assertThat(TimestampEncoder.Format.fromName("rfc822")).isNull();
+    }
+
+    @Test
+    public void concurrentWritersAcrossSeconds() throws Exception {
+        TimestampEncoder encoder = new TimestampEncoder(TimestampEncoder.Format.ISO8601);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            long seed = thread;
+            results.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                JsonByteBuffer buffer = new JsonByteBuffer();
+                int mismatches = 0;
+                for (int i = 0; i < 100_000; i++) {
+                    // A handful of neighbour seconds, so the cached entry keeps changing under the threads
+                    long timestamp = 1500000000000L + random.nextInt(4000);
+                    buffer.reset();
+                    encoder.write(buffer, timestamp);
+                    String expected = "\"" + Instant.ofEpochMilli(timestamp).toString() + "\"";
+                    if (!expected.equals(new String(buffer.toByteArray(), StandardCharsets.US_ASCII))) mismatches++;
+                }
+                return mismatches;
+            }));
+        }
+        for (Future<Integer> result : results) {
+            assertThat(result.get()).isZero();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private String write(TimestampEncoder encoder, long timestamp) {
+        JsonByteBuffer buffer = new JsonByteBuffer();
+        encoder.write(buffer, timestamp);
+        return new String(buffer.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}